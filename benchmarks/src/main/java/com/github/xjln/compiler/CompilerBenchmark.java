@@ -0,0 +1,70 @@
+package com.github.xjln.compiler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compiles whole generated corpora, in memory and from and to disk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompilerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int files;
+
+    @Param({"5"})
+    public int methods;
+
+    @Param({"20"})
+    public int statements;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Map<String, String> sources;
+    private File folder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException{
+        CorpusGenerator.Shape shape = new CorpusGenerator.Shape(files, methods, statements, 3, 32);
+
+        sources = new CorpusGenerator(42).generate(shape);
+        folder = Files.createTempDirectory("xjln-bench").toFile();
+        new CorpusGenerator(42).write(shape, new File(folder, "src"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        delete(folder);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> inMemory(){
+        return new Compiler(new Options().threads(threads)).compileSources(sources);
+    }
+
+    @Benchmark
+    public Compiler toDisk(){
+        return new Compiler(new Options().threads(threads).output(new File(folder, "out").getPath()), new File(folder, "src").getPath());
+    }
+
+    private static void delete(File file){
+        File[] children = file.listFiles();
+
+        if(children != null)
+            for(File child:children)
+                delete(child);
+
+        file.delete();
+    }
+}
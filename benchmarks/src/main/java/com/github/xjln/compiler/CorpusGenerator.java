@@ -0,0 +1,143 @@
+package com.github.xjln.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * generates deterministic .xjln sources for benchmarks, the same shape and seed always produce the same corpus,
+ * so results of different compiler versions can be compared
+ */
+public final class CorpusGenerator {
+
+    /**
+     * @param files the number of Files
+     * @param methods the number of methods per class
+     * @param statements the number of statements per method
+     * @param depth the nesting depth of the expressions
+     * @param enumValues the number of values of the type in every File
+     */
+    public record Shape(int files, int methods, int statements, int depth, int enumValues){}
+
+    private final Random random;
+
+    public CorpusGenerator(long seed){
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return the source of every File mapped by its path without the .xjln extension
+     */
+    public Map<String, String> generate(Shape shape){
+        LinkedHashMap<String, String> sources = new LinkedHashMap<>();
+
+        for(int i = 0;i < shape.files();i++)
+            sources.put("corpus/p" + (i / 100) + "/F" + i, file(i, shape));
+
+        return sources;
+    }
+
+    /**
+     * writes the generated Files to the given Folder
+     */
+    public void write(Shape shape, File folder) throws IOException{
+        for(Map.Entry<String, String> source:generate(shape).entrySet()){
+            File file = new File(folder, source.getKey() + ".xjln");
+
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.writeString(file.toPath(), source.getValue(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return a File with a type, a data class, a class with fields and methods and a main method
+     */
+    public String file(int index, Shape shape){
+        StringBuilder sb = new StringBuilder();
+
+        if(shape.enumValues() > 0){
+            sb.append("def type Kind").append(index).append(" = ");
+
+            for(int i = 0;i < shape.enumValues();i++)
+                sb.append(i == 0 ? "" : " | ").append("V").append(i);
+
+            sb.append("\n\n");
+        }
+
+        sb.append("def data Point").append(index).append(" = [int x, int y, double z]\n\n");
+
+        sb.append("def class Worker").append(index).append("{\n\n");
+        sb.append("    int count\n");
+        sb.append("    double total\n\n");
+
+        for(int m = 0;m < shape.methods();m++){
+            sb.append("    def work").append(m).append("()\n");
+            method(sb, "        ", shape);
+            sb.append("    end\n\n");
+        }
+
+        sb.append("}\n\n");
+
+        sb.append("def main()\n");
+        method(sb, "    ", shape);
+        sb.append("end\n");
+
+        return sb.toString();
+    }
+
+    /**
+     * @return a single line with an int expression of the given nesting depth
+     */
+    public String expression(int depth){
+        StringBuilder sb = new StringBuilder();
+        expression(sb, depth);
+        return sb.toString();
+    }
+
+    /**
+     * @return the code of a method body with the given number of statements, as it is passed to the SyntacticParser
+     */
+    public String methodBody(int statements, int depth){
+        StringBuilder sb = new StringBuilder();
+        method(sb, "", new Shape(1, 1, statements, depth, 0));
+        return sb.toString();
+    }
+
+    private void method(StringBuilder sb, String indent, Shape shape){
+        for(int s = 0;s < shape.statements();s++){
+            sb.append(indent).append("int v").append(s).append(" = ");
+            expression(sb, shape.depth());
+            sb.append("\n");
+        }
+    }
+
+    private void expression(StringBuilder sb, int depth){
+        if(depth <= 0){
+            sb.append(random.nextInt(1000));
+            return;
+        }
+
+        sb.append("(");
+        expression(sb, depth - 1);
+        sb.append(" ").append("+-*".charAt(random.nextInt(3))).append(" ");
+        expression(sb, depth - 1);
+        sb.append(")");
+    }
+
+    /**
+     * writes a corpus to disk, arguments are the output Folder followed by files, methods, statements, depth and enum values
+     */
+    public static void main(String[] args) throws IOException{
+        if(args.length != 6){
+            System.out.println("usage: CorpusGenerator <folder> <files> <methods> <statements> <depth> <enumValues>");
+            return;
+        }
+
+        Shape shape = new Shape(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+        new CorpusGenerator(42).write(shape, new File(args[0]));
+    }
+}
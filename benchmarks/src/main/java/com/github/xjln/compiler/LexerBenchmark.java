@@ -0,0 +1,54 @@
+package com.github.xjln.compiler;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int depth;
+
+    private String line;
+    private TokenHandler tokens;
+
+    @Setup
+    public void setup(){
+        line = "int v0 = " + new CorpusGenerator(42).expression(depth);
+        tokens = Lexer.lex(line);
+    }
+
+    @Benchmark
+    public TokenHandler lex(){
+        return Lexer.lex(line);
+    }
+
+    @Benchmark
+    public void navigate(Blackhole blackhole){
+        tokens.toFirst();
+
+        while(tokens.hasNext())
+            blackhole.consume(tokens.next());
+
+        while(tokens.isValid())
+            blackhole.consume(tokens.last());
+    }
+
+    @Benchmark
+    public TokenHandler getInBracket(){
+        tokens.toFirst();
+        tokens.assertToken("int");
+        tokens.assertToken("v0");
+        tokens.assertToken("=");
+        tokens.next();
+
+        return tokens.getInBracket();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.lang.XJLNFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int methods;
+
+    @Param({"10", "100"})
+    public int statements;
+
+    private String source;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException{
+        source = new CorpusGenerator(42).file(0, new CorpusGenerator.Shape(1, methods, statements, 3, 16));
+        file = File.createTempFile("xjln-bench", ".xjln");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), source, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Benchmark
+    public XJLNFile parseSource(){
+        return new Parser().parseSource("bench/F0", source);
+    }
+
+    @Benchmark
+    public XJLNFile parseFile() throws IOException{
+        return new Parser().parseFile(file);
+    }
+}
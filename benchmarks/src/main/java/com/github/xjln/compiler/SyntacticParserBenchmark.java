@@ -0,0 +1,43 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.lang.XJLNMethod;
+import com.github.xjln.utility.MatchedList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntacticParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int statements;
+
+    @Param({"1", "4", "8"})
+    public int depth;
+
+    private XJLNMethod method;
+    private TokenHandler expression;
+
+    @Setup
+    public void setup(){
+        CorpusGenerator generator = new CorpusGenerator(42);
+        method = new XJLNMethod(AccessFlag.ACC_PUBLIC, "void", new MatchedList<>(), Lexer.lex(generator.methodBody(statements, depth)), false, false, false, 0);
+        expression = Lexer.lex(generator.expression(depth));
+    }
+
+    @Benchmark
+    public AST[] parseAst(){
+        return new SyntacticParser().parseAst(method, "bench.F0.Main", null);
+    }
+
+    @Benchmark
+    public AST.Calc parseCalc(){
+        return new SyntacticParser().parseCalc(expression, null);
+    }
+}
@@ -48,6 +48,8 @@ sealed abstract class AST permits AST.Calc, AST.Call, AST.Value, AST.Return, AST
         String call = null;
         Call next = null;
         Calc[] argTypes;
+        /** the local slot of the variable resolved by the SyntacticParser, -1 if the call is no local variable */
+        int slot = -1;
     }
 
     static final class StaticCall extends Call{
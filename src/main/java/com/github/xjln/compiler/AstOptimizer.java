@@ -0,0 +1,239 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.lang.XJLNClass;
+import com.github.xjln.lang.XJLNField;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * the passes that run over the AST of a method between the SyntacticParser and the CodeGenerator.
+ * Every {@link Pass} runs from its optimization level on, in the order the passes are declared,
+ * and the time of every pass is recorded by the Metrics
+ */
+final class AstOptimizer {
+
+    enum Pass{
+        /** replaces static const fields of the class with their value if their initial value is constant */
+        CONSTANT_PROPAGATION(2),
+        /** computes the parts of calculations that only use literals, see {@link ConstantFolder} */
+        CONSTANT_FOLDING(1),
+        /** removes loops and branches whose condition is always false and the branches after a condition that is always true */
+        DEAD_BRANCH_ELIMINATION(1);
+
+        final int level;
+
+        Pass(int level){
+            this.level = level;
+        }
+    }
+
+    private final int level;
+    private final Metrics metrics;
+    private final SyntacticParser syntacticParser = new SyntacticParser();
+
+    /** the class whose const fields have been resolved */
+    private XJLNClass clazz = null;
+    /** the value of every resolved const field, null for fields whose value is not constant */
+    private final HashMap<String, AST.Value> constants = new HashMap<>();
+
+    /**
+     * @param level the optimization level, see {@link Options#optimization(int)}
+     */
+    AstOptimizer(int level, Metrics metrics){
+        this.level = level;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param clazz the class whose fields are used by the statements
+     * @return the optimized statements, the given statements may have been changed
+     */
+    AST[] optimize(AST[] ast, XJLNClass clazz, String file){
+        if(level == 0)
+            return ast;
+
+        if(this.clazz != clazz){
+            this.clazz = clazz;
+            constants.clear();
+        }
+
+        Metrics.Timer timer = metrics.start(Metrics.Phase.OPTIMIZE, file);
+
+        try{
+            for(Pass pass:Pass.values()){
+                if(pass.level > level)
+                    continue;
+
+                long start = System.nanoTime();
+
+                switch (pass){
+                    case CONSTANT_PROPAGATION -> {
+                        for(AST statement:ast)
+                            propagate(statement);
+                    }
+                    case CONSTANT_FOLDING -> {
+                        for(AST statement:ast)
+                            fold(statement);
+                    }
+                    case DEAD_BRANCH_ELIMINATION -> ast = removeDeadBranches(ast);
+                }
+
+                metrics.addPassTime(file, pass, System.nanoTime() - start);
+            }
+        }finally {
+            timer.stop();
+        }
+
+        return ast;
+    }
+
+    /**
+     * optimizes the initial value of a field
+     */
+    AST.Calc optimize(AST.Calc calc, XJLNClass clazz, String file){
+        return (AST.Calc) optimize(new AST[]{calc}, clazz, file)[0];
+    }
+
+    private void propagate(AST ast){
+        if(ast instanceof AST.Calc calc)
+            propagate(calc);
+        else if(ast instanceof AST.Return statement)
+            propagate(statement.calc);
+        else if(ast instanceof AST.VarAssigment statement)
+            propagate(statement.calc);
+        else if(ast instanceof AST.While statement){
+            propagate(statement.condition);
+
+            for(AST a:statement.ast)
+                propagate(a);
+        }else if(ast instanceof AST.If statement){
+            for(;statement != null;statement = statement.elif){
+                propagate(statement.condition);
+
+                for(AST a:statement.ast)
+                    propagate(a);
+            }
+        }
+    }
+
+    /**
+     * replaces the fields used by the calc, variables that get a value assigned are not replaced
+     */
+    private void propagate(AST.Calc calc){
+        if(calc == null)
+            return;
+
+        if(!"=".equals(calc.opp) && !"#".equals(calc.opp))
+            propagate(calc.right);
+
+        propagate(calc.left);
+
+        if(calc.value != null && calc.value.call != null){
+            AST.Call call = calc.value.call;
+            AST.Value constant = call.slot == -1 && call.next == null && !(call instanceof AST.StaticCall) ? constant(call.call) : null;
+
+            if(constant != null){
+                calc.value.call = null;
+                calc.value.token = constant.token;
+            }
+        }
+    }
+
+    /**
+     * @return the value of the static const field with the given name or null if the field is no static const field
+     * of the class or its initial value is not constant
+     */
+    private AST.Value constant(String name){
+        if(constants.containsKey(name))
+            return constants.get(name);
+
+        constants.put(name, null); //const fields that use each other are not constant
+
+        XJLNField field = clazz == null ? null : clazz.staticFields.get(name);
+        AST.Value value = null;
+
+        if(field != null && field.constant() && field.initValue() != null){
+            try{
+                AST.Calc calc = syntacticParser.parseCalc(field.initValue(), clazz);
+                propagate(calc);
+                ConstantFolder.fold(calc);
+
+                if(field.type().equals(calc.type))
+                    value = ConstantFolder.literal(calc);
+            }catch (RuntimeException ignored){} //reported when the initial value is compiled
+        }
+
+        constants.put(name, value);
+        return value;
+    }
+
+    private void fold(AST ast){
+        if(ast instanceof AST.Calc calc)
+            ConstantFolder.fold(calc);
+        else if(ast instanceof AST.Return statement)
+            ConstantFolder.fold(statement.calc);
+        else if(ast instanceof AST.VarAssigment statement)
+            ConstantFolder.fold(statement.calc);
+        else if(ast instanceof AST.While statement){
+            ConstantFolder.fold(statement.condition);
+
+            for(AST a:statement.ast)
+                fold(a);
+        }else if(ast instanceof AST.If statement){
+            for(;statement != null;statement = statement.elif){
+                ConstantFolder.fold(statement.condition);
+
+                for(AST a:statement.ast)
+                    fold(a);
+            }
+        }
+    }
+
+    private AST[] removeDeadBranches(AST[] ast){
+        ArrayList<AST> statements = new ArrayList<>();
+
+        for(AST statement:ast){
+            if(statement instanceof AST.While loop){
+                if(Boolean.FALSE.equals(ConstantFolder.valueOf(ConstantFolder.literal(loop.condition))))
+                    continue;
+
+                loop.ast = removeDeadBranches(loop.ast);
+            }else if(statement instanceof AST.If branch){
+                statement = removeDeadBranches(branch);
+
+                if(statement == null)
+                    continue;
+            }
+
+            statements.add(statement);
+        }
+
+        return statements.toArray(new AST[0]);
+    }
+
+    /**
+     * a branch whose condition is always true becomes the last branch without condition,
+     * so its statements keep their own scope
+     * @return the branches that can be taken or null if no branch can be taken
+     */
+    private AST.If removeDeadBranches(AST.If branch){
+        if(branch == null)
+            return null;
+
+        Object condition = ConstantFolder.valueOf(ConstantFolder.literal(branch.condition));
+
+        if(Boolean.FALSE.equals(condition))
+            return removeDeadBranches(branch.elif);
+
+        branch.ast = removeDeadBranches(branch.ast);
+
+        if(Boolean.TRUE.equals(condition)){
+            branch.condition = null;
+            branch.elif = null;
+        }else
+            branch.elif = removeDeadBranches(branch.elif);
+
+        return branch;
+    }
+}
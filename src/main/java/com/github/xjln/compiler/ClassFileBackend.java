@@ -0,0 +1,51 @@
+package com.github.xjln.compiler;
+
+import javassist.bytecode.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * serializes ClassFiles directly with {@link ClassFile#write(DataOutputStream)} into a reusable buffer per thread,
+ * no ClassPool is involved, so nothing is retained after a class has been emitted
+ */
+public final class ClassFileBackend implements EmitterBackend {
+
+    /**
+     * buffers that grew beyond this size are not kept for the next class
+     */
+    private static final int MAX_POOLED_SIZE = 1 << 20;
+
+    private static final class Buffer extends ByteArrayOutputStream{
+        final DataOutputStream out = new DataOutputStream(this);
+
+        Buffer(){
+            super(4096);
+        }
+
+        int capacity(){
+            return buf.length;
+        }
+    }
+
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    @Override
+    public byte[] emit(ClassFile cf) throws RuntimeException{
+        Buffer buffer = BUFFERS.get();
+
+        try{
+            buffer.reset();
+            cf.write(buffer.out);
+            buffer.out.flush();
+
+            return buffer.toByteArray();
+        }catch (IOException e){
+            throw new RuntimeException("failed to write ClassFile for " + cf.getName());
+        }finally {
+            if(buffer.capacity() > MAX_POOLED_SIZE)
+                BUFFERS.remove();
+        }
+    }
+}
@@ -0,0 +1,934 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.lang.*;
+import javassist.bytecode.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+final class CodeGenerator {
+
+    /** the class file version of Java 19, classes of this version are only loaded with a valid StackMapTable */
+    private static final int JAVA_19 = 63;
+
+    /** the if instructions comparing the result of a compare instruction with 0 for each comparison operator */
+    private static final Map<String, Integer> COMPARISONS = Map.of("==", Opcode.IFEQ, "!=", Opcode.IFNE, "<", Opcode.IFLT, ">=", Opcode.IFGE, ">", Opcode.IFGT, "<=", Opcode.IFLE);
+
+    private final SyntacticParser syntacticParser = new SyntacticParser();
+    private final AstOptimizer astOptimizer;
+    private final ArrayList<String> writtenClasses = new ArrayList<>();
+    private final OutputSink sink;
+    private final EmitterBackend backend;
+    private final ParseCache parseCache;
+    private final Metrics metrics;
+    private final int optimization;
+
+    private XJLNClass current;
+    private String currentName;
+    private String currentPath;
+
+    /**
+     * @param optimization the optimization level, see {@link Options#optimization(int)}
+     */
+    CodeGenerator(OutputSink sink, EmitterBackend backend, ParseCache parseCache, Metrics metrics, int optimization){
+        this.sink = sink;
+        this.backend = backend;
+        this.parseCache = parseCache;
+        this.metrics = metrics;
+        this.optimization = optimization;
+        this.astOptimizer = new AstOptimizer(optimization, metrics);
+    }
+
+    ArrayList<String> getWrittenClasses(){
+        return writtenClasses;
+    }
+
+    void compile(Compilable c, String name, String path){
+        currentPath = path;
+
+        if(c instanceof XJLNTypeClass)
+            compileType((XJLNTypeClass) c, name, path);
+        else if(c instanceof XJLNDataClass)
+            compileData((XJLNDataClass) c, name, path);
+        else if(c instanceof XJLNInterface)
+            compileInterface((XJLNInterface) c, name, path);
+        else if(c instanceof XJLNClass)
+            compileClass((XJLNClass) c, name, path);
+    }
+
+    private void compileType(XJLNTypeClass type, String name, String path){
+        ClassFile cf = new ClassFile(false, path + "." + name, "java.lang.Enum");
+        cf.setAccessFlags(type.getAccessFlag());
+        ConstantPoolBuilder constants = new ConstantPoolBuilder(cf.getConstPool());
+
+        //Types
+        for(String value: type.values){
+            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), value, "L" + name + ";");
+            fInfo.setAccessFlags(0x4019);
+            cf.addField2(fInfo);
+        }
+
+        //$VALUES
+        FieldInfo fInfo = new FieldInfo(cf.getConstPool(), "$VALUES", "[L" + name + ";");
+        fInfo.setAccessFlags(0x101A);
+        cf.addField2(fInfo);
+
+        //values()
+        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "values","()[L" + name + ";");
+        mInfo.setAccessFlags(0x9);
+        Bytecode code = new Bytecode(cf.getConstPool());
+        code.addGetstatic(name, "$VALUES", "[L" + name + ";");
+        code.addInvokevirtual("[L" + name + ";", "clone","()[Ljava.lang.Object;");
+        code.addCheckcast("[L" + name + ";");
+        code.add(Opcode.ARETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        //valueOf
+        mInfo = new MethodInfo(cf.getConstPool(), "valueOf", "(Ljava/lang/String;)L" + name + ";");
+        mInfo.setAccessFlags(0x9);
+        code = new Bytecode(cf.getConstPool());
+        constants.loadClass(code, name);
+        code.addAload(0);
+        code.addInvokestatic("java/lang/Enum", "valueOf", "(Ljava/lang/Class;Ljava/lang/String;)Ljava/lang/Enum;");
+        code.addCheckcast(name);
+        code.add(Opcode.ARETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        //<inti>
+        mInfo = new MethodInfo(cf.getConstPool(), "<init>", "(Ljava/lang/String;I)V");
+        mInfo.setAccessFlags(0x2);
+        code = new Bytecode(cf.getConstPool());
+        code.addAload(0);
+        code.addAload(1);
+        code.addIload(2);
+        code.addInvokespecial("java/lang/Enum", "<init>", "(Ljava/lang/String;I)V");
+        code.add(Opcode.RETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        //$values
+        mInfo = new MethodInfo(cf.getConstPool(), "$values", "()[L" + name + ";");
+        mInfo.setAccessFlags(0x100A);
+        code = new Bytecode(cf.getConstPool());
+        constants.loadInt(code, type.values.length);
+        code.addAnewarray(name);
+        for(int i = 0;i < type.values.length;i++) {
+            code.add(0x59); //dup
+            constants.loadInt(code, i);
+            code.addGetstatic(name, type.values[i], "L" + name + ";");
+            code.add(Opcode.AASTORE);
+        }
+        code.add(Opcode.ARETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        //<clinit>
+        mInfo = new MethodInfo(cf.getConstPool(), "<clinit>", "()V");
+        mInfo.setAccessFlags(0x8);
+        code = new Bytecode(cf.getConstPool());
+        for(int i = 0;i < type.values.length;i++) {
+            code.addNew(name);
+            code.add(Opcode.DUP);
+            constants.loadString(code, type.values[i]);
+            constants.loadInt(code, i);
+            code.addInvokespecial(name, "<init>", "(Ljava/lang/String;I)V");
+            code.addPutstatic(name, type.values[i], "L" + name + ";");
+        }
+        code.addInvokestatic(name, "$values", "()[L" + name + ";");
+        code.addPutstatic(name, "$VALUES", "[L" + name + ";");
+        code.add(Opcode.RETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        writeFile(cf);
+    }
+
+    private void compileData(XJLNDataClass clazz, String name, String path){
+        ClassFile cf = new ClassFile(false, path + "." + name, "java/lang/Object");
+        cf.setAccessFlags(clazz.getAccessFlag());
+
+        //Fields
+        for(String fieldName:clazz.fields.getKeyList()){
+            XJLNField field = clazz.fields.getValue(fieldName);
+
+            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), fieldName, Compiler.toDesc(field.type()));
+            fInfo.setAccessFlags(field.getAccessFlag());
+            cf.addField2(fInfo);
+        }
+
+        //<init>
+        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "<init>", "(" + Compiler.toDesc(clazz.fields.getValueList().toArray(new XJLNField[0])) + ")V");
+        mInfo.setAccessFlags(AccessFlag.PUBLIC);
+        Bytecode code = new Bytecode(cf.getConstPool());
+        code.addAload(0);
+        code.addInvokespecial("java/lang/Object", "<init>", "()V");
+        for(int i = 1;i <= clazz.fields.size();i++){
+            code.addAload(0);
+            String desc = Compiler.toDesc(clazz.fields.getValue(i - 1));
+            switch(desc){
+                case "J" -> code.addLload(i);
+                case "D" -> code.addDload(i);
+                case "F" -> code.addFload(i);
+                case "I", "Z", "B", "C", "S" -> code.addIload(i);
+                default -> code.addAload(i);
+            }
+            code.addPutfield(name, clazz.fields.getKey(i - 1), desc);
+        }
+        code.add(Opcode.RETURN);
+        mInfo.setCodeAttribute(code.toCodeAttribute());
+        cf.addMethod2(mInfo);
+
+        writeFile(cf);
+    }
+
+    private void compileInterface(XJLNInterface clazz, String name, String path){
+        ClassFile cf = new ClassFile(true, path + "." + name, null);
+        cf.setAccessFlags(clazz.getAccessFlag());
+
+        for(String methodName:clazz.methods.getKeyList()){
+            XJLNInterfaceMethod method = clazz.methods.getValue(methodName);
+
+            MethodInfo mInfo = new MethodInfo(cf.getConstPool(), methodName, "(" + Compiler.toDesc(method.parameters().getValueList().toArray(new String[0])) + ")" + Compiler.toDesc(method.returnType()));
+            mInfo.setAccessFlags(AccessFlag.PUBLIC + AccessFlag.ABSTRACT);
+            cf.addMethod2(mInfo);
+        }
+
+        writeFile(cf);
+    }
+
+    private void compileClass(XJLNClass clazz, String name, String path){
+        ClassFile cf = new ClassFile(false, path + "." + name, null);
+        cf.setAccessFlags(clazz.getAccessFlag());
+        ConstantPoolBuilder constants = new ConstantPoolBuilder(cf.getConstPool());
+
+        for(String field:clazz.staticFields.keySet()){
+            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), field, Compiler.toDesc(clazz.staticFields.get(field).type()));
+            fInfo.setAccessFlags(clazz.staticFields.get(field).getAccessFlag());
+            cf.addField2(fInfo);
+        }
+
+        for(String field:clazz.fields.keySet()){
+            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), field, Compiler.toDesc(clazz.fields.get(field).type()));
+            fInfo.setAccessFlags(clazz.fields.get(field).getAccessFlag());
+            cf.addField2(fInfo);
+        }
+
+        current = clazz;
+        currentName = path + "." + name;
+
+        //clinit TODO init values
+        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "<clinit>", "()V");
+        mInfo.setAccessFlags(AccessFlag.STATIC);
+        Bytecode code = new Bytecode(cf.getConstPool());
+
+        for(String fieldName:clazz.staticFields.keySet()){
+            XJLNField field = clazz.staticFields.get(fieldName);
+            if(field.initValue() != null){
+                try {
+                    AST.Calc ast = syntacticParser.parseCalc(field.initValue(), clazz);
+
+                    if(!field.type().equals(ast.type))
+                        throw new RuntimeException("illegal type " + ast.type);
+
+                    ast = astOptimizer.optimize(ast, clazz, currentPath);
+
+                    compileCalc(ast, code, constants, new OperandStack(new SymbolTable()));
+
+                    code.addPutstatic(currentName, fieldName, Compiler.toDesc(field.type()));
+                }catch(Exception e){
+                    e.printStackTrace();
+                    throw new RuntimeException(e.getMessage() + " in: " + path + " :" + field.lineInFile());
+                }
+            }else
+                throw new RuntimeException("expected value in: " + path + " :" + field.lineInFile());
+        }
+
+        code.add(Opcode.RETURN);
+        mInfo.setCodeAttribute(optimize(code));
+        cf.addMethod2(mInfo);
+
+        if(!clazz.methods.containsKey("init"))
+            clazz.createDefaultInit();
+
+        //methods
+        compileMethods(clazz.methods, cf, constants, path + "." + name);
+
+        //static methods
+        compileMethods(clazz.staticMethods, cf, constants, path + "." + name);
+
+        writeFile(cf);
+    }
+
+    private void compileMethods(HashMap<String, XJLNMethod> methods, ClassFile cf, ConstantPoolBuilder constants, String clazzName){
+        for(String method:methods.keySet()){
+            MethodInfo mInfo = new MethodInfo(cf.getConstPool(), method.equals("init") ? "<init>" : method, Compiler.toDesc(methods.get(method)));
+            mInfo.setAccessFlags(methods.get(method).getAccessFlag());
+
+            if(methods.get(method).abstrakt){
+                cf.addMethod2(mInfo);
+                continue;
+            }
+
+            Bytecode code = new Bytecode(cf.getConstPool());
+
+            if(method.equals("init")){
+                code.addAload(0);
+                code.addInvokespecial("java/lang/Object", "<init>", "()V");
+            }
+
+            AST[] astList = parseAst(methods.get(method), clazzName);
+            OperandStack os = OperandStack.forMethod(methods.get(method));
+
+            for(int i = 0;i < astList.length;i++)
+                if(astList[i] instanceof AST.Return && !astList[i].type.equals(methods.get(method).returnType))
+                    throw new RuntimeException("expected " + methods.get(method).returnType + " got " + astList[i].type+ " in: " + clazzName + " :" + (methods.get(method).line + i));
+
+            if(!methods.get(method).returnType.equals("void") && (astList.length == 0 || !(astList[astList.length - 1] instanceof AST.Return)))
+                throw new RuntimeException("Expected return");
+
+            for(AST statement:astOptimizer.optimize(astList, current, currentPath))
+                compileAST(statement, code, constants, os);
+
+            if(methods.get(method).returnType.equals("void"))
+                code.add(Opcode.RETURN);
+
+            code.setMaxLocals(os.getMaxLocals());
+            mInfo.setCodeAttribute(optimize(code));
+            cf.addMethod2(mInfo);
+        }
+    }
+
+    /**
+     * runs the {@link PeepholeOptimizer} over the compiled code if optimizations are enabled
+     * and adds the hits of its rules to the metrics
+     */
+    private CodeAttribute optimize(Bytecode code){
+        if(optimization == 0)
+            return code.toCodeAttribute();
+
+        long[] hits = new long[PeepholeOptimizer.Rule.values().length];
+        CodeAttribute attribute = PeepholeOptimizer.optimize(code, hits);
+        metrics.addPeepholeHits(currentPath, hits);
+        return attribute;
+    }
+
+    private AST[] parseAst(XJLNMethod method, String clazzName){
+        AST[] ast = parseCache != null ? parseCache.getAst(method) : null;
+
+        if(ast == null){
+            Metrics.Timer timer = metrics.start(Metrics.Phase.AST, currentPath);
+
+            try{
+                ast = syntacticParser.parseAst(method, clazzName, current);
+            }finally {
+                timer.stop();
+            }
+
+            metrics.addAst(currentPath, ast);
+
+            if(parseCache != null)
+                parseCache.putAst(method, ast);
+        }
+
+        return ast;
+    }
+
+    private void compileAST(AST ast, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(ast instanceof  AST.Return)
+            compileReturn((AST.Return) ast, code, constants, os);
+        else if(ast instanceof AST.Calc)
+            compileCalc((AST.Calc) ast, code, constants, os);
+        else if(ast instanceof AST.VarAssigment)
+            compileVarAssignment((AST.VarAssigment) ast, code, constants, os);
+        else if(ast instanceof AST.While)
+            compileWhile((AST.While) ast, code, constants, os);
+        else if(ast instanceof AST.If)
+            compileIf((AST.If) ast, code, constants, os);
+    }
+
+    /**
+     * compiles the loop rotated like javac does, the condition is placed after the body and entered with a jump,
+     * so every iteration only executes the conditional jump back to the start of the body
+     */
+    private void compileWhile(AST.While ast, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        ArrayList<Integer> entry = new ArrayList<>();
+        ArrayList<Integer> loop = new ArrayList<>();
+
+        os.newScope();
+        jump(Opcode.GOTO, entry, code);
+        int start = code.getSize();
+
+        for(AST statement: ast.ast)
+            compileAST(statement, code, constants, os);
+
+        patch(entry, code);
+        compileCondition(ast.condition, true, loop, code, constants, os);
+        patch(loop, start, code);
+        os.clearScope();
+    }
+
+    private void compileIf(AST.If ast, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        ArrayList<Integer> gotos = new ArrayList<>();
+
+        while (ast != null){
+            ArrayList<Integer> next = new ArrayList<>();
+
+            os.newScope();
+            if(ast.condition != null)
+                compileCondition(ast.condition, false, next, code, constants, os);
+
+            for(AST statement:ast.ast)
+                compileAST(statement, code, constants, os);
+
+            if(ast.elif != null)
+                jump(Opcode.GOTO, gotos, code);
+
+            patch(next, code);
+
+            ast = ast.elif;
+            os.clearScope();
+        }
+
+        patch(gotos, code);
+    }
+
+    /**
+     * compiles a boolean condition to conditional jumps that are taken if the condition is equal to jumpIf,
+     * otherwise the code continues after the condition. & and | are short-circuit,
+     * comparisons jump directly with if_icmp or with if after lcmp, fcmp and dcmp
+     * @param jumps the positions of the branch offsets, they have to be patched with {@link #patch(ArrayList, Bytecode)}
+     */
+    private void compileCondition(AST.Calc calc, boolean jumpIf, ArrayList<Integer> jumps, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(calc.right == null){
+            if(calc.value.call == null && calc.value.token != null && calc.value.type.equals("boolean")){
+                if(calc.value.token.s().equals("true") == jumpIf)
+                    jump(Opcode.GOTO, jumps, code);
+                return;
+            }
+
+            compileCalc(calc, code, constants, os);
+            jump(jumpIf ? Opcode.IFNE : Opcode.IFEQ, jumps, code);
+            os.pop();
+            return;
+        }
+
+        if(calc.right.type.equals("boolean") && (calc.opp.equals("&") || calc.opp.equals("|"))){
+            AST.Calc operand = operand(calc);
+
+            if(calc.opp.equals("&") == jumpIf){
+                ArrayList<Integer> skip = new ArrayList<>();
+                compileCondition(calc.right, !jumpIf, skip, code, constants, os);
+                compileCondition(operand, jumpIf, jumps, code, constants, os);
+                patch(skip, code);
+            }else{
+                compileCondition(calc.right, jumpIf, jumps, code, constants, os);
+                compileCondition(operand, jumpIf, jumps, code, constants, os);
+            }
+            return;
+        }
+
+        if(!COMPARISONS.containsKey(calc.opp)){
+            compileCalc(calc, code, constants, os);
+            jump(jumpIf ? Opcode.IFNE : Opcode.IFEQ, jumps, code);
+            os.pop();
+            return;
+        }
+
+        int opcode = COMPARISONS.get(calc.opp);
+
+        if(!jumpIf)
+            opcode = negate(opcode);
+
+        compileCalc(calc.right, code, constants, os);
+
+        switch (calc.right.type){
+            case "long", "float", "double" -> {
+                compileOperand(calc, code, constants, os);
+
+                switch (calc.right.type){
+                    case "long" -> code.add(Opcode.LCMP);
+                    case "float" -> code.add(calc.opp.equals("<") || calc.opp.equals("<=") ? Opcode.FCMPG : Opcode.FCMPL);
+                    case "double" -> code.add(calc.opp.equals("<") || calc.opp.equals("<=") ? Opcode.DCMPG : Opcode.DCMPL);
+                }
+
+                os.pop();
+                jump(opcode, jumps, code);
+            }
+            default -> {
+                if(isZero(calc)){
+                    jump(opcode, jumps, code);
+                }else{
+                    compileOperand(calc, code, constants, os);
+                    jump(opcode + Opcode.IF_ICMPEQ - Opcode.IFEQ, jumps, code);
+                    os.pop();
+                }
+            }
+        }
+
+        os.pop();
+    }
+
+    /**
+     * compiles a boolean operation to a value by loading 1 or 0 depending on the jumps of the condition
+     */
+    private void compileBoolean(AST.Calc calc, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        ArrayList<Integer> isFalse = new ArrayList<>();
+        ArrayList<Integer> end = new ArrayList<>();
+
+        compileCondition(calc, false, isFalse, code, constants, os);
+        constants.loadInt(code, 1);
+        jump(Opcode.GOTO, end, code);
+        patch(isFalse, code);
+        constants.loadInt(code, 0);
+        patch(end, code);
+
+        os.push(1);
+    }
+
+    /**
+     * @return the if instruction with the opposite condition
+     */
+    private static int negate(int opcode){
+        return switch (opcode){
+            case Opcode.IFEQ -> Opcode.IFNE;
+            case Opcode.IFNE -> Opcode.IFEQ;
+            case Opcode.IFLT -> Opcode.IFGE;
+            case Opcode.IFGE -> Opcode.IFLT;
+            case Opcode.IFGT -> Opcode.IFLE;
+            default -> Opcode.IFGT;
+        };
+    }
+
+    /**
+     * @return if the right operand of the comparison is the int literal 0, so it can be compared with if instead of if_icmp
+     */
+    private static boolean isZero(AST.Calc calc){
+        if(calc.left != null || calc.value.call != null || calc.value.cast != null || calc.value.token == null)
+            return false;
+
+        return switch (calc.value.token.t()){
+            case INTEGER, SHORT -> Integer.parseInt(calc.value.token.withoutExtension()) == 0;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return the right operand of the operation as Calc
+     */
+    private static AST.Calc operand(AST.Calc calc){
+        if(calc.left != null)
+            return calc.left;
+
+        AST.Calc operand = new AST.Calc();
+        operand.value = calc.value;
+        operand.type = calc.value.type;
+        return operand;
+    }
+
+    /**
+     * adds a jump whose offset is patched later
+     */
+    private static void jump(int opcode, ArrayList<Integer> jumps, Bytecode code){
+        code.addOpcode(opcode);
+        jumps.add(code.getSize());
+        code.addIndex(0);
+    }
+
+    /**
+     * lets all given jumps target the end of the code
+     */
+    private static void patch(ArrayList<Integer> jumps, Bytecode code){
+        patch(jumps, code.getSize(), code);
+    }
+
+    private static void patch(ArrayList<Integer> jumps, int target, Bytecode code){
+        for(int i:jumps)
+            code.write16bit(i, target - i + 1);
+    }
+
+    private void compileOperand(AST.Calc calc, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(calc.left != null)
+            compileCalc(calc.left, code, constants, os);
+        else if(calc.value.call != null)
+            compileCall(calc.value.call, code, constants, os);
+        else
+            addValue(calc.value, code, constants, os);
+    }
+
+    private void compileCalc(AST.Calc calc, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(calc.right == null) {
+            if(calc.value.call != null)
+                compileCall(calc.value.call, code, constants, os);
+            else
+                addValue(calc.value, code, constants, os);
+        }else{
+            if(calc.opp.equals("=") || calc.opp.equals("#")){
+                AST.Call variable = calc.right.value.call;
+                Integer increment = calc.opp.equals("#") ? increment(calc) : null;
+
+                if(increment != null){
+                    iinc(variable.slot, increment, code);
+                    return;
+                }
+                boolean field = variable.slot == -1 && current != null && current.hasField(variable.call) == 1;
+
+                if(field)
+                    code.addAload(0);
+
+                compileCalc(calc.left, code, constants, os);
+                if(calc.opp.equals("=")) code.add(dup(calc.type, field));
+                compileStore(variable, calc.type, code, os);
+                return;
+            }
+
+            if(SyntacticParser.BOOL_OPERATORS.contains(calc.opp) && calc.type.equals("boolean")){
+                compileBoolean(calc, code, constants, os);
+                return;
+            }
+
+            compileCalc(calc.right, code, constants, os);
+            compileOperand(calc, code, constants, os);
+
+            switch(calc.type){
+                case "int", "char", "byte", "short" -> {
+                    switch (calc.opp){
+                        case "+" -> code.add(Opcode.IADD);
+                        case "-" -> code.add(Opcode.ISUB);
+                        case "*" -> code.add(Opcode.IMUL);
+                        case "/" -> code.add(Opcode.IDIV);
+                        case "&" -> code.add(Opcode.IAND);
+                        case "|" -> code.add(Opcode.IOR);
+                    }
+
+                    switch (calc.type){
+                        case "char" -> code.add(Opcode.I2C);
+                        case "byte" -> code.add(Opcode.I2B);
+                        case "short" -> code.add(Opcode.I2S);
+                    }
+                }
+                case "double" -> {
+                    switch (calc.opp){
+                        case "+" -> code.add(Opcode.DADD);
+                        case "-" -> code.add(Opcode.DSUB);
+                        case "*" -> code.add(Opcode.DMUL);
+                        case "/" -> code.add(Opcode.DDIV);
+                    }
+                }
+                case "float" -> {
+                    switch (calc.opp){
+                        case "+" -> code.add(Opcode.FADD);
+                        case "-" -> code.add(Opcode.FSUB);
+                        case "*" -> code.add(Opcode.FMUL);
+                        case "/" -> code.add(Opcode.FDIV);
+                    }
+                }
+                case "long" -> {
+                    switch (calc.opp){
+                        case "+" -> code.add(Opcode.LADD);
+                        case "-" -> code.add(Opcode.LSUB);
+                        case "*" -> code.add(Opcode.LMUL);
+                        case "/" -> code.add(Opcode.LDIV);
+                        case "&" -> code.add(Opcode.LAND);
+                        case "|" -> code.add(Opcode.LOR);
+                    }
+                }
+            }
+
+            os.pop();
+        }
+    }
+
+    private void compileCast(AST.Value value, Bytecode code, OperandStack os){
+        switch(value.cast){
+            case "int", "short", "byte" -> {
+                switch(value.type){
+                    case "double" -> {
+                        code.add(Opcode.I2D);
+                        os.pop();
+                        os.push(2);
+                    }
+                    case "long" -> {
+                        code.add(Opcode.I2L);
+                        os.pop();
+                        os.push(2);
+                    }
+                    case "float" -> code.add(Opcode.I2F);
+                    case "byte" -> code.add(Opcode.I2B);
+                    case "char" -> code.add(Opcode.I2C);
+                    case "short" -> code.add(Opcode.I2S);
+                }
+            }
+            case "double" -> {
+                switch(value.type){
+                    case "int" -> {
+                        code.add(Opcode.D2I);
+                        os.pop();
+                        os.push(1);
+                    }
+                    case "long" -> code.add(Opcode.D2L);
+                    case "float" -> {
+                        code.add(Opcode.D2F);
+                        os.pop();
+                        os.push(1);
+                    }
+                }
+            }
+            case "long" -> {
+                switch(value.type){
+                    case "double" -> code.add(Opcode.L2D);
+                    case "int" -> {
+                        code.add(Opcode.L2I);
+                        os.pop();
+                        os.push(1);
+                    }
+                    case "float" -> {
+                        code.add(Opcode.L2F);
+                        os.pop();
+                        os.push(1);
+                    }
+                }
+            }
+            case "float" -> {
+                switch(value.type){
+                    case "double" -> {
+                        code.add(Opcode.F2D);
+                        os.pop();
+                        os.push(2);
+                    }
+                    case "long" -> {
+                        code.add(Opcode.F2L);
+                        os.pop();
+                        os.push(2);
+                    }
+                    case "int" -> code.add(Opcode.F2I);
+                }
+            }
+        }
+    }
+
+    private void addValue(AST.Value value, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        switch (value.cast != null ? value.cast : value.type){
+            case "int", "short", "byte", "char" -> {
+                int intValue;
+                if(value.token.t() == Token.Type.CHAR)
+                    intValue = value.token.s().charAt(1);
+                else
+                    intValue = Integer.parseInt(value.token.withoutExtension());
+
+                constants.loadInt(code, intValue);
+                os.push(1);
+            }
+            case "boolean" -> {
+                constants.loadInt(code, value.token.s().equals("true") ? 1 : 0);
+                os.push(1);
+            }
+            case "float" -> {
+                constants.loadFloat(code, Float.parseFloat(value.token.withoutExtension()));
+                os.push(1);
+            }
+            case "double" -> {
+                constants.loadDouble(code, Double.parseDouble(value.token.withoutExtension()));
+                os.push(2);
+            }
+            case "long" -> {
+                constants.loadLong(code, Long.parseLong(value.token.withoutExtension()));
+                os.push(2);
+            }
+        }
+
+        if(value.cast != null)
+            compileCast(value, code, os);
+    }
+
+    private void compileCall(AST.Call call, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(call instanceof AST.StaticCall){
+
+        }else compileLoad(call, code, os);
+    }
+
+    private void compileVarAssignment(AST.VarAssigment ast, Bytecode code, ConstantPoolBuilder constants, OperandStack os){
+        if(ast.call == null) {
+            compileCalc(ast.calc, code, constants, os);
+            store(os.declare(ast.name, ast.type), ast.type, code);
+            os.pop();
+        }else{
+
+        }
+    }
+
+    private void compileLoad(AST.Call ast, Bytecode code, OperandStack os){
+        if(ast.type == null)
+            return; //TODO
+
+        if(ast.slot != -1) {
+            switch (ast.type) {
+                case "int", "boolean", "char", "byte", "short" -> {
+                    code.addIload(ast.slot);
+                    os.push(1);
+                }
+                case "float" -> {
+                    code.addFload(ast.slot);
+                    os.push(1);
+                }
+                case "double" -> {
+                    code.addDload(ast.slot);
+                    os.push(2);
+                }
+                case "long" -> {
+                    code.addLload(ast.slot);
+                    os.push(2);
+                }
+            }
+        }else{
+            short field = current == null ? 0 : current.hasField(ast.call);
+
+            if(field == 0)
+                throw new RuntimeException("Variable " + ast.call + " did not exist");
+
+            if(field == 1){
+                code.addAload(0);
+                code.addGetfield(currentName, ast.call, Compiler.toDesc(ast.type));
+            }else
+                code.addGetstatic(currentName, ast.call, Compiler.toDesc(ast.type));
+
+            os.push(SymbolTable.size(ast.type));
+        }
+    }
+
+    /**
+     * stores the value on top of the stack in the given variable, variables without a slot are fields
+     */
+    private void compileStore(AST.Call variable, String type, Bytecode code, OperandStack os){
+        String name = variable.call;
+
+        if(variable.slot != -1) {
+            if(!os.isDeclared(variable.slot))
+                os.declare(name, type);
+
+            store(variable.slot, type, code);
+        }else{
+            short field = current.hasField(name);
+
+            if(field == 0)
+                throw new RuntimeException("Variable " + name + " did not exist");
+
+            if(field == 1)
+                code.addPutfield(currentName, name, Compiler.toDesc(type)); //this has been loaded before the value
+            else
+                code.addPutstatic(currentName, name, Compiler.toDesc(type));
+        }
+
+        os.pop();
+    }
+
+    /**
+     * @return the constant added to the int variable if the statement is variable = variable + constant,
+     * variable = constant + variable or variable = variable - constant, otherwise null
+     */
+    private static Integer increment(AST.Calc calc){
+        AST.Call variable = calc.right.value.call;
+        AST.Calc value = calc.left;
+
+        if(variable.slot == -1 || !"int".equals(variable.type) || value.right == null || value.left != null || value.right.right != null)
+            return null;
+
+        Integer constant;
+
+        if(isVariable(value.right.value, variable.slot))
+            constant = intLiteral(value.value);
+        else if(value.opp.equals("+") && isVariable(value.value, variable.slot))
+            constant = intLiteral(value.right.value);
+        else
+            return null;
+
+        if(constant == null || !(value.opp.equals("+") || value.opp.equals("-")))
+            return null;
+
+        int increment = value.opp.equals("-") ? -constant : constant;
+
+        return increment >= Short.MIN_VALUE && increment <= Short.MAX_VALUE ? increment : null;
+    }
+
+    private static boolean isVariable(AST.Value value, int slot){
+        return value.call != null && value.cast == null && value.call.slot == slot;
+    }
+
+    /**
+     * @return the value of the int literal or null if the value is no int literal
+     */
+    private static Integer intLiteral(AST.Value value){
+        if(value.call != null || value.cast != null || value.token == null || value.token.t() != Token.Type.INTEGER)
+            return null;
+
+        return Integer.parseInt(value.token.s());
+    }
+
+    /**
+     * adds iinc, the wide form is used for slots above 255 and constants outside of the byte range
+     */
+    private static void iinc(int slot, int increment, Bytecode code){
+        if(slot <= 255 && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE){
+            code.addOpcode(Opcode.IINC);
+            code.add(slot, increment);
+        }else{
+            code.add(Opcode.WIDE, Opcode.IINC);
+            code.addIndex(slot);
+            code.addIndex(increment);
+        }
+    }
+
+    /**
+     * @param field if the value is stored in a field, so the copy has to be placed below the object
+     * @return the instruction duplicating a value of the given type
+     */
+    private int dup(String type, boolean field){
+        if(SymbolTable.size(type) == 2)
+            return field ? Opcode.DUP2_X1 : Opcode.DUP2;
+
+        return field ? Opcode.DUP_X1 : Opcode.DUP;
+    }
+
+    private void store(int slot, String type, Bytecode code){
+        switch (type) {
+            case "int", "boolean", "char", "byte", "short" -> code.addIstore(slot);
+            case "float" -> code.addFstore(slot);
+            case "double" -> code.addDstore(slot);
+            case "long" -> code.addLstore(slot);
+        }
+    }
+
+    private void compileReturn(AST.Return ast, Bytecode code, ConstantPoolBuilder constants, OperandStack os){ //TODO
+        compileCalc(ast.calc, code, constants, os);
+
+        switch(ast.type){
+            case "double" -> code.add(Opcode.DRETURN);
+            case "float" -> code.add(Opcode.FRETURN);
+            case "long" -> code.add(Opcode.LRETURN);
+            case "int", "boolean", "short", "byte", "char" -> code.add(Opcode.IRETURN);
+        }
+    }
+
+    private void writeFile(ClassFile cf){
+        cf.setMajorVersion(JAVA_19);
+
+        for(MethodInfo mInfo:cf.getMethods())
+            StackMapBuilder.build(mInfo, cf.getName());
+
+        Metrics.Timer timer = metrics.start(Metrics.Phase.WRITE, currentPath);
+
+        try{
+            byte[] bytes = backend.emit(cf);
+
+            sink.write(cf.getName(), bytes);
+            metrics.addClass(currentPath, bytes.length);
+        }finally {
+            timer.stop();
+        }
+
+        writtenClasses.add(cf.getName());
+    }
+}
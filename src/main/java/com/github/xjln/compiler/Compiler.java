@@ -1,19 +1,33 @@
 package com.github.xjln.compiler;
 
-import com.github.xjln.bytecode.AccessFlag;
 import com.github.xjln.lang.*;
 import com.github.xjln.utility.MatchedList;
-import javassist.CannotCompileException;
-import javassist.ClassPool;
-import javassist.bytecode.*;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 public final class Compiler {
 
@@ -25,17 +39,42 @@ public final class Compiler {
             new String[]{"var"                        , "int"              , "double"          , "long"          , "float"          , "boolean"          , "char"               , "byte"          , "short"},
             new String[]{"com.github.xjln.utility.Var", "java.lang.Integer", "java.lang.Double", "java.lang.Long", "java.lang.Float", "java.lang.Boolean", "java.lang.Character", "java.lang.Byte", "java.lang.Short"});
 
+    public static final String VERSION = "1.0-SNAPSHOT";
+
     public static final Set<String> PRIMITIVES = Set.of("int", "double", "long", "float", "boolean", "char", "byte", "short");
+    private static final Set<String> INTEGRALS = Set.of("int", "long", "char", "byte", "short");
 
-    private static final HashMap<String, XJLNFile> files = new HashMap<>();
+    /** the parsed Files of the Compiler that parsed Folders most recently */
+    private static volatile Map<String, XJLNFile> latestFiles = Map.of();
 
     private static boolean debug;
 
-    private final SyntacticParser syntacticParser = new SyntacticParser();
-    private final Parser parser = new Parser();
+    private final Options options;
+    private final ConcurrentHashMap<String, XJLNFile> files = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> contentHashes = new ConcurrentHashMap<>();
+    private final Metrics metrics;
+    private ParseCache parseCache;
+    private OutputCache outputCache;
+    /** if the output Folder is compiled incrementally, set by the options or by watch mode */
+    private boolean incremental;
+
+    /**
+     * compiles all .xjln Files in the given Folders and runs the main method in the given Main class
+     * @param mainClass the class that contains the main method
+     * @param enableDebugInformation if information of the compilation process should be shown
+     * @param threads the number of threads used to parse and compile the .xjln Files
+     * @param srcFolders the folders to compile
+     * @throws RuntimeException if there are errors within the .xjln Files
+     */
+    public Compiler(String mainClass, boolean enableDebugInformation, int threads, String... srcFolders) throws RuntimeException{
+        this(new Options().debug(enableDebugInformation).threads(threads), srcFolders);
 
-    private XJLNClass current;
-    private String currentName;
+        try{
+            runMain(new URLClassLoader(new URL[]{new File(options.output).toURI().toURL()}, Compiler.class.getClassLoader()), mainClass);
+        }catch (MalformedURLException e){
+            throw new RuntimeException("Unable to access " + options.output);
+        }
+    }
 
     /**
      * compiles all .xjln Files in the given Folders and runs the main method in the given Main class
@@ -45,12 +84,18 @@ public final class Compiler {
      * @throws RuntimeException if there are errors within the .xjln Files
      */
     public Compiler(String mainClass, boolean enableDebugInformation, String... srcFolders) throws RuntimeException{
-        debug = enableDebugInformation;
+        this(mainClass, enableDebugInformation, Runtime.getRuntime().availableProcessors(), srcFolders);
+    }
 
-        if(srcFolders.length > 0) {
-            compileClass(srcFolders);
-            //TODO run main
-        }
+    /**
+     * compiles all .xjln Files in the given Folders. No Main Method will be executed
+     * @param enableDebugInformation if information of the compilation process should be shown
+     * @param threads the number of threads used to parse and compile the .xjln Files
+     * @param srcFolders the folders to compile
+     * @throws RuntimeException if there are errors within the .xjln Files
+     */
+    public Compiler(boolean enableDebugInformation, int threads, String... srcFolders) throws RuntimeException{
+        this(new Options().debug(enableDebugInformation).threads(threads), srcFolders);
     }
 
     /**
@@ -60,10 +105,7 @@ public final class Compiler {
      * @throws RuntimeException if there are errors within the .xjln Files
      */
     public Compiler(boolean enableDebugInformation, String... srcFolders) throws RuntimeException{
-        if(srcFolders.length > 0) {
-            debug = enableDebugInformation;
-            compileClass(srcFolders);
-        }
+        this(new Options().debug(enableDebugInformation), srcFolders);
     }
 
     /**
@@ -72,21 +114,269 @@ public final class Compiler {
      * @throws RuntimeException if there are errors within the .xjln Files
      */
     public Compiler(String... srcFolders) throws RuntimeException{
-        if(srcFolders.length > 0) {
-            debug = false;
+        this(new Options(), srcFolders);
+    }
+
+    /**
+     * compiles all .xjln Files in the given Folders with the given Options. No Main Method will be executed
+     * @param options the options of the compilation process
+     * @param srcFolders the folders to compile
+     * @throws RuntimeException if there are errors within the .xjln Files
+     */
+    public Compiler(Options options, String... srcFolders) throws RuntimeException{
+        this.options = options;
+        this.metrics = new Metrics(options.metrics);
+        this.incremental = options.incremental;
+        debug = options.debug;
+
+        if(options.sink != null && (options.incremental || options.outputCache != null))
+            throw new RuntimeException("incremental compilation and the output cache require the output Folder instead of an output sink");
+
+        if(options.parseCache != null)
+            parseCache = new ParseCache(new File(options.parseCache), options.parseCacheSize, options.invalidateParseCache);
+
+        if(options.outputCache != null)
+            outputCache = new OutputCache(new File(options.outputCache), options.outputCacheSize, options.linkOutputCache);
+
+        if(srcFolders.length > 0)
             compileClass(srcFolders);
+    }
+
+    /**
+     * compiles all .xjln Files in the given Folders and keeps recompiling changed Files until the current Thread is interrupted.
+     * Parsed Files and caches are kept in memory, so only changed Files and the Files using their signatures are recompiled
+     * @param srcFolders the folders to compile and watch
+     * @throws RuntimeException if the initial compilation fails or the Folders could not be watched
+     */
+    public void watch(String... srcFolders) throws RuntimeException{
+        if(options.sink != null)
+            throw new RuntimeException("watch mode requires the output Folder instead of an output sink");
+
+        incremental = true;
+
+        compileClass(srcFolders);
+
+        new Watcher(this, options.watchDebounce).watch(srcFolders);
+    }
+
+    /**
+     * runs a language server speaking the Language Server Protocol over stdin and stdout until the client exits.
+     * Open Files are reparsed incrementally on every change, everything else printed to stdout is redirected to stderr
+     * @param srcFolders the folders containing the Files of the workspace
+     * @throws RuntimeException if stdin or stdout could not be accessed
+     */
+    public void serve(String... srcFolders) throws RuntimeException{
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+
+        try{
+            new LanguageServer(srcFolders, options.serverCacheSize).serve(System.in, stdout);
+        }finally {
+            System.setOut(stdout);
         }
     }
 
+    /**
+     * parses the given changed Files again, removes deleted Files and Folders and compiles incrementally
+     * @return the number of compiled Files
+     */
+    int recompile(Collection<File> changed){
+        ArrayList<File> existing = new ArrayList<>();
+
+        for(File file:changed){
+            if(file.exists())
+                existing.add(file);
+            else{
+                String path = pathOf(file);
+                String folder = path + File.separator.replace("\\", "."); //the separator as written by pathOf
+
+                files.remove(path);
+                contentHashes.remove(path);
+                files.keySet().removeIf(p -> p.startsWith(folder));
+                contentHashes.keySet().removeIf(p -> p.startsWith(folder));
+            }
+        }
+
+        ConcurrentSkipListMap<String, String> errors = new ConcurrentSkipListMap<>();
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for(File file:existing)
+            tasks.add(new ParseTask(file, errors));
+
+        runTasks(tasks, errors);
+
+        int compiled = compileIncremental();
+
+        if(parseCache != null)
+            parseCache.store(files);
+
+        return compiled;
+    }
+
+    /**
+     * compiles all .xjln Files in the given Folders without writing anything to the output Folder or the caches
+     * @param srcFolders the folders to compile
+     * @return the bytecode of all compiled classes mapped by their binary name
+     * @throws RuntimeException if there are errors within the .xjln Files
+     */
+    public Map<String, byte[]> compileInMemory(String... srcFolders) throws RuntimeException{
+        HashMap<String, String> sources = new HashMap<>();
+
+        for(String folder:srcFolders){
+            Metrics.Timer timer = metrics.start(Metrics.Phase.DISCOVERY, folder);
+
+            try(Stream<Path> stream = Files.walk(Paths.get(folder))){
+                for(Path file:stream.filter(p -> p.toString().endsWith(".xjln")).toList())
+                    sources.put(pathOf(file.toFile()), Source.read(file.toFile()).text());
+            }catch (IOException e){
+                throw new RuntimeException("Unable to access " + folder);
+            }finally {
+                timer.stop();
+            }
+        }
+
+        return compileSources(sources);
+    }
+
+    /**
+     * compiles the given source code without accessing the file system
+     * @param sources the source code of each File mapped by the path of the File without the .xjln extension, like "app/Main"
+     * @return the bytecode of all compiled classes mapped by their binary name
+     * @throws RuntimeException if there are errors within the sources
+     */
+    public Map<String, byte[]> compileSources(Map<String, String> sources) throws RuntimeException{
+        ConcurrentHashMap<String, XJLNFile> parsed = new ConcurrentHashMap<>();
+        ConcurrentSkipListMap<String, String> errors = new ConcurrentSkipListMap<>();
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for(String path:sources.keySet()){
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Metrics.Timer timer = metrics.start(Metrics.Phase.PARSE, path.replace("\\", "."));
+
+                try{
+                    XJLNFile file = new Parser(metrics, path.replace("\\", "."), options.lexChunkSize).parseSource(path, sources.get(path));
+
+                    if(file != null)
+                        parsed.put(path.replace("\\", "."), file);
+                }catch (RuntimeException e){
+                    errors.put(path, e.getMessage() == null ? e.toString() : e.getMessage());
+                }finally {
+                    timer.stop();
+                }
+            }));
+        }
+
+        runTasks(tasks, errors);
+
+        printDebug("parsing finished successfully");
+
+        MemorySink sink = new MemorySink();
+        new EmissionScheduler(parsed, options.threads, sink, options.backend, null, metrics, options.optimization).run();
+
+        printDebug("compiled " + parsed.size() + " Files in memory");
+
+        return sink.getClasses();
+    }
+
+    /**
+     * @param classes the bytecode of classes mapped by their binary name, as returned by {@link #compileSources(Map)}
+     * @return a new ClassLoader that defines the given classes, classes of the compiler and the JDK are loaded by its parent
+     */
+    public static ClassLoader createClassLoader(Map<String, byte[]> classes){
+        return new MemoryClassLoader(classes, Compiler.class.getClassLoader());
+    }
+
+    /**
+     * runs the main method of the given class in the current Thread
+     * @param loader the loader of the compiled classes
+     * @param mainClass the path of the File whose main method should be run, like "app/Main", or the binary name of a class
+     * @param args the arguments passed to the main method, if it has a String[] parameter
+     * @throws RuntimeException if there is no main method or it throws an Exception
+     */
+    public static void runMain(ClassLoader loader, String mainClass, String... args) throws RuntimeException{
+        String name = mainClass.replace('/', '.').replace('\\', '.');
+        Class<?> clazz;
+
+        try{
+            clazz = loader.loadClass(name + ".Main");
+        }catch (ClassNotFoundException e){
+            try{
+                clazz = loader.loadClass(name);
+            }catch (ClassNotFoundException ex){
+                throw new RuntimeException("Main class " + mainClass + " does not exist");
+            }
+        }catch (LinkageError e){
+            throw new RuntimeException("failed to load " + mainClass + ": " + e.getMessage());
+        }
+
+        try{
+            Method main;
+            Object[] parameters;
+
+            try{
+                main = clazz.getDeclaredMethod("main", String[].class);
+                parameters = new Object[]{args};
+            }catch (NoSuchMethodException e){
+                main = clazz.getDeclaredMethod("main");
+                parameters = new Object[0];
+            }
+
+            if(!Modifier.isStatic(main.getModifiers()))
+                throw new RuntimeException("main method of " + mainClass + " is not static");
+
+            main.setAccessible(true);
+            main.invoke(null, parameters);
+        }catch (NoSuchMethodException e){
+            throw new RuntimeException("Main class " + mainClass + " has no main method");
+        }catch (IllegalAccessException e){
+            throw new RuntimeException("Unable to access main method of " + mainClass);
+        }catch (InvocationTargetException e){
+            if(e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+
+            throw new RuntimeException(e.getCause());
+        }catch (LinkageError e){
+            throw new RuntimeException("failed to load " + mainClass + ": " + e.getMessage());
+        }
+    }
+
+    private void runTasks(ArrayList<ForkJoinTask<?>> tasks, ConcurrentSkipListMap<String, String> errors){
+        ForkJoinPool pool = new ForkJoinPool(options.threads);
+
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }finally {
+            pool.shutdown();
+        }
+
+        if(!errors.isEmpty())
+            throw new RuntimeException(String.join("\n", errors.values()));
+    }
+
     private void compileClass(String[] srcFolders){
         validateFolders(srcFolders);
 
-        for(String folder:srcFolders)
-            parseFolder(new File(folder));
+        parseFolders(srcFolders);
+        latestFiles = files;
 
         printDebug("parsing finished successfully");
 
-        compileFiles();
+        if(incremental)
+            compileIncremental();
+        else if(options.sink != null){
+            try(OutputSink sink = options.sink){
+                emit(files, computeSignatures(), sink);
+            }
+        }else
+            compileFiles();
+
+        if(parseCache != null)
+            parseCache.store(files);
 
         System.out.println("\nFinished compilation process successfully\n");
     }
@@ -106,14 +396,17 @@ public final class Compiler {
 
         printDebug("src Folders have been validated");
 
-        file = new File("compiled");
+        if(options.sink != null)
+            return;
+
+        file = new File(options.output);
 
         if(!file.exists() || !file.isDirectory()){
-            if(!file.mkdir())
+            if(!file.mkdirs())
                 throw new RuntimeException("Failed to create output Folder");
 
             printDebug("output Folder has been created");
-        }else{
+        }else if(!incremental){
             clearFolder(file, false);
 
             printDebug("output Folder has been cleared");
@@ -137,716 +430,272 @@ public final class Compiler {
         }
     }
 
-    private void parseFolder(File folder){
-        for(File file: Objects.requireNonNull(folder.listFiles())) {
-            if (file.isDirectory())
-                parseFolder(file);
-            else
-                parseFile(file);
-        }
-    }
-
-    private void parseFile(File file){
-        if(file.getName().endsWith(".xjln")) {
-            try {
-                XJLNFile xjlnFile = parser.parseFile(file);
-                if(xjlnFile != null)
-                    files.put(file.getPath().substring(0, file.getPath().length() - 5).replace("\\", "."), xjlnFile);
-            } catch (FileNotFoundException ignored) {
-                throw new RuntimeException("Unable to access " + file.getPath());
-            }
-        }
-    }
-
-    private void compileFiles(){
-        for(String path: files.keySet()){
-            XJLNFile file = files.get(path);
-
-            if(!file.main.isEmpty())
-                compileClass(file.main, "Main", path);
-
-            for(String name:file.classes.keySet()){
-                Compilable c = file.classes.get(name);
-
-                if(c instanceof XJLNTypeClass)
-                    compileType((XJLNTypeClass) c, name, path);
-                else if(c instanceof XJLNDataClass)
-                    compileData((XJLNDataClass) c, name, path);
-                else if(c instanceof XJLNInterface)
-                    compileInterface((XJLNInterface) c, name, path);
-                else if(c instanceof XJLNClass)
-                    compileClass((XJLNClass) c, name, path);
-            }
-        }
-    }
-
-    private void compileType(XJLNTypeClass type, String name, String path){
-        ClassFile cf = new ClassFile(false, path + "." + name, "java.lang.Enum");
-        cf.setAccessFlags(type.getAccessFlag());
+    private void parseFolders(String[] srcFolders){
+        ConcurrentSkipListMap<String, String> errors = new ConcurrentSkipListMap<>();
+        ForkJoinPool pool = new ForkJoinPool(options.threads);
 
-        //Types
-        for(String value: type.values){
-            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), value, "L" + name + ";");
-            fInfo.setAccessFlags(0x4019);
-            cf.addField2(fInfo);
-        }
-
-        //$VALUES
-        FieldInfo fInfo = new FieldInfo(cf.getConstPool(), "$VALUES", "[L" + name + ";");
-        fInfo.setAccessFlags(0x101A);
-        cf.addField2(fInfo);
-
-        //values()
-        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "values","()[L" + name + ";");
-        mInfo.setAccessFlags(0x9);
-        Bytecode code = new Bytecode(cf.getConstPool());
-        code.addGetstatic(name, "$VALUES", "[L" + name + ";");
-        code.addInvokevirtual("[L" + name + ";", "clone","()[Ljava.lang.Object;");
-        code.addCheckcast("[L" + name + ";");
-        code.add(Opcode.ARETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
-
-        //valueOf
-        mInfo = new MethodInfo(cf.getConstPool(), "valueOf", "(Ljava/lang/String;)L" + name + ";");
-        mInfo.setAccessFlags(0x9);
-        code = new Bytecode(cf.getConstPool());
-        code.addLdc("L" + name + ";.class");
-        code.addAload(0);
-        code.addInvokestatic("java/lang/Enum", "valueOf", "(Ljava/lang/Class;Ljava/lang/String;)Ljava/lang/Enum;");
-        code.addCheckcast(name);
-        code.add(Opcode.ARETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
-
-        //<inti>
-        mInfo = new MethodInfo(cf.getConstPool(), "<init>", "(Ljava/lang/String;I)V");
-        mInfo.setAccessFlags(0x2);
-        code = new Bytecode(cf.getConstPool());
-        code.addAload(0);
-        code.addAload(1);
-        code.addIload(2);
-        code.addInvokespecial("java/lang/Enum", "<init>", "(Ljava/lang/String;I)V");
-        code.add(Opcode.RETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
-
-        //$values
-        mInfo = new MethodInfo(cf.getConstPool(), "$values", "()[L" + name + ";");
-        mInfo.setAccessFlags(0x100A);
-        code = new Bytecode(cf.getConstPool());
-        code.addIconst(type.values.length);
-        code.addAnewarray(name);
-        for(int i = 0;i < type.values.length;i++) {
-            code.add(0x59); //dup
-            code.addIconst(i);
-            code.addGetstatic(name, type.values[i], "L" + name + ";");
-            code.add(Opcode.AASTORE);
-        }
-        code.add(Opcode.ARETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
-
-        //<clinit>
-        mInfo = new MethodInfo(cf.getConstPool(), "<clinit>", "()V");
-        mInfo.setAccessFlags(0x8);
-        code = new Bytecode(cf.getConstPool());
-        for(int i = 0;i < type.values.length;i++) {
-            code.addNew(name);
-            code.add(Opcode.DUP);
-            code.addLdc(type.values[i]);
-            code.addIconst(i);
-            code.addInvokespecial(name, "<init>", "(Ljava/lang/String;I)V");
-            code.addPutstatic(name, type.values[i], "L" + name + ";");
+        try {
+            for(String folder:srcFolders)
+                pool.invoke(new ParseTask(new File(folder), errors));
+        }finally {
+            pool.shutdown();
         }
-        code.addInvokestatic(name, "$values", "()[L" + name + ";");
-        code.addPutstatic(name, "$VALUES", "[L" + name + ";");
-        code.add(Opcode.RETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
 
-        writeFile(cf);
+        if(!errors.isEmpty())
+            throw new RuntimeException(String.join("\n", errors.values()));
     }
 
-    private void compileData(XJLNDataClass clazz, String name, String path){
-        ClassFile cf = new ClassFile(false, path + "." + name, "java/lang/Object");
-        cf.setAccessFlags(clazz.getAccessFlag());
+    private final class ParseTask extends RecursiveAction {
 
-        //Fields
-        for(String fieldName:clazz.fields.getKeyList()){
-            XJLNField field = clazz.fields.getValue(fieldName);
+        private static final long serialVersionUID = 1L;
 
-            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), fieldName, toDesc(field.type()));
-            fInfo.setAccessFlags(field.getAccessFlag());
-            cf.addField2(fInfo);
-        }
+        private final File file;
+        private final ConcurrentSkipListMap<String, String> errors;
 
-        //<init>
-        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "<init>", "(" + toDesc(clazz.fields.getValueList().toArray(new XJLNField[0])) + ")V");
-        mInfo.setAccessFlags(AccessFlag.PUBLIC);
-        Bytecode code = new Bytecode(cf.getConstPool());
-        code.addAload(0);
-        code.addInvokespecial("java/lang/Object", "<init>", "()V");
-        for(int i = 1;i <= clazz.fields.size();i++){
-            code.addAload(0);
-            String desc = toDesc(clazz.fields.getValue(i - 1));
-            switch(desc){
-                case "J" -> code.addLload(i);
-                case "D" -> code.addDload(i);
-                case "F" -> code.addFload(i);
-                case "I", "Z", "B", "C", "S" -> code.addIload(i);
-                default -> code.addAload(i);
-            }
-            code.addPutfield(name, clazz.fields.getKey(i - 1), desc);
+        ParseTask(File file, ConcurrentSkipListMap<String, String> errors){
+            this.file = file;
+            this.errors = errors;
         }
-        code.add(Opcode.RETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
 
-        writeFile(cf);
-    }
+        @Override
+        protected void compute() {
+            if(file.isDirectory()){
+                ArrayList<ParseTask> tasks = new ArrayList<>();
 
-    private void compileInterface(XJLNInterface clazz, String name, String path){
-        ClassFile cf = new ClassFile(true, path + "." + name, null);
-        cf.setAccessFlags(clazz.getAccessFlag());
+                Metrics.Timer timer = metrics.start(Metrics.Phase.DISCOVERY, file.getPath());
 
-        for(String methodName:clazz.methods.getKeyList()){
-            XJLNInterfaceMethod method = clazz.methods.getValue(methodName);
+                try{
+                    for(File f: Objects.requireNonNull(file.listFiles()))
+                        if(f.isDirectory() || f.getName().endsWith(".xjln"))
+                            tasks.add(new ParseTask(f, errors));
+                }finally {
+                    timer.stop();
+                }
 
-            MethodInfo mInfo = new MethodInfo(cf.getConstPool(), methodName, "(" + toDesc(method.parameters().getValueList().toArray(new String[0])) + ")" + toDesc(method.returnType()));
-            mInfo.setAccessFlags(AccessFlag.PUBLIC + AccessFlag.ABSTRACT);
-            cf.addMethod2(mInfo);
+                invokeAll(tasks);
+            }else
+                parseFile(file, errors);
         }
-
-        writeFile(cf);
     }
 
-    private void compileClass(XJLNClass clazz, String name, String path){
-        ClassFile cf = new ClassFile(false, path + "." + name, null);
-        cf.setAccessFlags(clazz.getAccessFlag());
-
-        for(String field:clazz.staticFields.keySet()){
-            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), field, toDesc(clazz.staticFields.get(field).type()));
-            fInfo.setAccessFlags(clazz.staticFields.get(field).getAccessFlag());
-            cf.addField2(fInfo);
-        }
-
-        for(String field:clazz.fields.keySet()){
-            FieldInfo fInfo = new FieldInfo(cf.getConstPool(), field, toDesc(clazz.fields.get(field).type()));
-            fInfo.setAccessFlags(clazz.fields.get(field).getAccessFlag());
-            cf.addField2(fInfo);
-        }
-
-        //clinit TODO init values
-        MethodInfo mInfo = new MethodInfo(cf.getConstPool(), "<clinit>", "()V");
-        mInfo.setAccessFlags(AccessFlag.STATIC);
-        Bytecode code = new Bytecode(cf.getConstPool());
+    private void parseFile(File file, ConcurrentSkipListMap<String, String> errors){
+        try {
+            String path = pathOf(file);
+            Source source = Source.read(file);
+            String contentHash = incremental || parseCache != null || outputCache != null ? IncrementalState.hash(source.bytes()) : null;
+            XJLNFile xjlnFile = parseCache != null ? parseCache.load(path, contentHash) : null;
 
-        for(String fieldName:clazz.staticFields.keySet()){
-            XJLNField field = clazz.staticFields.get(fieldName);
-            if(field.initValue() != null){
-                try {
-                    AST.Calc ast = syntacticParser.parseCalc(field.initValue());
+            if(xjlnFile == null) {
+                Metrics.Timer timer = metrics.start(Metrics.Phase.PARSE, path);
 
-                    if(!field.type().equals(ast.type))
-                        throw new RuntimeException("illegal type " + ast.type);
-
-                    compileCalc(ast, code, cf.getConstPool(), new OperandStack());
-
-                    code.addPutstatic(name, fieldName, toDesc(field.type()));
-                }catch(Exception e){
-                    e.printStackTrace();
-                    throw new RuntimeException(e.getMessage() + " in: " + path + " :" + field.lineInFile());
+                try{
+                    xjlnFile = new Parser(metrics, path, options.lexChunkSize).parseFile(file, source);
+                }finally {
+                    timer.stop();
                 }
+
+                if(xjlnFile != null && parseCache != null)
+                    parseCache.put(path, xjlnFile);
             }else
-                throw new RuntimeException("expected value in: " + path + " :" + field.lineInFile());
-        }
+                printDebug("loaded " + path + " from parse cache");
 
-        code.add(Opcode.RETURN);
-        mInfo.setCodeAttribute(code.toCodeAttribute());
-        cf.addMethod2(mInfo);
+            if(xjlnFile != null) {
+                files.put(path, xjlnFile);
 
-        if(!clazz.methods.containsKey("init"))
-            clazz.createDefaultInit();
+                if(contentHash != null)
+                    contentHashes.put(path, contentHash);
+            }
+        } catch (IOException ignored) {
+            errors.put(file.getPath(), "Unable to access " + file.getPath());
+        } catch (RuntimeException e) {
+            errors.put(file.getPath(), e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
 
-        current = clazz;
-        currentName = path + "." + name;
+    static String pathOf(File file){
+        String path = file.getPath();
 
-        //methods
-        compileMethods(clazz.methods, cf, path + "." + name);
+        if(path.endsWith(".xjln"))
+            path = path.substring(0, path.length() - 5);
 
-        //static methods
-        compileMethods(clazz.staticMethods, cf, path + "." + name);
+        return path.replace("\\", ".");
+    }
 
-        writeFile(cf);
+    private void compileFiles(){
+        emit(files, computeSignatures(), new DirectorySink(new File(options.output)));
     }
 
-    private void compileMethods(HashMap<String, XJLNMethod> methods, ClassFile cf, String clazzName){
-        for(String method:methods.keySet()){
-            MethodInfo mInfo = new MethodInfo(cf.getConstPool(), method.equals("init") ? "<init>" : method, toDesc(methods.get(method)));
-            mInfo.setAccessFlags(methods.get(method).getAccessFlag());
+    /**
+     * compiles the given Files, Files whose classes are in the output cache are restored from it instead
+     * @return the names of the written classes of each File
+     */
+    private HashMap<String, Set<String>> emit(Map<String, XJLNFile> toEmit, HashMap<String, String> signatures, OutputSink sink){
+        File output = new File(options.output);
+        HashMap<String, Set<String>> classes = new HashMap<>();
+        HashMap<String, String> keys = new HashMap<>();
+        HashMap<String, XJLNFile> remaining = new HashMap<>();
+
+        if(outputCache != null){
+            HashMap<String, String> names = new HashMap<>();
+            for(String path:files.keySet())
+                names.put(EmissionScheduler.moduleName(path), path);
+
+            for(String path:toEmit.keySet()){
+                ArrayList<String> useSignatures = new ArrayList<>();
+
+                for(String use:toEmit.get(path).uses.values()){
+                    String dependency = EmissionScheduler.resolve(use, names);
+                    useSignatures.add(use + "=" + (dependency == null ? "" : signatures.get(dependency)));
+                }
 
-            Bytecode code = new Bytecode(cf.getConstPool());
+                String key = OutputCache.key(path, contentHashes.get(path), useSignatures, options.optimization, options.backend);
+                Set<String> restored = outputCache.restore(key, output);
 
-            if(method.equals("<init>")){
-                code.addAload(0);
-                code.addInvokespecial("java/lang/Object", "<init>", "()V");
+                if(restored == null){
+                    keys.put(path, key);
+                    remaining.put(path, toEmit.get(path));
+                }else
+                    classes.put(path, restored);
             }
 
-            AST[] astList = syntacticParser.parseAst(methods.get(method).code, clazzName);
-            OperandStack os = OperandStack.forMethod(methods.get(method));
+            printDebug((toEmit.size() - remaining.size()) + " of " + toEmit.size() + " Files have been restored from the output cache");
+        }else
+            remaining.putAll(toEmit);
 
-            for(int i = 0;i < astList.length;i++){
-                if(astList[i] instanceof AST.Return && !astList[i].type.equals(methods.get(method).returnType))
-                    throw new RuntimeException("expected " + methods.get(method).returnType + " got " + astList[i].type+ " in: " + clazzName + " :" + (methods.get(method).line + i));
-
-                compileAST(astList[i], code, cf.getConstPool(), os);
-            }
+        EmissionScheduler scheduler = new EmissionScheduler(remaining, options.threads, sink, options.backend, parseCache, metrics, options.optimization);
+        scheduler.run();
 
-            if(methods.get(method).returnType.equals("void"))
-                code.add(Opcode.RETURN);
-            else if(!(astList[astList.length - 1] instanceof AST.Return))
-                throw new RuntimeException("Expected return");
+        for(String path:remaining.keySet()){
+            classes.put(path, scheduler.getClasses(path));
 
-            mInfo.setCodeAttribute(code.toCodeAttribute());
-            cf.addMethod2(mInfo);
+            if(outputCache != null)
+                outputCache.store(keys.get(path), output, classes.get(path));
         }
-    }
-
-    private void compileAST(AST ast, Bytecode code, ConstPool cp, OperandStack os){
-        if(ast instanceof  AST.Return)
-            compileReturn((AST.Return) ast, code, cp, os);
-        else if(ast instanceof AST.Calc)
-            compileCalc((AST.Calc) ast, code, cp, os);
-        else if(ast instanceof AST.VarAssigment)
-            compileVarAssignment((AST.VarAssigment) ast, code, cp, os);
-        else if(ast instanceof AST.While)
-            compileWhile((AST.While) ast, code, cp, os);
-        else if(ast instanceof AST.If)
-            compileIf((AST.If) ast, code, cp, os);
-    }
-
-    private void compileWhile(AST.While ast, Bytecode code, ConstPool cp, OperandStack os){
-        os.newScope();
-        int start = code.getSize();
-        compileCalc(ast.condition, code, cp, os);
-        code.addOpcode(Opcode.IFEQ);
-        int branch = code.getSize();
-        code.addIndex(0);
-
-        for(AST statement: ast.ast)
-            compileAST(statement, code, cp, os);
-
-        code.addOpcode(Opcode.GOTO);
-        code.addIndex(-(code.getSize() - start));
-        code.write16bit(branch, code.getSize() - branch + 1);
-        os.clearScope(code);
-    }
-
-    private void compileIf(AST.If ast, Bytecode code, ConstPool cp, OperandStack os){
-        ArrayList<Integer> gotos = new ArrayList<>();
-        int branch = 0;
-
-        while (ast != null){
-            os.newScope();
-            if(ast.condition != null) {
-                compileCalc(ast.condition, code, cp, os);
-                code.addOpcode(Opcode.IFEQ);
-                branch = code.getSize();
-                code.addIndex(0);
-            }
 
-            for(AST statement:ast.ast)
-                compileAST(statement, code, cp, os);
+        if(outputCache != null)
+            outputCache.evict();
 
-            if(ast.elif != null){
-                code.addOpcode(Opcode.GOTO);
-                gotos.add(code.getSize());
-                code.addIndex(0);
-            }
+        return classes;
+    }
 
-            if(ast.condition != null)
-                code.write16bit(branch, code.getSize() - branch + 1);
+    private HashMap<String, String> computeSignatures(){
+        HashMap<String, String> signatures = new HashMap<>();
 
-            ast = ast.elif;
-            os.clearScope(code);
-        }
+        if(incremental || outputCache != null)
+            for(String path:files.keySet())
+                signatures.put(path, IncrementalState.signature(files.get(path)));
 
-        for(int i:gotos)
-            code.write16bit(i, code.getSize() - i + 1);
+        return signatures;
     }
 
-    private void compileCalc(AST.Calc calc, Bytecode code, ConstPool cp, OperandStack os){
-        if(calc.right == null) {
-            if(calc.value.call != null)
-                compileCall(calc.value.call, code, cp, os);
-            else
-                addValue(calc.value, code, cp, os);
-        }else{
-            if(calc.opp.equals("=") || calc.opp.equals("#")){
-                compileCalc(calc.left, code, cp, os);
-                if(calc.opp.equals("=")) code.add(Opcode.DUP);
-                compileStore(calc.right.value.call.call, calc.type, code, os);
-                return;
-            }
-
-            compileCalc(calc.right, code, cp, os);
+    /**
+     * @return the metrics of all compilations of this Compiler, they are only recorded if enabled in the Options
+     */
+    public Metrics getMetrics(){
+        return metrics;
+    }
 
-            if(calc.left == null) {
-                if(calc.value.call != null)
-                    compileCall(calc.value.call, code, cp, os);
-                else
-                    addValue(calc.value, code, cp, os);
-            }else
-                compileCalc(calc.left, code, cp, os);
-
-            switch(calc.type){
-                case "int", "char", "byte", "short", "boolean" -> {
-                    switch (calc.opp){
-                        case "+" -> code.add(Opcode.IADD);
-                        case "-" -> code.add(Opcode.ISUB);
-                        case "*" -> code.add(Opcode.IMUL);
-                        case "/" -> code.add(Opcode.IDIV);
-                        case "==", "!=", "<", "<=", ">", ">=" -> {
-                            switch(calc.opp) {
-                                case "==" -> code.addOpcode(Opcode.IF_ICMPEQ);
-                                case "!=" -> code.addOpcode(Opcode.IF_ICMPNE);
-                                case "<" -> code.addOpcode(Opcode.IF_ICMPLT);
-                                case "<=" -> code.addOpcode(Opcode.IF_ICMPLE);
-                                case ">" -> code.addOpcode(Opcode.IF_ICMPGT);
-                                case ">=" -> code.addOpcode(Opcode.IF_ICMPGE);
-                            }
-                            int branchLocation = code.getSize();
-                            code.addIndex(0);
-                            code.addIconst(0);
-                            code.addOpcode(Opcode.GOTO);
-                            int endLocation = code.getSize();
-                            code.addIndex(0);
-                            code.write16bit(branchLocation, code.getSize() - branchLocation + 1);
-                            code.addIconst(1);
-                            code.write16bit(endLocation, code.getSize() - endLocation + 1);
-                        }
-                    }
-                    os.pop();
-                    if(SyntacticParser.BOOL_OPERATORS.contains(calc.opp)) {
-                        os.pop();
-                        os.push(1);
-                    }
-                }
-                case "double" -> {
-                    switch (calc.opp){
-                        case "+" -> code.add(Opcode.DADD);
-                        case "-" -> code.add(Opcode.DSUB);
-                        case "*" -> code.add(Opcode.DMUL);
-                        case "/" -> code.add(Opcode.DDIV);
-                        case "==", "!=", "<=", "<", ">=", ">" -> {
-                            code.add(Opcode.DCMPG);
-                            compileBoolOp(calc, code, cp, os);
-                        }
-                    }
-                    os.pop();
-                    if(SyntacticParser.BOOL_OPERATORS.contains(calc.opp)) {
-                        os.pop();
-                        os.push(1);
-                    }
-                }
-                case "float" -> {
-                    switch (calc.opp){
-                        case "+" -> code.add(Opcode.FADD);
-                        case "-" -> code.add(Opcode.FSUB);
-                        case "*" -> code.add(Opcode.FMUL);
-                        case "/" -> code.add(Opcode.FDIV);
-                        case "==", "!=", "<=", "<", ">=", ">" -> {
-                            code.add(Opcode.FCMPG);
-                            compileBoolOp(calc, code, cp, os);
-                        }
-                    }
-                    os.pop();
-                    if(SyntacticParser.BOOL_OPERATORS.contains(calc.opp)) {
-                        os.pop();
-                        os.push(1);
-                    }
-                }
-                case "long" -> {
-                    switch (calc.opp){
-                        case "+" -> code.add(Opcode.LADD);
-                        case "-" -> code.add(Opcode.LSUB);
-                        case "*" -> code.add(Opcode.LMUL);
-                        case "/" -> code.add(Opcode.LDIV);
-                        case "==", "!=", "<=", "<", ">=", ">" -> {
-                            code.add(Opcode.LCMP);
-                            compileBoolOp(calc, code, cp, os);
-                        }
-                    }
-                    os.pop();
-                    if(SyntacticParser.BOOL_OPERATORS.contains(calc.opp)) {
-                        os.pop();
-                        os.push(1);
-                    }
-                }
-            }
-        }
+    /**
+     * @return the number of Files whose classes have been restored from the output cache
+     */
+    public long getOutputCacheHits(){
+        return outputCache == null ? 0 : outputCache.getHits();
     }
 
-    private void compileBoolOp(AST.Calc calc, Bytecode code, ConstPool cp, OperandStack os) {
-        switch(calc.opp){
-            case "==", "!=" -> {
-                code.addIconst(0);
-                code.addOpcode(Opcode.IF_ICMPEQ);
-            }
-            case "<", ">" -> {
-                AST.Value value = new AST.Value();
-                value.type = "int";
-                value.token = new Token(calc.opp.equals("<") ? "-1" : "1", Token.Type.INTEGER);
-                addValue(value, code, cp, os);
-                code.addOpcode(Opcode.IF_ICMPEQ);
-            }
-            case "<=", ">=" -> {
-                AST.Value value = new AST.Value();
-                value.type = "int";
-                value.token = new Token(calc.opp.equals("<=") ? "1" : "-1", Token.Type.INTEGER);
-                addValue(value, code, cp, os);
-                code.addOpcode(Opcode.IF_ICMPNE);
-            }
-        }
-        int branchLocation = code.getSize();
-        code.addIndex(0);
-        if(calc.opp.equals("!=")) code.addIconst(1);
-        else code.addIconst(0);
-        code.addOpcode(Opcode.GOTO);
-        int endLocation = code.getSize();
-        code.addIndex(0);
-        code.write16bit(branchLocation, code.getSize() - branchLocation + 1);
-        if(calc.opp.equals("!=")) code.addIconst(0);
-        else code.addIconst(1);
-        code.write16bit(endLocation, code.getSize() - endLocation + 1);
-    }
-
-    private void compileCast(AST.Value value, Bytecode code, OperandStack os){
-        switch(value.cast){
-            case "int", "short", "byte" -> {
-                switch(value.type){
-                    case "double" -> {
-                        code.add(Opcode.I2D);
-                        String temp = os.pop();
-                        os.push(temp, 2);
-                    }
-                    case "long" -> {
-                        code.add(Opcode.I2L);
-                        String temp = os.pop();
-                        os.push(temp, 2);
-                    }
-                    case "float" -> code.add(Opcode.I2F);
-                    case "byte" -> code.add(Opcode.I2B);
-                    case "char" -> code.add(Opcode.I2C);
-                    case "short" -> code.add(Opcode.I2S);
-                }
-            }
-            case "double" -> {
-                switch(value.type){
-                    case "int" -> {
-                        code.add(Opcode.D2I);
-                        String temp = os.pop();
-                        os.push(temp, 1);
-                    }
-                    case "long" -> code.add(Opcode.D2L);
-                    case "float" -> {
-                        code.add(Opcode.D2F);
-                        String temp = os.pop();
-                        os.push(temp, 1);
-                    }
-                }
-            }
-            case "long" -> {
-                switch(value.type){
-                    case "double" -> code.add(Opcode.L2D);
-                    case "int" -> {
-                        code.add(Opcode.L2I);
-                        String temp = os.pop();
-                        os.push(temp, 1);
-                    }
-                    case "float" -> {
-                        code.add(Opcode.L2F);
-                        String temp = os.pop();
-                        os.push(temp, 1);
-                    }
-                }
-            }
-            case "float" -> {
-                switch(value.type){
-                    case "double" -> {
-                        code.add(Opcode.F2D);
-                        String temp = os.pop();
-                        os.push(temp, 2);
-                    }
-                    case "long" -> {
-                        code.add(Opcode.F2L);
-                        String temp = os.pop();
-                        os.push(temp, 2);
-                    }
-                    case "int" -> code.add(Opcode.F2I);
-                }
-            }
-        }
+    /**
+     * @return the number of Files whose classes had to be compiled although the output cache is enabled
+     */
+    public long getOutputCacheMisses(){
+        return outputCache == null ? 0 : outputCache.getMisses();
     }
 
-    private void addValue(AST.Value value, Bytecode code, ConstPool cp, OperandStack os){
-        switch (value.token.t().toString()){
-            case "int", "short", "byte", "char" -> {
-                int intValue;
-                if(value.type.equals("char"))
-                    intValue = value.token.s().toCharArray()[1];
-                else
-                    intValue = Integer.parseInt(value.token.getWithoutExtension().s());
+    private int compileIncremental(){
+        File output = new File(options.output);
+        String fingerprint = IncrementalState.fingerprint(options.optimization, options.backend);
+        IncrementalState last = IncrementalState.load(output, fingerprint);
+        IncrementalState next = new IncrementalState();
+        HashMap<String, String> signatures = computeSignatures();
+        HashMap<String, String> names = new HashMap<>();
+        HashSet<String> changedSignatures = new HashSet<>();
 
-                if(intValue < 6 && intValue >= 0)
-                    code.addIconst(intValue);
-                else
-                    code.add(0x10 ,intValue); //Bipush
+        for(String path:files.keySet()){
+            String signature = signatures.get(path);
+            IncrementalState.Entry entry = last.get(path);
 
-                os.push(1);
-            }
-            case "boolean" -> {
-                code.addIconst(value.token.s().equals("true") ? 1 : 0);
-                os.push("temp", 1);
-            }
-            case "float" -> {
-                int index = 0;
-                float floatValue = Float.parseFloat(value.token.getWithoutExtension().s());
-                cp.addFloatInfo(floatValue);
-                while(index < cp.getSize()){
-                    try{
-                        if(cp.getFloatInfo(index) == floatValue) break;
-                        else index++;
-                    }catch(Exception ignored){index++;}
-                }
-                code.addLdc(index);
-                os.push(1);
-            }
-            case "double" -> {
-                int index = 0;
-                double doubleValue = Double.parseDouble(value.token.getWithoutExtension().s());
-                cp.addDoubleInfo(doubleValue);
-                while(index < cp.getSize()){
-                    try{
-                        if(cp.getDoubleInfo(index) == doubleValue) break;
-                        else index++;
-                    }catch(Exception ignored){index++;}
-                }
-                code.addLdc(index);
-                os.push(2);
-            }
-            case "long" -> {
-                int index = 0;
-                long longValue = Long.parseLong(value.token.getWithoutExtension().s());
-                cp.addLongInfo(longValue);
-                while(index < cp.getSize()){
-                    try{
-                        if(cp.getLongInfo(index) == longValue) break;
-                        else index++;
-                    }catch(Exception ignored){index++;}
-                }
-                code.addLdc(index);
-                os.push(2);
-            }
-        }
+            names.put(EmissionScheduler.moduleName(path), path);
 
-        if(value.cast != null)
-            compileCast(value, code, os);
-    }
+            if(entry == null || !entry.signatureHash().equals(signature))
+                changedSignatures.add(path);
+        }
 
-    private void compileCall(AST.Call call, Bytecode code, ConstPool cp, OperandStack os){
-        if(call instanceof AST.StaticCall){
+        for(String path:last.paths()){
+            if(!files.containsKey(path)) {
+                changedSignatures.add(path);
+                names.put(EmissionScheduler.moduleName(path), path);
+                deleteClasses(output, last.get(path).classes());
+            }
+        }
 
-        }else compileLoad(call, code, os);
-    }
+        HashMap<String, XJLNFile> dirty = new HashMap<>();
 
-    private void compileVarAssignment(AST.VarAssigment ast, Bytecode code, ConstPool cp, OperandStack os){
-        if(ast.call == null) {
-            compileCalc(ast.calc, code, cp, os);
-            compileStore(ast.name, ast.type, code, os);
-            int length = (ast.type.equals("double") || ast.type.equals("long")) ? 2 : 1;
-            os.pop();
-            os.push(ast.name, length);
-        }else{
+        for(String path:files.keySet()){
+            IncrementalState.Entry entry = last.get(path);
+            boolean changed = entry == null || !entry.contentHash().equals(contentHashes.get(path));
 
-        }
-    }
+            if(!changed)
+                for(String name:entry.classes())
+                    if(!classFile(output, name).exists())
+                        changed = true; //deleted from the output Folder
 
-    private void compileLoad(AST.Call ast, Bytecode code, OperandStack os){
-        if(ast.type == null)
-            return; //TODO
+            for(String use:files.get(path).uses.values()){
+                String dependency = EmissionScheduler.resolve(use, names);
 
-        if(os.contains(ast.call)) {
-            switch (ast.type) {
-                case "int", "boolean", "char", "byte", "short" -> {
-                    code.addIload(os.get(ast.call));
-                    os.push(1);
-                }
-                case "float" -> {
-                    code.addFload(os.get(ast.call));
-                    os.push(1);
-                }
-                case "double" -> {
-                    code.addDload(os.get(ast.call));
-                    os.push(2);
-                }
-                case "long" -> {
-                    code.addLload(os.get(ast.call));
-                    os.push(2);
-                }
+                if(dependency != null && !dependency.equals(path) && changedSignatures.contains(dependency))
+                    changed = true;
             }
-        }else{
-            throw new RuntimeException("Variable " + ast.call + " did not exist");
+
+            if(changed)
+                dirty.put(path, files.get(path));
+            else
+                next.put(path, entry);
         }
-    }
 
-    private void compileStore(String name, String type, Bytecode code, OperandStack os){
-        short field = current.hasField(name);
-        if(os.contains(name) || field == 0) {
-            int where = os.get(name);
+        printDebug(dirty.size() + " of " + files.size() + " Files have to be compiled");
 
-            if(where == -1) {
-                os.pop();
-                where = os.push(name, Set.of("double", "long").contains(type) ? 2 : 1);
-            }
+        HashMap<String, Set<String>> written = emit(dirty, signatures, new DirectorySink(output));
+
+        for(String path:dirty.keySet()){
+            Set<String> classes = written.get(path);
+            IncrementalState.Entry entry = last.get(path);
 
-            switch (type) {
-                case "int", "boolean", "char", "byte", "short" -> code.addIstore(where);
-                case "float" -> code.addFstore(where);
-                case "double" -> code.addDstore(where);
-                case "long" -> code.addLstore(where);
+            if(entry != null){
+                Set<String> removed = new HashSet<>(entry.classes());
+                removed.removeAll(classes);
+                deleteClasses(output, removed);
             }
-        }else{
-            if(field == 1)
-                code.addPutfield(currentName, name, toDesc(type)); //TODO aload(0)
-            else
-                code.addPutstatic(currentName, name, toDesc(type));
 
-            os.pop();
+            next.put(path, new IncrementalState.Entry(contentHashes.get(path), signatures.get(path), classes));
         }
+
+        next.save(output, fingerprint);
+
+        return dirty.size();
     }
 
-    private void compileReturn(AST.Return ast, Bytecode code, ConstPool cp, OperandStack os){ //TODO
-        compileCalc(ast.calc, code, cp, os);
+    private void deleteClasses(File output, Set<String> classes){
+        for(String name:classes){
+            File file = classFile(output, name);
 
-        switch(ast.type){
-            case "double" -> code.add(Opcode.DRETURN);
-            case "float" -> code.add(Opcode.FRETURN);
-            case "long" -> code.add(Opcode.LRETURN);
-            case "int", "boolean", "short", "byte", "char" -> code.add(Opcode.IRETURN);
+            if(file.exists() && !file.delete())
+                throw new RuntimeException("failed to delete " + file.getPath());
         }
     }
 
-    private void writeFile(ClassFile cf){
-        try{
-            ClassPool.getDefault().makeClass(cf).writeFile("compiled");
-        }catch (IOException | CannotCompileException e) {
-            throw new RuntimeException("failed to write ClassFile for " + cf.getName());
-        }
+    private static File classFile(File output, String name){
+        return new File(output, name.replace('.', File.separatorChar) + ".class");
     }
 
-    private String toDesc(XJLNMethod method){
+    static String toDesc(XJLNMethod method){
         StringBuilder desc = new StringBuilder("(");
 
         for(String type:method.parameters.getValueList())
@@ -857,7 +706,7 @@ public final class Compiler {
         return desc.toString();
     }
 
-    private String toDesc(XJLNField...fields){
+    static String toDesc(XJLNField...fields){
         StringBuilder desc = new StringBuilder();
 
         for(XJLNField field:fields)
@@ -902,6 +751,9 @@ public final class Compiler {
             if(!type1.equals(type2))
                 return null;
 
+            if((opp.equals("&") || opp.equals("|")) && !type1.equals("boolean"))
+                return INTEGRALS.contains(type1) ? type1 : null; //bitwise and, or
+
             if(SyntacticParser.BOOL_OPERATORS.contains(opp))
                 return "boolean";
 
@@ -921,8 +773,11 @@ public final class Compiler {
         return name;
     }
 
+    /**
+     * @return the parsed File with the given name of the Compiler that parsed Folders most recently
+     */
     public static XJLNFile getFile(String name){
-        return files.get(name);
+        return latestFiles.get(name);
     }
 
     private static void printDebug(String message){
@@ -0,0 +1,274 @@
+package com.github.xjln.compiler;
+
+/**
+ * computes the parts of AST.Calc trees whose operands are literals while compiling, with the semantics of Java:
+ * int, char, short and byte are computed as int and narrowed to the type of the result, long overflows,
+ * float and double follow IEEE 754 and casts convert like the cast instructions of the JVM.
+ * Integer divisions by zero are not folded, so they still throw at runtime
+ */
+final class ConstantFolder {
+
+    private ConstantFolder(){}
+
+    /**
+     * replaces every part of the calc that only uses literals with its value,
+     * the operands of & and | are only removed if they would not have been evaluated or do not change the result
+     */
+    static void fold(AST.Calc calc){
+        if(calc == null)
+            return;
+
+        if(calc.right == null){
+            foldCast(calc.value);
+            return;
+        }
+
+        boolean assignment = calc.opp.equals("=") || calc.opp.equals("#");
+
+        if(!assignment)
+            fold(calc.right);
+
+        if(calc.left != null){
+            fold(calc.left);
+
+            if(!assignment && literal(calc.left) != null){
+                calc.value = calc.left.value;
+                calc.left = null;
+            }
+        }else
+            foldCast(calc.value);
+
+        if(assignment)
+            return;
+
+        Object a = valueOf(literal(calc.right));
+        Object b = calc.left == null ? valueOf(calc.value) : null;
+
+        if(a instanceof Boolean && (calc.opp.equals("&") || calc.opp.equals("|"))){
+            boolean and = calc.opp.equals("&");
+
+            if(a.equals(and)) // true & x, false | x
+                setOperand(calc);
+            else // false & x, true | x, x is never evaluated
+                setValue(calc, a);
+        }else if(b instanceof Boolean && (calc.opp.equals("&") || calc.opp.equals("|")) && b.equals(calc.opp.equals("&"))){
+            // x & true, x | false
+            AST.Calc operand = calc.right;
+            calc.opp = operand.opp;
+            calc.value = operand.value;
+            calc.left = operand.left;
+            calc.right = operand.right;
+        }else if(a != null && b != null){
+            Object result = compute(a, b, calc.opp, calc.type);
+
+            if(result != null)
+                setValue(calc, result);
+        }
+    }
+
+    /**
+     * @return the value of the calc if it is a literal, otherwise null
+     */
+    static AST.Value literal(AST.Calc calc){
+        if(calc == null || calc.right != null || calc.left != null || valueOf(calc.value) == null)
+            return null;
+
+        return calc.value;
+    }
+
+    /**
+     * @return the Boolean, Integer, Long, Float or Double value of the literal or null if the value is no literal
+     */
+    static Object valueOf(AST.Value value){
+        if(value == null || value.call != null || value.cast != null || value.token == null || value.type == null)
+            return null;
+
+        try{
+            return switch (value.type){
+                case "boolean" -> value.token.t() == Token.Type.IDENTIFIER ? (Boolean) value.token.s().equals("true") : null;
+                case "int", "short", "byte", "char" -> value.token.t() == Token.Type.CHAR ? (int) value.token.s().charAt(1) : Integer.parseInt(value.token.withoutExtension());
+                case "long" -> Long.parseLong(value.token.withoutExtension());
+                case "float" -> Float.parseFloat(value.token.withoutExtension());
+                case "double" -> Double.parseDouble(value.token.withoutExtension());
+                default -> null;
+            };
+        }catch (NumberFormatException e){
+            return null; //reported by the CodeGenerator
+        }
+    }
+
+    /**
+     * replaces a cast of a literal with the converted literal
+     */
+    private static void foldCast(AST.Value value){
+        if(value == null || value.cast == null || value.call != null || value.token == null)
+            return;
+
+        String type = value.type;
+        value.type = value.cast;
+        value.cast = null;
+
+        Object literal = valueOf(value);
+
+        if(literal == null || literal instanceof Boolean){
+            value.cast = value.type;
+            value.type = type;
+            return;
+        }
+
+        value.type = type;
+        value.token = token(convert((Number) literal, type), type);
+    }
+
+    /**
+     * @return the result of the operator or null if it can not be computed while compiling
+     */
+    private static Object compute(Object a, Object b, String opp, String type){
+        if(a instanceof Boolean x && b instanceof Boolean y){
+            return switch (opp){
+                case "==" -> x == y;
+                case "!=" -> x != y;
+                default -> null;
+            };
+        }
+
+        if(a instanceof Integer x && b instanceof Integer y){
+            int i = x, j = y;
+
+            return switch (opp){
+                case "+" -> convert(i + j, type);
+                case "-" -> convert(i - j, type);
+                case "*" -> convert(i * j, type);
+                case "/" -> j == 0 ? null : convert(i / j, type);
+                case "&" -> convert(i & j, type);
+                case "|" -> convert(i | j, type);
+                default -> compare(Integer.compare(i, j), opp);
+            };
+        }
+
+        if(a instanceof Long x && b instanceof Long y){
+            long i = x, j = y;
+
+            return switch (opp){
+                case "+" -> i + j;
+                case "-" -> i - j;
+                case "*" -> i * j;
+                case "/" -> j == 0 ? null : i / j;
+                case "&" -> i & j;
+                case "|" -> i | j;
+                default -> compare(Long.compare(i, j), opp);
+            };
+        }
+
+        if(a instanceof Float x && b instanceof Float y){
+            float i = x, j = y;
+
+            return switch (opp){
+                case "+" -> i + j;
+                case "-" -> i - j;
+                case "*" -> i * j;
+                case "/" -> i / j;
+                case "==" -> i == j;
+                case "!=" -> i != j;
+                case "<" -> i < j;
+                case "<=" -> i <= j;
+                case ">" -> i > j;
+                case ">=" -> i >= j;
+                default -> null;
+            };
+        }
+
+        if(a instanceof Double x && b instanceof Double y){
+            double i = x, j = y;
+
+            return switch (opp){
+                case "+" -> i + j;
+                case "-" -> i - j;
+                case "*" -> i * j;
+                case "/" -> i / j;
+                case "==" -> i == j;
+                case "!=" -> i != j;
+                case "<" -> i < j;
+                case "<=" -> i <= j;
+                case ">" -> i > j;
+                case ">=" -> i >= j;
+                default -> null;
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * @param comparison the result of Integer.compare or Long.compare
+     */
+    private static Boolean compare(int comparison, String opp){
+        return switch (opp){
+            case "==" -> comparison == 0;
+            case "!=" -> comparison != 0;
+            case "<" -> comparison < 0;
+            case "<=" -> comparison <= 0;
+            case ">" -> comparison > 0;
+            case ">=" -> comparison >= 0;
+            default -> null;
+        };
+    }
+
+    /**
+     * @return the number converted to the given type like a Java cast, int, short, byte and char are returned as Integer
+     */
+    private static Object convert(Number number, String type){
+        return switch (type){
+            case "int" -> number.intValue();
+            case "char" -> (int) (char) number.intValue();
+            case "short" -> (int) (short) number.intValue();
+            case "byte" -> (int) (byte) number.intValue();
+            case "long" -> number.longValue();
+            case "float" -> number.floatValue();
+            default -> number.doubleValue();
+        };
+    }
+
+    /**
+     * @return the token of the literal, float, double and long get a suffix, so NaN and Infinity keep their last letter
+     */
+    private static Token token(Object value, String type){
+        return switch (type){
+            case "boolean" -> new Token(value.toString(), Token.Type.IDENTIFIER);
+            case "long" -> new Token(value + "l", Token.Type.LONG);
+            case "float" -> new Token(value + "f", Token.Type.FLOAT);
+            case "double" -> new Token(value + "d", Token.Type.DOUBLE);
+            default -> new Token(value.toString(), Token.Type.INTEGER);
+        };
+    }
+
+    /**
+     * turns the calc into a literal with the given value
+     */
+    private static void setValue(AST.Calc calc, Object value){
+        AST.Value literal = new AST.Value();
+        literal.type = calc.type;
+        literal.token = token(value, calc.type);
+
+        calc.opp = null;
+        calc.right = null;
+        calc.left = null;
+        calc.value = literal;
+    }
+
+    /**
+     * turns the calc into its right operand
+     */
+    private static void setOperand(AST.Calc calc){
+        if(calc.left != null){
+            AST.Calc operand = calc.left;
+            calc.opp = operand.opp;
+            calc.value = operand.value;
+            calc.left = operand.left;
+            calc.right = operand.right;
+        }else{
+            calc.opp = null;
+            calc.right = null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.xjln.compiler;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Opcode;
+
+import java.util.HashMap;
+
+/**
+ * adds constants to the ConstPool of a class and remembers their indices, so every constant is only added once
+ * and found again by its hash. Also selects the shortest instruction to load a constant.
+ * Floating point constants are compared by their bits, so -0.0 and NaN are kept apart from 0.0
+ */
+final class ConstantPoolBuilder {
+
+    private final ConstPool cp;
+
+    /** indices of Integer, Long, Float and Double constants, the boxed values of different kinds are never equal */
+    private final HashMap<Object, Integer> numbers = new HashMap<>();
+    private final HashMap<String, Integer> strings = new HashMap<>();
+    private final HashMap<String, Integer> classes = new HashMap<>();
+
+    ConstantPoolBuilder(ConstPool cp){
+        this.cp = cp;
+    }
+
+    int addInteger(int value){
+        return numbers.computeIfAbsent(value, v -> cp.addIntegerInfo(value));
+    }
+
+    int addFloat(float value){
+        return numbers.computeIfAbsent(value, v -> cp.addFloatInfo(value));
+    }
+
+    int addLong(long value){
+        return numbers.computeIfAbsent(value, v -> cp.addLongInfo(value));
+    }
+
+    int addDouble(double value){
+        return numbers.computeIfAbsent(value, v -> cp.addDoubleInfo(value));
+    }
+
+    int addString(String value){
+        return strings.computeIfAbsent(value, cp::addStringInfo);
+    }
+
+    int addClass(String name){
+        return classes.computeIfAbsent(name, cp::addClassInfo);
+    }
+
+    /**
+     * adds iconst_m1 to iconst_5, bipush, sipush or ldc
+     */
+    void loadInt(Bytecode code, int value){
+        if(value >= -1 && value <= 5)
+            code.addOpcode(Opcode.ICONST_0 + value);
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+            code.addOpcode(Opcode.BIPUSH);
+            code.add(value);
+        }else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+            code.addOpcode(Opcode.SIPUSH);
+            code.add(value >> 8, value);
+        }else
+            ldc(code, addInteger(value));
+    }
+
+    /**
+     * adds fconst_0 to fconst_2 or ldc
+     */
+    void loadFloat(Bytecode code, float value){
+        int bits = Float.floatToRawIntBits(value);
+
+        if(bits == Float.floatToRawIntBits(0f) || bits == Float.floatToRawIntBits(1f) || bits == Float.floatToRawIntBits(2f))
+            code.addOpcode(Opcode.FCONST_0 + (int) value);
+        else
+            ldc(code, addFloat(value));
+    }
+
+    /**
+     * adds lconst_0, lconst_1 or ldc2_w
+     */
+    void loadLong(Bytecode code, long value){
+        if(value == 0 || value == 1)
+            code.addOpcode(Opcode.LCONST_0 + (int) value);
+        else{
+            code.addOpcode(Opcode.LDC2_W);
+            code.addIndex(addLong(value));
+        }
+    }
+
+    /**
+     * adds dconst_0, dconst_1 or ldc2_w
+     */
+    void loadDouble(Bytecode code, double value){
+        long bits = Double.doubleToRawLongBits(value);
+
+        if(bits == Double.doubleToRawLongBits(0d) || bits == Double.doubleToRawLongBits(1d))
+            code.addOpcode(Opcode.DCONST_0 + (int) value);
+        else{
+            code.addOpcode(Opcode.LDC2_W);
+            code.addIndex(addDouble(value));
+        }
+    }
+
+    void loadString(Bytecode code, String value){
+        ldc(code, addString(value));
+    }
+
+    /**
+     * loads the Class object of the given class
+     */
+    void loadClass(Bytecode code, String name){
+        ldc(code, addClass(name));
+    }
+
+    /**
+     * adds ldc for indices that fit in one byte, otherwise ldc_w
+     */
+    private void ldc(Bytecode code, int index){
+        if(index < 256){
+            code.addOpcode(Opcode.LDC);
+            code.add(index);
+        }else{
+            code.addOpcode(Opcode.LDC_W);
+            code.addIndex(index);
+        }
+    }
+}
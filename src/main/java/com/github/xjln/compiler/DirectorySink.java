@@ -0,0 +1,48 @@
+package com.github.xjln.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * writes every class to its own class File in the output Folder,
+ * class Files that already have the same content are not touched.
+ * Class Files are replaced instead of overwritten, so Files linked from the output cache are never changed
+ */
+public final class DirectorySink implements OutputSink {
+
+    private final File output;
+
+    /**
+     * @param output the folder the class Files are written to
+     */
+    public DirectorySink(File output){
+        this.output = output;
+    }
+
+    @Override
+    public void write(String name, byte[] bytes){
+        File file = new File(output, name.replace('.', File.separatorChar) + ".class");
+
+        try{
+            if(file.exists() && file.length() == bytes.length && Arrays.equals(Files.readAllBytes(file.toPath()), bytes))
+                return;
+
+            if(!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException();
+
+            File temp = new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().threadId() + ".tmp");
+
+            try{
+                Files.write(temp.toPath(), bytes);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }catch (IOException e){
+            throw new RuntimeException("failed to write ClassFile for " + name);
+        }
+    }
+}
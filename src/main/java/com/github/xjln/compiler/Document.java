@@ -0,0 +1,614 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.lang.*;
+import com.github.xjln.utility.MatchedList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * the source of a .xjln File that is edited, like in an editor. An edit only lexes the changed lines and
+ * only reparses the declarations containing them, or the members of the class containing them.
+ * All other declarations keep their tokens, methods and fields, declarations that are moved by an edit
+ * only get their new line numbers when the File is requested. A Document is not thread safe
+ */
+public final class Document {
+
+    /**
+     * a top-level declaration and the lines it spans
+     */
+    private static final class Declaration {
+        int start, end;
+        /** the number of lines the declaration has been moved by since its line numbers were updated */
+        int moved;
+        XJLNClass main;
+        HashMap<String, Compilable> classes;
+        HashMap<String, String> uses;
+        /** the members of a class declaration, null for all other declarations */
+        ArrayList<Member> members;
+    }
+
+    /**
+     * a member of a class declaration, its lines are relative to the start of the declaration
+     */
+    private static final class Member {
+        int start, end;
+        int moved;
+        XJLNClass declared;
+
+        Member(int start, int end, XJLNClass declared){
+            this.start = start;
+            this.end = end;
+            this.declared = declared;
+        }
+    }
+
+    /**
+     * a name declared in the File and the lines of its declaration, they are up to date without binding the File
+     * @param owner the class declaring the member or null for top-level declarations
+     * @param type the type of a field, the return type of a method or the used class of a use
+     * @param end the line after the declaration
+     * @param method the parsed method, null for classes, fields, uses and methods of interfaces
+     */
+    record Symbol(String name, String owner, Kind kind, String type, int start, int end, XJLNMethod method){}
+
+    enum Kind {CLASS, METHOD, FIELD, USE}
+
+    /** the number of lines that are lexed at once, the window is doubled as long as a declaration does not fit */
+    private static final int WINDOW = 64;
+
+    private final String path;
+    private final Parser parser = new Parser();
+    private final ArrayList<Declaration> declarations = new ArrayList<>();
+
+    private Source source;
+
+    private TokenStream window;
+    private int windowStart = 0;
+    private int windowEnd = 0;
+
+    private int dirtyStart = -1;
+    private int dirtyEnd = -1;
+
+    private boolean bound = true;
+    private XJLNFile file;
+    private String error;
+    private ArrayList<Symbol> symbols;
+
+    /**
+     * @param path the path of the File without the .xjln extension
+     * @param text the source of the File
+     */
+    public Document(String path, String text){
+        this.path = path;
+        source = Source.of(text);
+
+        try{
+            if(source.lines() > 0)
+                open(0, source.lines());
+        }catch (RuntimeException e){
+            error = e.getMessage();
+            dirtyStart = 0;
+            dirtyEnd = source.lines();
+            return;
+        }
+
+        try{
+            parseDeclarations(0, 0, 0, 0);
+            file = assemble();
+        }catch (RuntimeException e){
+            error = e.getMessage();
+        }
+    }
+
+    /**
+     * replaces the given range of the source with the given text and reparses the changed declarations
+     * @param offset the offset of the first replaced character
+     * @param removed the number of replaced characters
+     * @param inserted the text inserted at the offset
+     * @throws RuntimeException if the edit is outside the source, or if the edited source contains errors,
+     *                          the edit is applied anyway in the second case
+     */
+    public void edit(int offset, int removed, String inserted) throws RuntimeException{
+        if(offset < 0 || removed < 0 || offset + removed > source.text().length())
+            throw new RuntimeException("Edit " + offset + " +" + removed + " is outside of the source of length " + source.text().length());
+
+        Source edited = source.edit(offset, removed, inserted);
+
+        int first = source.lineOf(offset);
+        int last = source.lineOf(offset + removed);
+        int delta = edited.lineOf(offset + inserted.length()) - last;
+
+        source = edited;
+        window = null;
+        windowStart = windowEnd = 0;
+        file = null;
+        error = null;
+        symbols = null;
+
+        try{
+            if(dirtyStart != -1 || !reparseMembers(first, last, delta))
+                reparseDeclarations(first, last + 1, delta);
+
+            file = assemble();
+        }catch (RuntimeException e){
+            error = e.getMessage();
+            throw e;
+        }
+    }
+
+    public String getText(){
+        return source.text();
+    }
+
+    /**
+     * @return the parsed File or null if the source contains errors
+     */
+    public XJLNFile getFile(){
+        if(error != null)
+            return null;
+
+        if(!bound){
+            for(Declaration declaration:declarations)
+                bind(declaration);
+
+            file = assemble();
+            bound = true;
+        }
+
+        return file;
+    }
+
+    /**
+     * @return the first error found in the changed lines or null if the source contains no errors
+     */
+    public String getError(){
+        return error;
+    }
+
+    Source source(){
+        return source;
+    }
+
+    /**
+     * @return the names declared by all parsed declarations in the order of their lines,
+     *         declarations containing errors are missing
+     */
+    ArrayList<Symbol> symbols(){
+        if(symbols != null)
+            return symbols;
+
+        symbols = new ArrayList<>();
+
+        for(Declaration declaration:declarations){
+            for(String alias:declaration.uses.keySet())
+                symbols.add(new Symbol(alias, null, Kind.USE, declaration.uses.get(alias), declaration.start, declaration.end, null));
+
+            addSymbols(declaration.main, null, declaration.start, declaration.end);
+
+            for(String name:declaration.classes.keySet()){
+                Compilable c = declaration.classes.get(name);
+                symbols.add(new Symbol(name, null, Kind.CLASS, null, declaration.start, declaration.end, null));
+
+                if(declaration.members != null){
+                    for(Member member:declaration.members)
+                        addSymbols(member.declared, name, declaration.start + member.start, declaration.start + member.end);
+                }else if(c instanceof XJLNClass clazz)
+                    addSymbols(clazz, name, declaration.start, declaration.end);
+                else if(c instanceof XJLNDataClass data){
+                    for(int i = 0;i < data.fields.size();i++)
+                        symbols.add(new Symbol(data.fields.getKey(i), name, Kind.FIELD, data.fields.getValue(i).type(), declaration.start, declaration.end, null));
+                }else if(c instanceof XJLNInterface interfaze){
+                    for(int i = 0;i < interfaze.methods.size();i++)
+                        symbols.add(new Symbol(interfaze.methods.getKey(i), name, Kind.METHOD, interfaze.methods.getValue(i).returnType(), declaration.start, declaration.end, null));
+                }
+            }
+        }
+
+        return symbols;
+    }
+
+    private void addSymbols(XJLNClass clazz, String owner, int start, int end){
+        for(String name:clazz.fields.keySet())
+            symbols.add(new Symbol(name, owner, Kind.FIELD, clazz.fields.get(name).type(), start, end, null));
+
+        for(String name:clazz.staticFields.keySet())
+            symbols.add(new Symbol(name, owner, Kind.FIELD, clazz.staticFields.get(name).type(), start, end, null));
+
+        for(String name:clazz.methods.keySet())
+            symbols.add(new Symbol(name, owner, Kind.METHOD, clazz.methods.get(name).returnType, start, end, clazz.methods.get(name)));
+
+        for(String name:clazz.staticMethods.keySet())
+            symbols.add(new Symbol(name, owner, Kind.METHOD, clazz.staticMethods.get(name).returnType, start, end, clazz.staticMethods.get(name)));
+    }
+
+    /**
+     * reparses the members of a class overlapping the changed lines, if the change is inside the body of the class
+     * @return false if the change is not inside the body of a class or the class could not be parsed member by member
+     */
+    private boolean reparseMembers(int first, int last, int delta){
+        int index = 0;
+
+        while(index < declarations.size() && declarations.get(index).end <= first)
+            index++;
+
+        if(index == declarations.size())
+            return false;
+
+        Declaration declaration = declarations.get(index);
+
+        if(declaration.members == null || declaration.start >= first || last >= declaration.end - 1)
+            return false;
+
+        ArrayList<Member> members = declaration.members;
+        int offset = declaration.start;
+
+        int i = 0;
+        while(i < members.size() && offset + members.get(i).end <= first)
+            i++;
+
+        int j = i;
+        while(j < members.size() && offset + members.get(j).start <= last)
+            j++;
+
+        int start = i < j ? Math.min(first, offset + members.get(i).start) : first;
+        int end = (i < j ? Math.max(last + 1, offset + members.get(j - 1).end) : last + 1) + delta;
+        int closing = declaration.end - 1 + delta;
+
+        String name = declaration.classes.keySet().iterator().next();
+        XJLNClass clazz = (XJLNClass) declaration.classes.get(name);
+        ArrayList<Member> parsed = new ArrayList<>();
+        int line = start;
+        int k = j;
+
+        try{
+            while(true){
+                line = skipEmptyLines(line);
+
+                while(k < members.size() && offset + members.get(k).start + delta < line)
+                    k++;
+
+                if(line >= end && (line == closing || (k < members.size() && offset + members.get(k).start + delta == line)))
+                    break;
+
+                if(line >= closing)
+                    return false;
+
+                Member member = parseMember(line, offset, clazz);
+
+                if(member == null)
+                    return false;
+
+                member.moved = -declaration.moved;
+                parsed.add(member);
+                line = offset + member.end;
+            }
+        }catch (RuntimeException e){
+            return false;
+        }
+
+        ArrayList<Member> result = new ArrayList<>(members.subList(0, i));
+        result.addAll(parsed);
+        result.addAll(members.subList(k, members.size()));
+
+        XJLNClass rebuilt = new XJLNClass(clazz.accessFlag, clazz.finaly, clazz.abstrakt);
+
+        try{
+            for(Member member:result)
+                rebuilt.addAll(member.declared);
+        }catch (RuntimeException e){
+            return false;
+        }
+
+        if(delta != 0){
+            for(int m = i + parsed.size();m < result.size();m++){
+                Member member = result.get(m);
+                member.start += delta;
+                member.end += delta;
+                member.moved += delta;
+            }
+
+            bound = false;
+        }
+
+        declaration.members = result;
+        declaration.classes = new HashMap<>();
+        declaration.classes.put(name, rebuilt);
+        declaration.end += delta;
+
+        for(int d = index + 1;d < declarations.size();d++)
+            move(declarations.get(d), delta);
+
+        return true;
+    }
+
+    /**
+     * reparses the declarations overlapping the changed lines and the lines that contained errors,
+     * until a declaration ends where an unchanged declaration starts
+     * @param end the line after the last changed line
+     */
+    private void reparseDeclarations(int first, int end, int delta){
+        if(dirtyStart != -1){
+            first = Math.min(first, dirtyStart);
+            end = Math.max(end, dirtyEnd);
+            dirtyStart = dirtyEnd = -1;
+        }
+
+        int i = 0;
+        while(i < declarations.size() && declarations.get(i).end <= first)
+            i++;
+
+        int j = i;
+        while(j < declarations.size() && declarations.get(j).start < end)
+            j++;
+
+        int start = i < j ? Math.min(first, declarations.get(i).start) : first;
+        end = (i < j ? Math.max(end, declarations.get(j - 1).end) : end) + delta;
+
+        for(int d = j;d < declarations.size();d++)
+            move(declarations.get(d), delta);
+
+        parseDeclarations(start, end, i, j);
+    }
+
+    /**
+     * parses declarations from the start line until a declaration ends at or after the end line
+     * where an unchanged declaration starts, or until the end of the source, and replaces the overlapped declarations.
+     * If a declaration contains an error all lines until the next unchanged declaration have to be parsed again
+     * @param from the index of the first declaration after the start line
+     * @param next the index of the first unchanged declaration, all declarations before it are replaced
+     */
+    private void parseDeclarations(int start, int end, int from, int next){
+        ArrayList<Declaration> parsed = new ArrayList<>();
+        int line = start;
+        int k = next;
+
+        try{
+            while(true){
+                line = skipEmptyLines(line);
+
+                while(k < declarations.size() && declarations.get(k).start < line)
+                    k++;
+
+                if(line >= source.lines() || (line >= end && k < declarations.size() && declarations.get(k).start == line))
+                    break;
+
+                parsed.add(parseDeclaration(line));
+                line = parsed.get(parsed.size() - 1).end;
+            }
+        }catch (RuntimeException e){
+            while(k < declarations.size() && declarations.get(k).start <= line)
+                k++;
+
+            dirtyStart = line;
+            dirtyEnd = k < declarations.size() ? declarations.get(k).start : source.lines();
+
+            declarations.subList(from, k).clear();
+            declarations.addAll(from, parsed);
+
+            throw e;
+        }
+
+        declarations.subList(from, k).clear();
+        declarations.addAll(from, parsed);
+    }
+
+    private Declaration parseDeclaration(int line){
+        if(line < windowStart || line >= windowEnd)
+            open(line, line + WINDOW);
+
+        while(true){
+            Declaration declaration = new Declaration();
+            ArrayList<Parser.Member> members = new ArrayList<>();
+
+            declaration.start = line;
+            declaration.main = new XJLNClass(AccessFlag.ACC_PUBLIC, true, false);
+            declaration.classes = new HashMap<>();
+            declaration.uses = new HashMap<>();
+
+            try{
+                declaration.end = windowStart + parser.parseDeclaration(line - windowStart, declaration.main, declaration.classes, declaration.uses, members);
+            }catch (RuntimeException e){
+                if(extend(line))
+                    continue;
+
+                throw e;
+            }
+
+            if(declaration.classes.size() == 1 && declaration.classes.values().iterator().next() instanceof XJLNClass){
+                declaration.members = new ArrayList<>();
+
+                for(Parser.Member member:members)
+                    declaration.members.add(new Member(windowStart + member.start() - line, windowStart + member.end() - line, member.declared()));
+            }
+
+            return declaration;
+        }
+    }
+
+    /**
+     * @param offset the first line of the class declaration
+     * @return the member starting at the given line or null if the line closes the class
+     */
+    private Member parseMember(int line, int offset, XJLNClass clazz){
+        if(line < windowStart || line >= windowEnd)
+            open(line, line + WINDOW);
+
+        while(true){
+            XJLNClass declared = new XJLNClass(clazz.accessFlag, clazz.finaly, clazz.abstrakt);
+            int end;
+
+            try{
+                end = parser.parseMember(line - windowStart, declared);
+            }catch (RuntimeException e){
+                if(extend(line))
+                    continue;
+
+                throw e;
+            }
+
+            return end == -1 ? null : new Member(line - offset, windowStart + end - offset, declared);
+        }
+    }
+
+    private int skipEmptyLines(int line){
+        while(line < source.lines()){
+            if(line < windowStart || line >= windowEnd)
+                open(line, line + WINDOW);
+
+            if(window.lineStart(line - windowStart) != window.lineEnd(line - windowStart))
+                break;
+
+            line++;
+        }
+
+        return line;
+    }
+
+    /**
+     * lexes the given lines, the tokens of the window are used by all declarations parsed from it
+     */
+    private void open(int start, int end){
+        end = Math.min(end, source.lines());
+        String text = source.text();
+
+        window = Lexer.tokenize(text.substring(source.lineStart(start), end < source.lines() ? source.lineStart(end) : text.length()));
+        windowStart = start;
+        windowEnd = end;
+
+        parser.begin(window, path, start);
+    }
+
+    /**
+     * lexes twice as many lines starting with the given line, if the parser reached the end of the window
+     * before the end of the source
+     * @return false if the window was not extended
+     */
+    private boolean extend(int line){
+        if(windowStart + parser.line() < windowEnd || windowEnd >= source.lines())
+            return false;
+
+        open(line, line + 2 * Math.max(windowEnd - line, WINDOW));
+        return true;
+    }
+
+    private void move(Declaration declaration, int delta){
+        if(delta == 0)
+            return;
+
+        declaration.start += delta;
+        declaration.end += delta;
+        declaration.moved += delta;
+        bound = false;
+    }
+
+    /**
+     * updates the line numbers of the methods and fields of a moved declaration, their tokens are kept
+     */
+    private static void bind(Declaration declaration){
+        boolean changed = false;
+
+        if(declaration.members != null){
+            for(Member member:declaration.members){
+                if(declaration.moved + member.moved != 0){
+                    member.declared = bind(member.declared, declaration.moved + member.moved);
+                    changed = true;
+                }
+
+                member.moved = 0;
+            }
+        }
+
+        if(declaration.moved == 0 && !changed)
+            return;
+
+        declaration.main = bind(declaration.main, declaration.moved);
+
+        HashMap<String, Compilable> classes = new HashMap<>();
+
+        for(String name:declaration.classes.keySet()){
+            Compilable c = declaration.classes.get(name);
+
+            if(c instanceof XJLNClass clazz){
+                XJLNClass rebuilt = new XJLNClass(clazz.accessFlag, clazz.finaly, clazz.abstrakt);
+
+                for(Member member:declaration.members)
+                    rebuilt.addAll(member.declared);
+
+                c = rebuilt;
+            }else if(c instanceof XJLNDataClass data){
+                MatchedList<String, XJLNField> fields = new MatchedList<>();
+
+                for(int i = 0;i < data.fields.size();i++)
+                    fields.add(data.fields.getKey(i), bind(data.fields.getValue(i), declaration.moved));
+
+                c = new XJLNDataClass(data.accessFlag, fields, data.finaly);
+            }
+
+            classes.put(name, c);
+        }
+
+        declaration.classes = classes;
+        declaration.moved = 0;
+    }
+
+    private static XJLNClass bind(XJLNClass clazz, int delta){
+        XJLNClass bound = new XJLNClass(clazz.accessFlag, clazz.finaly, clazz.abstrakt);
+
+        for(String name:clazz.fields.keySet())
+            bound.fields.put(name, bind(clazz.fields.get(name), delta));
+
+        for(String name:clazz.staticFields.keySet())
+            bound.staticFields.put(name, bind(clazz.staticFields.get(name), delta));
+
+        for(String name:clazz.methods.keySet())
+            bound.methods.put(name, bind(clazz.methods.get(name), delta));
+
+        for(String name:clazz.staticMethods.keySet())
+            bound.staticMethods.put(name, bind(clazz.staticMethods.get(name), delta));
+
+        return bound;
+    }
+
+    private static XJLNField bind(XJLNField field, int delta){
+        return new XJLNField(field.accessFlag(), field.statik(), field.transiend(), field.volatil(), field.constant(), field.type(), field.initValue(), field.lineInFile() + delta);
+    }
+
+    private static XJLNMethod bind(XJLNMethod method, int delta){
+        return new XJLNMethod(method.accessFlag, method.returnType, method.parameters, method.code, method.statik, method.abstrakt, method.synchronise, method.line + delta);
+    }
+
+    /**
+     * joins the declarations into a File and checks that no name is declared twice
+     */
+    private XJLNFile assemble(){
+        XJLNClass main = new XJLNClass(AccessFlag.ACC_PUBLIC, true, false);
+        HashMap<String, Compilable> classes = new HashMap<>();
+        HashMap<String, String> uses = new HashMap<>();
+
+        for(Declaration declaration:declarations){
+            try{
+                main.addAll(declaration.main);
+
+                for(String name:declaration.classes.keySet()){
+                    if(classes.containsKey(name))
+                        throw new RuntimeException("Class is already defined");
+
+                    classes.put(name, declaration.classes.get(name));
+                }
+
+                for(String alias:declaration.uses.keySet()){
+                    if(uses.containsKey(alias))
+                        throw new RuntimeException("alias " + alias + " is already defined");
+
+                    uses.put(alias, declaration.uses.get(alias));
+                }
+            }catch (RuntimeException e){
+                throw new RuntimeException(e.getMessage() + " in: " + path.replace("\\", "/") + " :" + declaration.end);
+            }
+        }
+
+        return new XJLNFile(path.replace("\\", "/"), main, classes, uses);
+    }
+}
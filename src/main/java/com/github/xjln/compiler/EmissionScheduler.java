@@ -0,0 +1,262 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.lang.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+final class EmissionScheduler {
+
+    private static final class Unit{
+        final String path;
+        final String name;
+        final Compilable compilable;
+        final int weight;
+        final ArrayList<Unit> dependents = new ArrayList<>();
+        final HashSet<Unit> dependencies = new HashSet<>();
+        int pending;
+        long rank;
+
+        Unit(String path, String name, Compilable compilable){
+            this.path = path;
+            this.name = name;
+            this.compilable = compilable;
+            this.weight = estimateWeight(compilable);
+        }
+    }
+
+    private final Map<String, XJLNFile> files;
+    private final int threads;
+    private final OutputSink sink;
+    private final EmitterBackend backend;
+    private final ParseCache parseCache;
+    private final Metrics metrics;
+    private final int optimization;
+    private final ConcurrentHashMap<String, Set<String>> classes = new ConcurrentHashMap<>();
+    private final ArrayList<Unit> units = new ArrayList<>();
+    private final PriorityBlockingQueue<Unit> ready = new PriorityBlockingQueue<>(16, Comparator.comparingLong((Unit u) -> -u.rank).thenComparing(u -> u.path + "." + u.name));
+    private final ConcurrentSkipListMap<String, String> errors = new ConcurrentSkipListMap<>();
+
+    EmissionScheduler(Map<String, XJLNFile> files, int threads, OutputSink sink, EmitterBackend backend, ParseCache parseCache, Metrics metrics, int optimization){
+        this.files = files;
+        this.threads = threads;
+        this.sink = sink;
+        this.backend = backend;
+        this.parseCache = parseCache;
+        this.metrics = metrics;
+        this.optimization = optimization;
+    }
+
+    /**
+     * @return the names of all classes that have been written for the given File
+     */
+    Set<String> getClasses(String path){
+        return new TreeSet<>(classes.getOrDefault(path, Set.of()));
+    }
+
+    void run(){
+        buildGraph();
+
+        if(units.isEmpty())
+            return;
+
+        rankUnits(sortUnits());
+
+        CountDownLatch done = new CountDownLatch(units.size());
+        ForkJoinPool pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+        try{
+            for(Unit unit:units)
+                if(unit.pending == 0)
+                    schedule(unit, pool, done);
+
+            done.await();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while compiling");
+        }finally {
+            pool.shutdown();
+        }
+
+        if(!errors.isEmpty())
+            throw new RuntimeException(String.join("\n", errors.values()));
+    }
+
+    private void schedule(Unit unit, ForkJoinPool pool, CountDownLatch done){
+        ready.add(unit);
+        pool.execute(() -> emitNext(pool, done));
+    }
+
+    private void emitNext(ForkJoinPool pool, CountDownLatch done){
+        Unit unit = ready.poll();
+
+        if(unit == null)
+            return;
+
+        Metrics.Timer timer = metrics.start(Metrics.Phase.EMIT, unit.path);
+
+        try{
+            CodeGenerator generator = new CodeGenerator(sink, backend, parseCache, metrics, optimization);
+            generator.compile(unit.compilable, unit.name, unit.path);
+            classes.computeIfAbsent(unit.path, path -> ConcurrentHashMap.newKeySet()).addAll(generator.getWrittenClasses());
+        }catch (Throwable e){ //errors like StackOverflowError are reported too, so run() is never left waiting
+            errors.put(unit.path + "." + unit.name, e.getMessage() == null ? e + " in: " + unit.path + "." + unit.name : e.getMessage());
+        }finally {
+            timer.stop();
+
+            for(Unit dependent:unit.dependents){
+                boolean isReady;
+
+                synchronized (dependent){
+                    isReady = --dependent.pending == 0;
+                }
+
+                if(isReady)
+                    schedule(dependent, pool, done);
+            }
+
+            done.countDown();
+        }
+    }
+
+    private void buildGraph(){
+        HashMap<String, String> names = new HashMap<>();
+        HashMap<String, ArrayList<Unit>> byFile = new HashMap<>();
+
+        for(String path:new TreeSet<>(files.keySet())){
+            XJLNFile file = files.get(path);
+            ArrayList<Unit> fileUnits = new ArrayList<>();
+
+            names.put(moduleName(path), path);
+
+            if(!file.main.isEmpty())
+                fileUnits.add(new Unit(path, "Main", file.main));
+
+            for(String name:new TreeSet<>(file.classes.keySet()))
+                fileUnits.add(new Unit(path, name, file.classes.get(name)));
+
+            byFile.put(path, fileUnits);
+            units.addAll(fileUnits);
+        }
+
+        for(String path:byFile.keySet()){
+            for(String use:files.get(path).uses.values()){
+                String dependency = resolve(use, names);
+
+                if(dependency == null || dependency.equals(path))
+                    continue;
+
+                for(Unit unit:byFile.get(path)) {
+                    for (Unit target : byFile.get(dependency)) {
+                        if (unit.dependencies.add(target))
+                            target.dependents.add(unit);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name other Files use to refer to the File with the given path
+     */
+    static String moduleName(String path){
+        String name = Compiler.validateName(path);
+        int i = 0;
+
+        while(i < name.length() && name.charAt(i) == '.')
+            i++;
+
+        return name.substring(i);
+    }
+
+    static String resolve(String use, Map<String, String> names){
+        use = Compiler.validateName(use); //uses of several names keep the slashes of their path
+
+        if(names.containsKey(use))
+            return names.get(use);
+
+        int index = use.lastIndexOf('.');
+
+        return index == -1 ? null : names.get(use.substring(0, index));
+    }
+
+    /**
+     * sorts the units topologically, units that are part of a cycle are appended at the end
+     * and the dependencies between them are ignored
+     */
+    private ArrayList<Unit> sortUnits(){
+        ArrayList<Unit> sorted = new ArrayList<>();
+        ArrayDeque<Unit> queue = new ArrayDeque<>();
+
+        for(Unit unit:units){
+            unit.pending = unit.dependencies.size();
+
+            if(unit.pending == 0)
+                queue.add(unit);
+        }
+
+        while(!queue.isEmpty()){
+            Unit unit = queue.poll();
+            sorted.add(unit);
+
+            for(Unit dependent:unit.dependents)
+                if(--dependent.pending == 0)
+                    queue.add(dependent);
+        }
+
+        if(sorted.size() < units.size()){
+            HashSet<Unit> cyclic = new HashSet<>(units);
+            sorted.forEach(cyclic::remove);
+
+            for(Unit unit:units){
+                if(cyclic.contains(unit)){
+                    unit.dependents.removeIf(cyclic::contains);
+                    unit.dependencies.removeIf(cyclic::contains);
+                    sorted.add(unit);
+                }
+            }
+        }
+
+        for(Unit unit:units)
+            unit.pending = unit.dependencies.size();
+
+        return sorted;
+    }
+
+    /**
+     * the rank of a unit is the length of the longest weighted path starting at it,
+     * so units on the critical path are emitted first
+     */
+    private void rankUnits(ArrayList<Unit> sorted){
+        for(int i = sorted.size() - 1;i >= 0;i--){
+            Unit unit = sorted.get(i);
+            long max = 0;
+
+            for(Unit dependent:unit.dependents)
+                max = Math.max(max, dependent.rank);
+
+            unit.rank = unit.weight + max;
+        }
+    }
+
+    private static int estimateWeight(Compilable compilable){
+        int weight = 1;
+
+        if(compilable instanceof XJLNClass clazz){
+            weight += clazz.fields.size() + clazz.staticFields.size();
+
+            for(XJLNMethod method:clazz.methods.values())
+                weight += method.code != null ? method.code.length() : 0;
+
+            for(XJLNMethod method:clazz.staticMethods.values())
+                weight += method.code != null ? method.code.length() : 0;
+        }else if(compilable instanceof XJLNDataClass data)
+            weight += data.fields.size();
+        else if(compilable instanceof XJLNInterface interfaze)
+            weight += interfaze.methods.size();
+        else if(compilable instanceof XJLNTypeClass type)
+            weight += type.values.length;
+
+        return weight;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.xjln.compiler;
+
+import javassist.bytecode.ClassFile;
+
+/**
+ * turns the ClassFiles built by the code generator into bytecode, implementations have to be thread safe
+ * since classes are emitted by multiple threads
+ */
+public interface EmitterBackend {
+
+    /**
+     * @return the bytecode of the given class, the returned array must not be reused by the backend
+     * @throws RuntimeException if the class could not be serialized
+     */
+    byte[] emit(ClassFile cf) throws RuntimeException;
+
+    /**
+     * @return the name of the backend in the keys of the output cache, backends whose bytecode depends on their
+     * configuration have to include it
+     */
+    default String id(){
+        return getClass().getName();
+    }
+}
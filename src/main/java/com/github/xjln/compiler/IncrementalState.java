@@ -0,0 +1,165 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.lang.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+final class IncrementalState {
+
+    record Entry(String contentHash, String signatureHash, Set<String> classes){}
+
+    private static final String FILE = ".xjln-incremental";
+    private static final String VERSION = "2";
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    Entry get(String path){
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry){
+        entries.put(path, entry);
+    }
+
+    Set<String> paths(){
+        return entries.keySet();
+    }
+
+    /**
+     * @return the hash of everything besides the sources that changes the emitted classes
+     */
+    static String fingerprint(int optimization, EmitterBackend backend){
+        return hash((Compiler.VERSION + "\n" + optimization + "\n" + backend.id()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the current compilation, the state is discarded if it was saved with another one
+     */
+    static IncrementalState load(File output, String fingerprint){
+        IncrementalState state = new IncrementalState();
+        File file = new File(output, FILE);
+
+        if(!file.exists())
+            return state;
+
+        try{
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+            if(lines.isEmpty() || !lines.get(0).equals(VERSION + "\t" + fingerprint))
+                return state;
+
+            for(String line:lines.subList(1, lines.size())){
+                String[] parts = line.split("\t", -1);
+
+                if(parts.length != 4)
+                    return new IncrementalState();
+
+                Set<String> classes = new TreeSet<>();
+                if(!parts[3].isEmpty())
+                    classes.addAll(Arrays.asList(parts[3].split(",")));
+
+                state.entries.put(parts[0], new Entry(parts[1], parts[2], classes));
+            }
+        }catch (IOException e){
+            return new IncrementalState();
+        }
+
+        return state;
+    }
+
+    void save(File output, String fingerprint){
+        StringBuilder sb = new StringBuilder(VERSION).append("\t").append(fingerprint).append("\n");
+
+        for(String path:new TreeSet<>(entries.keySet())){
+            Entry entry = entries.get(path);
+            sb.append(path).append("\t").append(entry.contentHash).append("\t").append(entry.signatureHash).append("\t").append(String.join(",", entry.classes)).append("\n");
+        }
+
+        try{
+            Files.writeString(new File(output, FILE).toPath(), sb.toString(), StandardCharsets.UTF_8);
+        }catch (IOException e){
+            throw new RuntimeException("failed to write " + FILE + " to " + output.getPath());
+        }
+    }
+
+    static String hash(byte[] bytes){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+
+            for(byte b:digest)
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+            return sb.toString();
+        }catch (NoSuchAlgorithmException e){
+            throw new RuntimeException("SHA-256 is not supported");
+        }
+    }
+
+    /**
+     * hashes everything other Files can see of the given File, that is all classes and all
+     * fields and methods that are not private
+     */
+    static String signature(XJLNFile file){
+        StringBuilder sb = new StringBuilder();
+
+        appendClass(sb, "Main", file.main);
+
+        for(String name:new TreeSet<>(file.classes.keySet())){
+            Compilable c = file.classes.get(name);
+
+            if(c instanceof XJLNClass clazz)
+                appendClass(sb, name, clazz);
+            else if(c instanceof XJLNDataClass data){
+                sb.append("data ").append(name).append(" ").append(data.getAccessFlag()).append("\n");
+
+                for(int i = 0;i < data.fields.size();i++)
+                    sb.append(" ").append(data.fields.getKey(i)).append(" ").append(data.fields.getValue(i).getAccessFlag()).append(" ").append(data.fields.getValue(i).type()).append("\n");
+            }else if(c instanceof XJLNInterface interfaze){
+                sb.append("interface ").append(name).append(" ").append(interfaze.getAccessFlag()).append("\n");
+
+                for(int i = 0;i < interfaze.methods.size();i++){
+                    XJLNInterfaceMethod method = interfaze.methods.getValue(i);
+                    sb.append(" ").append(interfaze.methods.getKey(i)).append(" (").append(Compiler.toDesc(method.parameters().getValueList().toArray(new String[0]))).append(")").append(Compiler.toDesc(method.returnType())).append("\n");
+                }
+            }else if(c instanceof XJLNTypeClass type)
+                sb.append("type ").append(name).append(" ").append(type.getAccessFlag()).append(" ").append(String.join("|", type.values)).append("\n");
+        }
+
+        return hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendClass(StringBuilder sb, String name, XJLNClass clazz){
+        sb.append("class ").append(name).append(" ").append(clazz.getAccessFlag()).append("\n");
+
+        appendFields(sb, clazz.fields);
+        appendFields(sb, clazz.staticFields);
+        appendMethods(sb, clazz.methods);
+        appendMethods(sb, clazz.staticMethods);
+    }
+
+    private static void appendFields(StringBuilder sb, HashMap<String, XJLNField> fields){
+        for(String name:new TreeSet<>(fields.keySet())){
+            XJLNField field = fields.get(name);
+
+            if(field.accessFlag() != AccessFlag.ACC_PRIVATE)
+                sb.append(" field ").append(name).append(" ").append(field.getAccessFlag()).append(" ").append(field.type()).append("\n");
+        }
+    }
+
+    private static void appendMethods(StringBuilder sb, HashMap<String, XJLNMethod> methods){
+        for(String name:new TreeSet<>(methods.keySet())){
+            XJLNMethod method = methods.get(name);
+
+            if(method.accessFlag != AccessFlag.ACC_PRIVATE)
+                sb.append(" method ").append(name).append(" ").append(method.getAccessFlag()).append(" ").append(Compiler.toDesc(method)).append("\n");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.xjln.compiler;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * streams every class directly into a JAR File. Classes are handed to a single writer Thread through a bounded queue,
+ * so emitting threads only block if the writer falls behind
+ */
+public final class JarSink implements OutputSink {
+
+    private record Entry(String name, byte[] bytes){}
+
+    private static final Entry END = new Entry(null, null);
+
+    private final File file;
+    private final boolean stored;
+    private final JarOutputStream out;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final Thread writer;
+
+    private volatile String error;
+    private volatile boolean closed = false;
+
+    /**
+     * @param file the JAR File to create, an existing File is replaced
+     * @param stored if entries should be stored uncompressed, which is faster to write but creates larger Files
+     * @param queueSize the number of classes that can wait to be written before emitting threads are blocked
+     * @throws RuntimeException if the File could not be created
+     */
+    public JarSink(File file, boolean stored, int queueSize) throws RuntimeException{
+        if(queueSize < 1)
+            throw new RuntimeException("Expected queue size of at least one got " + queueSize);
+
+        this.file = file;
+        this.stored = stored;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Created-By"), "XJLN " + Compiler.VERSION);
+
+        try{
+            if(file.getParentFile() != null && !file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException();
+
+            out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), manifest);
+        }catch (IOException e){
+            throw new RuntimeException("failed to create " + file.getPath());
+        }
+
+        if(stored)
+            out.setMethod(JarOutputStream.STORED);
+
+        writer = new Thread(this::writeEntries, "xjln-jar-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param file the JAR File to create, an existing File is replaced
+     * @param stored if entries should be stored uncompressed, which is faster to write but creates larger Files
+     * @throws RuntimeException if the File could not be created
+     */
+    public JarSink(File file, boolean stored) throws RuntimeException{
+        this(file, stored, 256);
+    }
+
+    @Override
+    public void write(String name, byte[] bytes) throws RuntimeException{
+        if(closed) //the writer Thread has finished, so the queue would never be emptied
+            throw new IllegalStateException("failed to write " + name + ", " + file.getPath() + " is closed");
+
+        if(error != null)
+            throw new RuntimeException(error);
+
+        try{
+            queue.put(new Entry(name.replace('.', '/').replace('\\', '/') + ".class", bytes));
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while writing " + name);
+        }
+    }
+
+    /**
+     * waits until all queued classes have been written and finishes the JAR File
+     * @throws RuntimeException if a class could not be written
+     */
+    @Override
+    public synchronized void close() throws RuntimeException{
+        if(closed)
+            return;
+
+        closed = true;
+
+        try{
+            queue.put(END);
+            writer.join();
+        }catch (InterruptedException e){
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+
+        try{
+            out.close();
+        }catch (IOException e){
+            if(error == null)
+                error = "failed to write " + file.getPath();
+        }
+
+        if(error != null)
+            throw new RuntimeException(error);
+    }
+
+    private void writeEntries(){
+        CRC32 crc = new CRC32();
+
+        try{
+            for(Entry entry = queue.take();entry != END;entry = queue.take()){
+                if(error != null)
+                    continue;
+
+                try{
+                    ZipEntry zipEntry = new ZipEntry(entry.name);
+
+                    if(stored){
+                        crc.reset();
+                        crc.update(entry.bytes);
+                        zipEntry.setSize(entry.bytes.length);
+                        zipEntry.setCompressedSize(entry.bytes.length);
+                        zipEntry.setCrc(crc.getValue());
+                    }
+
+                    out.putNextEntry(zipEntry);
+                    out.write(entry.bytes);
+                    out.closeEntry();
+                }catch (IOException e){
+                    error = "failed to write " + entry.name + " to " + file.getPath() + ": " + e.getMessage();
+                }
+            }
+        }catch (InterruptedException e){
+            error = "interrupted while writing " + file.getPath();
+        }
+    }
+}
@@ -0,0 +1,846 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.utility.JsonReader;
+import com.github.xjln.utility.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * a language server speaking the Language Server Protocol over a stream, like stdin and stdout of an editor.
+ * Open Files are kept as Documents and are reparsed incrementally, the Files of the workspace they use are parsed once
+ * and kept until they change. The resolved uses and the variables visible in method bodies are cached per File.
+ * Files that are not open and scopes are removed least recently used first, so the memory used is bounded.
+ * A LanguageServer is not thread safe
+ */
+final class LanguageServer {
+
+    private static final String[] KEYWORDS = {"use", "from", "as", "def", "class", "data", "type", "interface", "end", "if", "else", "while", "for", "return",
+            "public", "protected", "private", "static", "final", "abstract", "synchronised", "transient", "volatile", "const", "true", "false"};
+
+    /** the number of lines whose scopes are cached per open File */
+    private static final int SCOPES = 32;
+
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INTERNAL_ERROR = -32603;
+
+    /**
+     * a File of the workspace or a File opened in the editor
+     */
+    private static final class Entry {
+        final String uri;
+        final String path;
+        Document document;
+        /** the Files used by the uses of the File, null if they have to be resolved again */
+        HashMap<String, Entry> uses;
+        /** the variables visible at a line of a method body, the least recently used lines are removed first */
+        final LinkedHashMap<Integer, HashMap<String, String>> scopes = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HashMap<String, String>> eldest){
+                return size() > SCOPES;
+            }
+        };
+
+        Entry(String uri, String path, Document document){
+            this.uri = uri;
+            this.path = path;
+            this.document = document;
+        }
+    }
+
+    /**
+     * the class or the top-level declarations of a File whose members are referenced
+     * @param owner the name of the class or null for the top-level declarations
+     */
+    private record Target(Entry entry, String owner){}
+
+    /**
+     * the identifier at a position and the identifier before it, if it is separated by a '.' or ':'
+     */
+    private record Word(String name, String qualifier, int line){}
+
+    /**
+     * a proposed completion
+     * @param kind the CompletionItemKind of the Language Server Protocol
+     */
+    private record Item(int kind, String detail){}
+
+    private final String[] srcFolders;
+    private final Path[] roots;
+    private final SyntacticParser syntacticParser = new SyntacticParser();
+
+    private final HashMap<String, Entry> open = new HashMap<>();
+    private final LinkedHashMap<String, Entry> closed;
+    /** the uris of all Files of the workspace mapped by their module name */
+    private final HashMap<String, String> modules = new HashMap<>();
+
+    private OutputStream out;
+
+    LanguageServer(String[] srcFolders, int cacheSize){
+        this.srcFolders = srcFolders;
+        roots = new Path[srcFolders.length];
+
+        closed = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LanguageServer.Entry> eldest){
+                return size() > cacheSize;
+            }
+        };
+
+        for(int i = 0;i < srcFolders.length;i++){
+            roots[i] = Paths.get(srcFolders[i]).toAbsolutePath().normalize();
+
+            try(Stream<Path> stream = Files.walk(roots[i])){
+                for(Path file:stream.filter(p -> p.toString().endsWith(".xjln")).toList())
+                    modules.put(EmissionScheduler.moduleName(pathOf(file)), file.toUri().toString());
+            }catch (IOException e){
+                throw new RuntimeException("Unable to access " + srcFolders[i]);
+            }
+        }
+    }
+
+    /**
+     * answers the messages read from the given stream until the client exits or closes the stream
+     * @throws RuntimeException if the streams could not be accessed
+     */
+    void serve(InputStream in, OutputStream out) throws RuntimeException{
+        this.out = out;
+
+        try{
+            String message;
+
+            while((message = read(in)) != null){
+                if(!handle(message))
+                    return;
+            }
+        }catch (IOException e){
+            throw new RuntimeException("language server failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return false if the client exits
+     */
+    @SuppressWarnings("unchecked")
+    private boolean handle(String message) throws IOException{
+        HashMap<String, Object> request;
+
+        try{
+            request = (HashMap<String, Object>) JsonReader.parse(message);
+        }catch (RuntimeException e){
+            return true;
+        }
+
+        Object id = request.get("id");
+        String method = (String) request.get("method");
+        HashMap<String, Object> params = request.get("params") instanceof HashMap<?, ?> map ? (HashMap<String, Object>) map : new HashMap<>();
+
+        if(method == null)
+            return true;
+
+        try{
+            switch (method){
+                case "initialize"                       -> initialize(id);
+                case "shutdown"                         -> send(response(id).nullValue().endObject());
+                case "exit"                             -> {
+                    return false;
+                }
+                case "textDocument/didOpen"             -> didOpen(object(params, "textDocument"));
+                case "textDocument/didChange"           -> didChange(object(params, "textDocument"), (List<Object>) params.get("contentChanges"));
+                case "textDocument/didClose"            -> didClose(object(params, "textDocument"));
+                case "workspace/didChangeWatchedFiles"  -> didChangeWatchedFiles((List<Object>) params.get("changes"));
+                case "textDocument/definition"          -> definition(id, object(params, "textDocument"), object(params, "position"));
+                case "textDocument/completion"          -> completion(id, object(params, "textDocument"), object(params, "position"));
+                default                                 -> {
+                    if(id != null)
+                        send(error(id, METHOD_NOT_FOUND, "Unknown method " + method));
+                }
+            }
+        }catch (RuntimeException e){
+            if(id != null)
+                send(error(id, INTERNAL_ERROR, e.getMessage() == null ? e.toString() : e.getMessage()));
+        }
+
+        return true;
+    }
+
+    private void initialize(Object id) throws IOException{
+        JsonWriter json = response(id).beginObject()
+                .name("capabilities").beginObject()
+                .name("textDocumentSync").beginObject()
+                .name("openClose").value(true)
+                .name("change", 2)
+                .endObject()
+                .name("definitionProvider").value(true)
+                .name("completionProvider").beginObject()
+                .name("triggerCharacters").beginArray().value(".").value(":").endArray()
+                .endObject()
+                .endObject()
+                .name("serverInfo").beginObject()
+                .name("name", "xjln")
+                .name("version", Compiler.VERSION)
+                .endObject()
+                .endObject();
+
+        send(json.endObject());
+    }
+
+    private void didOpen(HashMap<String, Object> textDocument) throws IOException{
+        String uri = normalize((String) textDocument.get("uri"));
+        String path = pathOf(uri);
+
+        closed.remove(uri);
+        open.put(uri, new Entry(uri, path, new Document(path, (String) textDocument.get("text"))));
+
+        if(uri.endsWith(".xjln") && !modules.containsValue(uri) && isInWorkspace(uri)){
+            modules.put(EmissionScheduler.moduleName(path), uri);
+            invalidateUses();
+        }
+
+        publishDiagnostics(open.get(uri));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void didChange(HashMap<String, Object> textDocument, List<Object> changes) throws IOException{
+        Entry entry = open.get(normalize((String) textDocument.get("uri")));
+
+        if(entry == null || changes == null)
+            return;
+
+        for(Object o:changes){
+            HashMap<String, Object> change = (HashMap<String, Object>) o;
+            String text = (String) change.get("text");
+
+            if(change.get("range") == null){
+                entry.document = new Document(entry.path, text);
+                continue;
+            }
+
+            HashMap<String, Object> range = object(change, "range");
+            int start = offset(entry.document.source(), object(range, "start"));
+            int end = Math.max(offset(entry.document.source(), object(range, "end")), start);
+
+            try{
+                entry.document.edit(start, end - start, text);
+            }catch (RuntimeException ignored){} //the edit is applied and the error is published as a diagnostic
+        }
+
+        entry.uses = null;
+        entry.scopes.clear();
+
+        publishDiagnostics(entry);
+    }
+
+    private void didClose(HashMap<String, Object> textDocument) throws IOException{
+        String uri = normalize((String) textDocument.get("uri"));
+
+        if(open.remove(uri) == null)
+            return;
+
+        if(modules.containsValue(uri) && !new File(URI.create(uri)).exists()){
+            modules.values().remove(uri);
+            invalidateUses();
+        }
+
+        send(notification("textDocument/publishDiagnostics").beginObject().name("uri", uri).name("diagnostics").beginArray().endArray().endObject().endObject());
+    }
+
+    /**
+     * removes changed Files of the workspace from the cache, they are parsed again when they are used
+     */
+    @SuppressWarnings("unchecked")
+    private void didChangeWatchedFiles(List<Object> changes){
+        if(changes == null)
+            return;
+
+        for(Object o:changes){
+            HashMap<String, Object> change = (HashMap<String, Object>) o;
+            String uri = normalize((String) change.get("uri"));
+
+            closed.remove(uri);
+
+            if(number(change, "type") == 3)
+                modules.values().remove(uri);
+            else if(uri.endsWith(".xjln") && !modules.containsValue(uri) && isInWorkspace(uri))
+                modules.put(EmissionScheduler.moduleName(pathOf(uri)), uri);
+        }
+
+        invalidateUses();
+    }
+
+    private void definition(Object id, HashMap<String, Object> textDocument, HashMap<String, Object> position) throws IOException{
+        JsonWriter json = response(id);
+        Entry entry = open.get(normalize((String) textDocument.get("uri")));
+        Word word = entry == null ? null : word(entry, position, false);
+
+        if(word == null){
+            send(json.nullValue().endObject());
+            return;
+        }
+
+        Entry target = null;
+        Document.Symbol symbol = null;
+
+        if(word.qualifier() == null){
+            Document.Symbol clazz = enclosing(entry, word.line(), Document.Kind.CLASS);
+
+            if(clazz != null)
+                symbol = find(entry, clazz.name(), word.name());
+
+            if(symbol == null)
+                symbol = find(entry, null, word.name());
+
+            target = entry;
+
+            if(symbol != null && symbol.kind() == Document.Kind.USE){
+                Entry used = uses(entry).get(symbol.name());
+
+                if(used != null){
+                    Document.Symbol usedClass = find(used, null, lastName(symbol.type()));
+
+                    target = used;
+                    symbol = usedClass != null ? usedClass : new Document.Symbol(symbol.name(), null, Document.Kind.USE, null, 0, 0, null);
+                }
+            }
+        }else{
+            Target qualifier = target(entry, word.line(), word.qualifier());
+
+            if(qualifier != null){
+                target = qualifier.entry();
+                symbol = find(target, qualifier.owner(), word.name());
+            }
+        }
+
+        if(symbol == null){
+            send(json.nullValue().endObject());
+            return;
+        }
+
+        location(json, target, symbol.start(), symbol.name());
+        send(json.endObject());
+    }
+
+    private void completion(Object id, HashMap<String, Object> textDocument, HashMap<String, Object> position) throws IOException{
+        JsonWriter json = response(id).beginArray();
+        Entry entry = open.get(normalize((String) textDocument.get("uri")));
+        Word word = entry == null ? null : word(entry, position, true);
+
+        if(word != null){
+            LinkedHashMap<String, Item> items = new LinkedHashMap<>();
+
+            if(word.qualifier() != null){
+                Target target = target(entry, word.line(), word.qualifier());
+
+                if(target != null)
+                    addMembers(items, target.entry(), target.owner());
+            }else{
+                Document.Symbol method = enclosing(entry, word.line(), Document.Kind.METHOD);
+                Document.Symbol clazz = enclosing(entry, word.line(), Document.Kind.CLASS);
+
+                if(method != null){
+                    HashMap<String, String> variables = variables(entry, method, word.line());
+
+                    for(String name:variables.keySet())
+                        items.putIfAbsent(name, new Item(6, variables.get(name)));
+                }
+
+                if(clazz != null)
+                    addMembers(items, entry, clazz.name());
+
+                for(Document.Symbol symbol:entry.document.symbols())
+                    if(symbol.owner() == null)
+                        items.putIfAbsent(symbol.name(), new Item(kind(symbol.kind()), symbol.type()));
+
+                for(String keyword:KEYWORDS)
+                    items.putIfAbsent(keyword, new Item(14, null));
+            }
+
+            for(String label:items.keySet()){
+                if(!label.startsWith(word.name()))
+                    continue;
+
+                json.beginObject().name("label", label).name("kind", items.get(label).kind());
+
+                if(items.get(label).detail() != null)
+                    json.name("detail", items.get(label).detail());
+
+                json.endObject();
+            }
+        }
+
+        send(json.endArray().endObject());
+    }
+
+    private void addMembers(LinkedHashMap<String, Item> items, Entry entry, String owner){
+        for(Document.Symbol symbol:entry.document.symbols())
+            if(owner == null ? symbol.owner() == null && symbol.kind() != Document.Kind.USE : owner.equals(symbol.owner()))
+                items.putIfAbsent(symbol.name(), new Item(kind(symbol.kind()), symbol.type()));
+    }
+
+    private static int kind(Document.Kind kind){
+        return switch (kind){
+            case CLASS  -> 7;
+            case METHOD -> 2;
+            case FIELD  -> 5;
+            case USE    -> 9;
+        };
+    }
+
+    private void publishDiagnostics(Entry entry) throws IOException{
+        JsonWriter json = notification("textDocument/publishDiagnostics").beginObject().name("uri", entry.uri).name("diagnostics").beginArray();
+        Source source = entry.document.source();
+        String error = entry.document.getError();
+
+        if(error != null){
+            int index = error.indexOf(" in: ");
+            diagnostic(json, source, errorLine(source, error), 1, index == -1 ? error : error.substring(0, index));
+        }
+
+        HashMap<String, Entry> uses = uses(entry);
+
+        for(Document.Symbol symbol:entry.document.symbols())
+            if(symbol.kind() == Document.Kind.USE && uses.get(symbol.name()) == null && !isClass(symbol.type()))
+                diagnostic(json, source, symbol.start(), 2, "Unable to resolve " + symbol.type());
+
+        send(json.endArray().endObject().endObject());
+    }
+
+    private static void diagnostic(JsonWriter json, Source source, int line, int severity, String message){
+        json.beginObject().name("range");
+        range(json, line, 0, line, line < source.lines() ? source.lineEnd(line) - source.lineStart(line) : 0);
+        json.name("severity", severity).name("source", "xjln").name("message", message).endObject();
+    }
+
+    /**
+     * @return the line of an error, errors of the Parser end with the number of the line, lexer errors end with the line
+     */
+    private static int errorLine(Source source, String error){
+        int index = error.lastIndexOf(" :");
+
+        if(index != -1){
+            try{
+                return Math.max(0, Math.min(Integer.parseInt(error.substring(index + 2)) - 1, source.lines() - 1));
+            }catch (NumberFormatException ignored){}
+        }
+
+        index = error.indexOf(" in: ");
+
+        if(index != -1){
+            String text = error.substring(index + 5);
+
+            for(int line = 0;line < source.lines();line++)
+                if(source.text().startsWith(text, source.lineStart(line)) && source.lineEnd(line) - source.lineStart(line) == text.length())
+                    return line;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return the Files of the workspace used by the uses of the given File, uses of other classes are missing
+     */
+    private HashMap<String, Entry> uses(Entry entry){
+        if(entry.uses != null)
+            return entry.uses;
+
+        entry.uses = new HashMap<>();
+
+        for(Document.Symbol symbol:entry.document.symbols()){
+            if(symbol.kind() != Document.Kind.USE)
+                continue;
+
+            String uri = EmissionScheduler.resolve(symbol.type(), modules);
+            Entry used = uri == null ? null : entry(uri);
+
+            if(used != null)
+                entry.uses.put(symbol.name(), used);
+        }
+
+        return entry.uses;
+    }
+
+    private void invalidateUses(){
+        for(Entry entry:open.values())
+            entry.uses = null;
+
+        for(Entry entry:closed.values())
+            entry.uses = null;
+    }
+
+    /**
+     * @return the open File or the parsed File of the workspace with the given uri, null if it could not be read
+     */
+    private Entry entry(String uri){
+        if(open.containsKey(uri))
+            return open.get(uri);
+
+        Entry entry = closed.get(uri);
+
+        if(entry == null){
+            try{
+                String path = pathOf(uri);
+                entry = new Entry(uri, path, new Document(path, Source.read(new File(URI.create(uri))).text()));
+                closed.put(uri, entry);
+            }catch (IOException | IllegalArgumentException e){
+                return null;
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return the class or the top-level declarations referenced by the given name at the given line,
+     *         the name is a class of the File, a use or a variable, parameter or field whose type is one of them
+     */
+    private Target target(Entry entry, int line, String name){
+        Document.Symbol clazz = enclosing(entry, line, Document.Kind.CLASS);
+
+        if(name.equals("this"))
+            return clazz == null ? null : new Target(entry, clazz.name());
+
+        Target target = type(entry, name);
+
+        if(target != null)
+            return target;
+
+        String type = null;
+        Document.Symbol method = enclosing(entry, line, Document.Kind.METHOD);
+
+        if(method != null)
+            type = variables(entry, method, line).get(name);
+
+        if(type == null && clazz != null){
+            Document.Symbol field = find(entry, clazz.name(), name);
+            type = field != null && field.kind() == Document.Kind.FIELD ? field.type() : null;
+        }
+
+        if(type == null){
+            Document.Symbol field = find(entry, null, name);
+            type = field != null && field.kind() == Document.Kind.FIELD ? field.type() : null;
+        }
+
+        return type == null ? null : type(entry, type);
+    }
+
+    /**
+     * @return the class declared or used by the given File with the given name
+     */
+    private Target type(Entry entry, String name){
+        Document.Symbol symbol = find(entry, null, name);
+
+        if(symbol == null)
+            return null;
+
+        if(symbol.kind() == Document.Kind.CLASS)
+            return new Target(entry, name);
+
+        if(symbol.kind() != Document.Kind.USE)
+            return null;
+
+        Entry used = uses(entry).get(name);
+
+        if(used == null)
+            return null;
+
+        Document.Symbol clazz = find(used, null, lastName(symbol.type()));
+
+        return new Target(used, clazz != null && clazz.kind() == Document.Kind.CLASS ? clazz.name() : null);
+    }
+
+    /**
+     * @return the variables and parameters visible at the given line of a method body mapped to their types
+     */
+    private HashMap<String, String> variables(Entry entry, Document.Symbol method, int line){
+        HashMap<String, String> variables = entry.scopes.get(line);
+
+        if(variables != null)
+            return variables;
+
+        variables = new HashMap<>();
+
+        if(method.method() != null){
+            TokenHandler code = method.method().code;
+            int before = 0;
+
+            if(code != null){
+                TokenStream stream = code.stream();
+                int codeLine = stream.lineOf(code.end()) - (method.end() - 1 - line);
+                before = codeLine < 0 ? code.start() : codeLine < stream.lines() ? stream.lineStart(codeLine) : code.end();
+            }
+
+            variables = syntacticParser.parseScope(method.method(), method.owner(), before);
+        }
+
+        entry.scopes.put(line, variables);
+        return variables;
+    }
+
+    /**
+     * @return the declaration of the given kind containing the given line
+     */
+    private static Document.Symbol enclosing(Entry entry, int line, Document.Kind kind){
+        for(Document.Symbol symbol:entry.document.symbols())
+            if(symbol.kind() == kind && symbol.start() <= line && line < symbol.end())
+                return symbol;
+
+        return null;
+    }
+
+    /**
+     * @param owner the class declaring the name or null for top-level declarations
+     */
+    private static Document.Symbol find(Entry entry, String owner, String name){
+        for(Document.Symbol symbol:entry.document.symbols())
+            if(symbol.name().equals(name) && (owner == null ? symbol.owner() == null : owner.equals(symbol.owner())))
+                return symbol;
+
+        return null;
+    }
+
+    /**
+     * @param prefix if only the part of the identifier before the position should be returned
+     * @return the identifier at the given position or null if there is none
+     */
+    private static Word word(Entry entry, HashMap<String, Object> position, boolean prefix){
+        Source source = entry.document.source();
+        int line = number(position, "line");
+
+        String text = line < source.lines() ? source.text().substring(source.lineStart(line), source.lineEnd(line)) : "";
+        int character = Math.min(number(position, "character"), text.length());
+
+        int start = character;
+        while(start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1)))
+            start--;
+
+        int end = character;
+        while(!prefix && end < text.length() && Character.isJavaIdentifierPart(text.charAt(end)))
+            end++;
+
+        if(!prefix && start == end)
+            return null;
+
+        String qualifier = null;
+
+        if(start > 0 && (text.charAt(start - 1) == '.' || text.charAt(start - 1) == ':')){
+            int qualifierStart = start - 1;
+
+            while(qualifierStart > 0 && Character.isJavaIdentifierPart(text.charAt(qualifierStart - 1)))
+                qualifierStart--;
+
+            if(qualifierStart < start - 1)
+                qualifier = text.substring(qualifierStart, start - 1);
+        }
+
+        return new Word(text.substring(start, end), qualifier, line);
+    }
+
+    private static void location(JsonWriter json, Entry entry, int line, String name){
+        Source source = entry.document.source();
+        int character = 0;
+
+        if(line < source.lines()){
+            String text = source.text().substring(source.lineStart(line), source.lineEnd(line));
+            character = Math.max(text.indexOf(name), 0);
+        }
+
+        json.beginObject().name("uri", entry.uri).name("range");
+        range(json, line, character, line, character + name.length());
+        json.endObject();
+    }
+
+    private static void range(JsonWriter json, int startLine, int startCharacter, int endLine, int endCharacter){
+        json.beginObject()
+                .name("start").beginObject().name("line", startLine).name("character", startCharacter).endObject()
+                .name("end").beginObject().name("line", endLine).name("character", endCharacter).endObject()
+                .endObject();
+    }
+
+    /**
+     * @return the offset of the given position, positions after the end of a line are moved to its end
+     */
+    private static int offset(Source source, HashMap<String, Object> position){
+        int line = number(position, "line");
+
+        if(line >= source.lines())
+            return source.text().length();
+
+        return Math.min(source.lineStart(line) + number(position, "character"), source.lineEnd(line));
+    }
+
+    private boolean isClass(String name){
+        try{
+            Class.forName(name, false, Compiler.class.getClassLoader());
+            return true;
+        }catch (ClassNotFoundException | LinkageError e){
+            return false;
+        }
+    }
+
+    private static String lastName(String name){
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private boolean isInWorkspace(String uri){
+        try{
+            Path file = Paths.get(URI.create(uri));
+
+            for(Path root:roots)
+                if(file.startsWith(root))
+                    return true;
+        }catch (IllegalArgumentException | FileSystemNotFoundException ignored){}
+
+        return false;
+    }
+
+    /**
+     * @return the path of the File like the Compiler names it, relative to the source Folder it is in
+     */
+    private String pathOf(String uri){
+        try{
+            return pathOf(Paths.get(URI.create(uri)));
+        }catch (IllegalArgumentException | FileSystemNotFoundException e){
+            String name = uri.substring(uri.lastIndexOf('/') + 1);
+            return name.endsWith(".xjln") ? name.substring(0, name.length() - 5) : name;
+        }
+    }
+
+    private String pathOf(Path file){
+        file = file.toAbsolutePath().normalize();
+
+        for(int i = 0;i < roots.length;i++)
+            if(file.startsWith(roots[i]))
+                return Compiler.pathOf(Paths.get(srcFolders[i]).resolve(roots[i].relativize(file)).toFile());
+
+        return Compiler.pathOf(file.getFileName().toFile());
+    }
+
+    /**
+     * @return the uri in the form used for Files of the workspace, editors may encode uris differently
+     */
+    private static String normalize(String uri){
+        try{
+            return Paths.get(URI.create(uri)).toUri().toString();
+        }catch (IllegalArgumentException | FileSystemNotFoundException e){
+            return uri;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Object> object(HashMap<String, Object> object, String name){
+        if(!(object.get(name) instanceof HashMap<?, ?> value))
+            throw new RuntimeException("Expected object " + name);
+
+        return (HashMap<String, Object>) value;
+    }
+
+    private static int number(HashMap<String, Object> object, String name){
+        if(!(object.get(name) instanceof Long value))
+            throw new RuntimeException("Expected number " + name);
+
+        return (int) Math.max(0, Math.min(value, Integer.MAX_VALUE));
+    }
+
+    private JsonWriter response(Object id){
+        JsonWriter json = new JsonWriter().beginObject().name("jsonrpc", "2.0").name("id");
+
+        if(id instanceof Long l)
+            json.value(l);
+        else if(id instanceof String s)
+            json.value(s);
+        else
+            json.nullValue();
+
+        return json.name("result");
+    }
+
+    private JsonWriter error(Object id, int code, String message){
+        JsonWriter json = new JsonWriter().beginObject().name("jsonrpc", "2.0").name("id");
+
+        if(id instanceof Long l)
+            json.value(l);
+        else if(id instanceof String s)
+            json.value(s);
+        else
+            json.nullValue();
+
+        return json.name("error").beginObject().name("code", code).name("message", message).endObject().endObject();
+    }
+
+    private static JsonWriter notification(String method){
+        return new JsonWriter().beginObject().name("jsonrpc", "2.0").name("method", method).name("params");
+    }
+
+    private void send(JsonWriter json) throws IOException{
+        byte[] content = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        out.write(("Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+        out.flush();
+    }
+
+    /**
+     * @return the content of the next message or null if the stream is closed
+     */
+    private static String read(InputStream in) throws IOException{
+        int length = -1;
+
+        while(true){
+            String header = readLine(in);
+
+            if(header == null)
+                return null;
+
+            if(header.isEmpty()){
+                if(length != -1)
+                    break;
+
+                continue;
+            }
+
+            if(header.regionMatches(true, 0, "Content-Length:", 0, 15)){
+                try{
+                    length = Integer.parseInt(header.substring(15).trim());
+                }catch (NumberFormatException e){
+                    throw new IOException("Invalid header " + header);
+                }
+            }
+        }
+
+        byte[] content = in.readNBytes(length);
+
+        if(content.length < length)
+            return null;
+
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws IOException{
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+
+        while((b = in.read()) != '\n'){
+            if(b == -1)
+                return null;
+
+            if(b != '\r')
+                line.write(b);
+        }
+
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
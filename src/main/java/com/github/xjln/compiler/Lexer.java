@@ -1,134 +1,382 @@
 package com.github.xjln.compiler;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * splits source code into tokens, characters are classified with a lookup table
+ * and tokens are written into a {@link TokenStream}, together with the start of every line
+ */
 final class Lexer {
 
-    public static TokenHandler lex(String line){
-        List<Token> tokens = new ArrayList<>();
-        char[] chars = line.toCharArray();
-        StringBuilder value;
+    private static final byte OTHER      = 0;
+    private static final byte LETTER     = 1;
+    private static final byte DIGIT      = 2;
+    private static final byte OPERATOR   = 3;
+    private static final byte SPACE      = 4;
+    private static final byte QUOTE      = 5;
+    private static final byte APOSTROPHE = 6;
+    private static final byte HASH       = 7;
 
-        for(int i = 0; i < chars.length; i++){
+    private static final byte[] CLASSES = new byte[128];
+    private static final String[] SIMPLE = new String[128];
 
-            if(chars[i] == '#'){
-                i++;
+    private static final String[] KEYWORDS = {"use", "from", "as", "def", "class", "interface", "type", "data", "const",
+            "static", "final", "abstract", "synchronised", "public", "private", "protected", "end", "if", "else", "while",
+            "for", "return", "true", "false", "var", "int", "double", "long", "float", "boolean", "char", "byte", "short",
+            "void", "init", "main", "this"};
 
-                while (i < chars.length && chars[i] != '#')
-                    i++;
-            }else if(Character.isDigit(chars[i]) || (chars[i] == '-' && chars.length >= i + 1 && Character.isDigit(chars[i+1]))){
+    static {
+        for(char c = 'a';c <= 'z';c++)
+            CLASSES[c] = LETTER;
 
-                value = new StringBuilder();
-                value.append(chars[i]);
+        for(char c = 'A';c <= 'Z';c++)
+            CLASSES[c] = LETTER;
 
-                Token.Type type;
+        for(char c = '0';c <= '9';c++)
+            CLASSES[c] = DIGIT;
 
-                while(i + 1 < chars.length && Character.isDigit(chars[i+1])){
-                    i++;
-                    value.append(chars[i]);
-                }
+        for(char c:"-+*/!=<>%&|^".toCharArray())
+            CLASSES[c] = OPERATOR;
 
-                if(i + 1 < chars.length && chars[i+1] == '.'){
-                    i++;
-                    value.append(chars[i]);
-                    while(i + 1 < chars.length && Character.isDigit(chars[i+1])){
-                        i++;
-                        value.append(chars[i]);
-                    }
+        for(char c:"\n\r\t ".toCharArray())
+            CLASSES[c] = SPACE;
 
-                    if(i + 1 < chars.length && chars[i+1] == 'f') {
-                        type = Token.Type.FLOAT;
-                        value.append('f');
-                        i++;
-                    }else{
-                        type = Token.Type.DOUBLE;
+        CLASSES['"'] = QUOTE;
+        CLASSES['\''] = APOSTROPHE;
+        CLASSES['#'] = HASH;
 
-                        if(i + 1 < chars.length && chars[i+1] == 'd')
-                            i++;
-                    }
-                }else{
-                    if(i + 1 < chars.length && chars[i+1] == 'l') {
-                        type = Token.Type.LONG;
-                        value.append('l');
-                        i++;
-                    }else if(i + 1 < chars.length && chars[i+1] == 's') {
-                        type = Token.Type.SHORT;
-                        value.append('s');
-                        i++;
-                    }else{
-                        type = Token.Type.INTEGER;
+        for(char c = 0;c < 128;c++)
+            SIMPLE[c] = String.valueOf(c).intern();
+    }
 
-                        if(i + 1 < chars.length && chars[i+1] == 'i')
-                            i++;
-                    }
+    /**
+     * interns texts of tokens without creating a String for texts that have already been seen,
+     * every thread uses its own table, which is cleared when it grows too large
+     */
+    private static final class Interner{
+        private static final int MAX_SIZE = 1 << 15;
+
+        private String[] table = new String[256];
+        private int size = 0;
+
+        Interner(){
+            for(String keyword:KEYWORDS)
+                intern(keyword, 0, keyword.length(), keyword.hashCode());
+        }
+
+        String intern(String source, int offset, int length, int hash){
+            int mask = table.length - 1;
+            int i = mix(hash) & mask;
+
+            for(String s = table[i];s != null;s = table[i = (i + 1) & mask])
+                if(s.length() == length && s.regionMatches(0, source, offset, length))
+                    return s;
+
+            String s = source.substring(offset, offset + length);
+
+            if(size >= MAX_SIZE){
+                table = new String[table.length];
+                size = 0;
+                return intern(source, offset, length, hash);
+            }
+
+            table[i] = s;
+
+            if(++size * 2 > table.length)
+                grow();
+
+            return s;
+        }
+
+        private void grow(){
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+
+            for(String s:old){
+                if(s != null){
+                    int i = mix(s.hashCode()) & mask;
+
+                    while(table[i] != null)
+                        i = (i + 1) & mask;
+
+                    table[i] = s;
                 }
+            }
+        }
+
+        private static int mix(int hash){
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private static final ThreadLocal<Interner> INTERNER = ThreadLocal.withInitial(Interner::new);
+
+    public static TokenHandler lex(String line){
+        TokenStream stream = tokenize(line);
+        return new TokenHandler(stream, 0, stream.size());
+    }
+
+    static TokenStream tokenize(String src){
+        return tokenize(src, 0, src.length());
+    }
+
+    /**
+     * lexes sources of at least two chunks in parallel, the source is split into chunks of about the given size
+     * at line boundaries and the tokens of the chunks are joined in order. Comments and strings end with their line,
+     * so every chunk is lexed exactly like it would be as part of the whole source
+     * @param chunkSize the size of the chunks, 0 to lex the source in the current thread
+     */
+    static TokenStream tokenize(String src, int chunkSize){
+        int parallelism = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+
+        if(chunkSize <= 0 || src.length() / 2 < chunkSize || parallelism < 2)
+            return tokenize(src);
+
+        ArrayList<Chunk> chunks = new ArrayList<>();
+
+        for(int start = 0;start < src.length();){
+            int end = chunkEnd(src, start + chunkSize);
+            chunks.add(new Chunk(src, start, end));
+            start = end;
+        }
+
+        ForkJoinTask.invokeAll(chunks);
+
+        for(Chunk chunk:chunks)
+            if(chunk.error != null)
+                throw chunk.error;
+
+        int size = 0;
+        for(Chunk chunk:chunks)
+            size += chunk.stream.size();
+
+        TokenStream stream = new TokenStream(src, size);
+
+        for(Chunk chunk:chunks)
+            stream.append(chunk.stream);
 
-                tokens.add(new Token(value.toString(), type));
+        return stream;
+    }
+
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String src;
+        private final int from, to;
+        private transient TokenStream stream;
+        private RuntimeException error;
+
+        Chunk(String src, int from, int to){
+            this.src = src;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            try{
+                stream = tokenize(src, from, to);
+            }catch (RuntimeException e){
+                error = e;
+            }
+        }
+    }
 
-            }else if(Character.isLetter(chars[i])){
+    /**
+     * @return the index after the first line break at or after the given index
+     */
+    private static int chunkEnd(String src, int i){
+        while(i < src.length()){
+            char c = src.charAt(i++);
 
-                value = new StringBuilder();
-                value.append(chars[i]);
+            if(c == '\n' || (c == '\r' && (i == src.length() || src.charAt(i) != '\n')))
+                return i;
+        }
 
-                while(i + 1 < chars.length && (Character.isDigit(chars[i+1]) || Character.isLetter(chars[i+1]))){
+        return src.length();
+    }
+
+    /**
+     * lexes the characters from from to to, which have to start and end at a line boundary,
+     * the offsets of the tokens are relative to the whole source
+     */
+    private static TokenStream tokenize(String src, int from, int to){
+        TokenStream stream = new TokenStream(src, (to - from) / 3);
+        Interner interner = INTERNER.get();
+        int length = src.length();
+        int i = from;
+
+        while(i < to){
+            char c = src.charAt(i);
+
+            switch (classOf(c)){
+                case SPACE -> {
                     i++;
-                    value.append(chars[i]);
+
+                    if((c == '\n' || (c == '\r' && (i == length || src.charAt(i) != '\n'))) && i < length)
+                        stream.newLine();
                 }
+                case HASH -> {
+                    int end = indexOf(src, '#', i + 1);
+                    i = end == -1 ? lineEnd(src, i) : end + 1;
+                }
+                case DIGIT -> i = lexNumber(src, i, stream);
+                case LETTER -> {
+                    int start = i;
+                    int hash = c;
+                    i++;
 
-                tokens.add(new Token(value.toString(), Token.Type.IDENTIFIER));
+                    while(i < length){
+                        char next = src.charAt(i);
+                        byte type = classOf(next);
 
-            }else if(isOperator(chars[i])){
+                        if(type != LETTER && type != DIGIT)
+                            break;
 
-                value = new StringBuilder();
-                value.append(chars[i]);
+                        hash = 31 * hash + next;
+                        i++;
+                    }
 
-                while(i + 1 < chars.length && isOperator(chars[i+1])){
-                    i++;
-                    value.append(chars[i]);
+                    stream.add(Token.Type.IDENTIFIER, start, i - start, interner.intern(src, start, i - start, hash));
                 }
+                case OPERATOR -> {
+                    if(c == '-' && i + 1 < length && classOf(src.charAt(i + 1)) == DIGIT){
+                        i = lexNumber(src, i, stream);
+                        continue;
+                    }
 
-                tokens.add(new Token(value.toString(), Token.Type.OPERATOR));
+                    int start = i;
+                    int hash = c;
+                    i++;
 
-            }else if(chars[i] == '"'){
+                    while(i < length && classOf(src.charAt(i)) == OPERATOR){
+                        hash = 31 * hash + src.charAt(i);
+                        i++;
+                    }
+
+                    stream.add(Token.Type.OPERATOR, start, i - start, i - start == 1 ? SIMPLE[c] : interner.intern(src, start, i - start, hash));
+                }
+                case QUOTE -> {
+                    int end = indexOf(src, '"', i + 1);
 
-                value = new StringBuilder();
-                value.append(chars[i]);
+                    if(end == -1)
+                        throw new RuntimeException("String is not closed in: " + src.substring(lineStart(src, i), lineEnd(src, i)));
 
-                while(chars[i+1] != '"'){
+                    stream.add(Token.Type.STRING, i, end + 1 - i, null);
+                    i = end + 1;
+                }
+                case APOSTROPHE -> {
+                    if(i + 2 < length && src.charAt(i + 2) == '\'' && !isLineBreak(src.charAt(i + 1))){
+                        stream.add(Token.Type.CHAR, i, 3, null);
+                        i += 3;
+                    }else{
+                        stream.add(Token.Type.SIMPLE, i, 1, SIMPLE['\'']);
+                        i++;
+                    }
+                }
+                default -> {
+                    stream.add(Token.Type.SIMPLE, i, 1, c < 128 ? SIMPLE[c] : String.valueOf(c));
                     i++;
-                    value.append(chars[i]);
                 }
+            }
+        }
 
-                i++;
+        return stream;
+    }
 
-                tokens.add(new Token(value.append("\"").toString(), Token.Type.STRING));
+    /**
+     * lexes an optionally negative number with an optional fraction and type suffix,
+     * the suffixes d and i are not part of the token
+     * @return the index after the number
+     */
+    private static int lexNumber(String src, int i, TokenStream stream){
+        int length = src.length();
+        int start = i;
 
-            }else if(chars[i] == '\''){
+        if(src.charAt(i) == '-')
+            i++;
 
-                if (chars.length >= i + 2 && chars[i + 2] == '\''){
-                    tokens.add(new Token("'" + chars[i + 1] + "'", Token.Type.CHAR));
+        while(i < length && classOf(src.charAt(i)) == DIGIT)
+            i++;
 
-                    i += 3;
-                }else{
-                    tokens.add(new Token("'", Token.Type.SIMPLE));
+        if(i < length && src.charAt(i) == '.'){
+            i++;
 
+            while(i < length && classOf(src.charAt(i)) == DIGIT)
+                i++;
+
+            if(i < length && src.charAt(i) == 'f'){
+                i++;
+                stream.add(Token.Type.FLOAT, start, i - start, null);
+            }else{
+                stream.add(Token.Type.DOUBLE, start, i - start, null);
+
+                if(i < length && src.charAt(i) == 'd')
                     i++;
-                }
+            }
+        }else if(i < length && src.charAt(i) == 'l'){
+            i++;
+            stream.add(Token.Type.LONG, start, i - start, null);
+        }else if(i < length && src.charAt(i) == 's'){
+            i++;
+            stream.add(Token.Type.SHORT, start, i - start, null);
+        }else{
+            stream.add(Token.Type.INTEGER, start, i - start, null);
+
+            if(i < length && src.charAt(i) == 'i')
+                i++;
+        }
 
-            }else if(!Set.of('\n', '\r', '\t', ' ').contains(chars[i])){
+        return i;
+    }
 
-                tokens.add(new Token(String.valueOf(chars[i]), Token.Type.SIMPLE));
+    /**
+     * @return the index of the given character in the line of from or -1 if the line does not contain it
+     */
+    private static int indexOf(String src, char c, int from){
+        for(int i = from;i < src.length();i++){
+            char next = src.charAt(i);
 
-            }
+            if(next == c)
+                return i;
 
+            if(isLineBreak(next))
+                return -1;
         }
 
-        return new TokenHandler(tokens);
+        return -1;
     }
 
-    private static boolean isOperator(char c){
-        return String.valueOf(c).matches("[-+*/!=<>%&|^]");
+    private static int lineStart(String src, int i){
+        while(i > 0 && !isLineBreak(src.charAt(i - 1)))
+            i--;
+
+        return i;
+    }
+
+    private static int lineEnd(String src, int i){
+        while(i < src.length() && !isLineBreak(src.charAt(i)))
+            i++;
+
+        return i;
+    }
+
+    private static boolean isLineBreak(char c){
+        return c == '\n' || c == '\r';
+    }
+
+    private static byte classOf(char c){
+        if(c < 128)
+            return CLASSES[c];
+
+        if(Character.isLetter(c))
+            return LETTER;
+
+        return Character.isDigit(c) ? DIGIT : OTHER;
     }
 }
@@ -0,0 +1,27 @@
+package com.github.xjln.compiler;
+
+import java.util.Map;
+
+/**
+ * defines classes from bytecode held in memory, every compilation gets its own loader
+ * so classes of different compilations can not see each other
+ */
+final class MemoryClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classes;
+
+    MemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent){
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException{
+        byte[] bytes = classes.get(name);
+
+        if(bytes == null)
+            throw new ClassNotFoundException(name);
+
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
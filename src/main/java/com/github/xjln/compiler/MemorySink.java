@@ -0,0 +1,25 @@
+package com.github.xjln.compiler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps the bytecode of every class in memory
+ */
+final class MemorySink implements OutputSink {
+
+    private final ConcurrentHashMap<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(String name, byte[] bytes){
+        classes.put(name.replace('/', '.').replace('\\', '.'), bytes);
+    }
+
+    /**
+     * @return the bytecode of all written classes mapped by their binary name
+     */
+    Map<String, byte[]> getClasses(){
+        return new TreeMap<>(classes);
+    }
+}
@@ -0,0 +1,388 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.utility.JsonWriter;
+import jdk.jfr.EventType;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * records wall time, cpu time and allocated bytes of every compiler phase per File,
+ * as well as the number of tokens, AST nodes, the size of the emitted bytecode, the time of every AST optimization pass
+ * and the hits of every peephole rule.
+ * Phases are nested, the time of {@link Phase#PARSE} includes {@link Phase#LEX} and
+ * the time of {@link Phase#EMIT} includes {@link Phase#AST}, {@link Phase#OPTIMIZE} and {@link Phase#WRITE}.
+ * Every phase is also reported as a JFR event if the event com.github.xjln.Phase is enabled
+ */
+public final class Metrics {
+
+    public enum Phase{
+        DISCOVERY, LEX, PARSE, AST, OPTIMIZE, EMIT, WRITE
+    }
+
+    /**
+     * measures one execution of a phase on the current thread
+     */
+    public interface Timer{
+        void stop();
+    }
+
+    private static final Timer NONE = () -> {};
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final class FileMetrics{
+        final long[] wall = new long[Phase.values().length];
+        final long[] cpu = new long[Phase.values().length];
+        final long[] allocated = new long[Phase.values().length];
+        final long[] count = new long[Phase.values().length];
+        final long[] passWall = new long[AstOptimizer.Pass.values().length];
+        final long[] passCount = new long[AstOptimizer.Pass.values().length];
+        final long[] peephole = new long[PeepholeOptimizer.Rule.values().length];
+        long tokens, astNodes, classes, bytecode;
+    }
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, FileMetrics> files = new ConcurrentHashMap<>();
+
+    Metrics(boolean enabled){
+        this.enabled = enabled;
+
+        if(enabled){
+            if(THREADS.isThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled())
+                THREADS.setThreadCpuTimeEnabled(true);
+
+            if(THREADS.isThreadAllocatedMemorySupported() && !THREADS.isThreadAllocatedMemoryEnabled())
+                THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * starts measuring the given phase for the given File, the returned Timer has to be stopped by the same thread
+     */
+    Timer start(Phase phase, String file){
+        boolean event = EVENT_TYPE.isEnabled();
+
+        if(!enabled && !event)
+            return NONE;
+
+        PhaseEvent phaseEvent = event ? new PhaseEvent() : null;
+        long wall = System.nanoTime();
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+
+        if(phaseEvent != null)
+            phaseEvent.begin();
+
+        return () -> {
+            long wallTime = System.nanoTime() - wall;
+            long cpuTime = cpuTime() - cpu;
+            long allocatedBytes = allocatedBytes() - allocated;
+
+            if(enabled){
+                FileMetrics metrics = get(file);
+
+                synchronized (metrics){
+                    metrics.wall[phase.ordinal()] += wallTime;
+                    metrics.cpu[phase.ordinal()] += cpuTime;
+                    metrics.allocated[phase.ordinal()] += allocatedBytes;
+                    metrics.count[phase.ordinal()]++;
+                }
+            }
+
+            if(phaseEvent != null && phaseEvent.shouldCommit()){
+                phaseEvent.phase = phase.name();
+                phaseEvent.file = file;
+                phaseEvent.cpuTime = cpuTime;
+                phaseEvent.allocated = allocatedBytes;
+                phaseEvent.commit();
+            }
+        };
+    }
+
+    void addTokens(String file, long tokens){
+        if(enabled){
+            FileMetrics metrics = get(file);
+
+            synchronized (metrics){
+                metrics.tokens += tokens;
+            }
+        }
+    }
+
+    void addAst(String file, AST[] ast){
+        if(enabled){
+            long nodes = 0;
+
+            for(AST node:ast)
+                nodes += countNodes(node);
+
+            FileMetrics metrics = get(file);
+
+            synchronized (metrics){
+                metrics.astNodes += nodes;
+            }
+        }
+    }
+
+    void addClass(String file, int bytes){
+        if(enabled){
+            FileMetrics metrics = get(file);
+
+            synchronized (metrics){
+                metrics.classes++;
+                metrics.bytecode += bytes;
+            }
+        }
+    }
+
+    void addPassTime(String file, AstOptimizer.Pass pass, long nanos){
+        if(enabled){
+            FileMetrics metrics = get(file);
+
+            synchronized (metrics){
+                metrics.passWall[pass.ordinal()] += nanos;
+                metrics.passCount[pass.ordinal()]++;
+            }
+        }
+    }
+
+    void addPeepholeHits(String file, long[] hits){
+        if(enabled){
+            FileMetrics metrics = get(file);
+
+            synchronized (metrics){
+                for(int i = 0;i < hits.length;i++)
+                    metrics.peephole[i] += hits[i];
+            }
+        }
+    }
+
+    /**
+     * @return the summed wall time of every AST optimization pass over all Files in nanoseconds
+     * mapped by the lowercase name of the pass
+     */
+    public Map<String, Long> getPassTimes(){
+        TreeMap<String, Long> times = new TreeMap<>();
+
+        for(AstOptimizer.Pass pass:AstOptimizer.Pass.values())
+            times.put(pass.name().toLowerCase(), 0L);
+
+        for(FileMetrics metrics:files.values())
+            synchronized (metrics){
+                for(AstOptimizer.Pass pass:AstOptimizer.Pass.values())
+                    times.merge(pass.name().toLowerCase(), metrics.passWall[pass.ordinal()], Long::sum);
+            }
+
+        return times;
+    }
+
+    /**
+     * @return the summed hits of every peephole rule over all Files mapped by the lowercase name of the rule
+     */
+    public Map<String, Long> getPeepholeHits(){
+        TreeMap<String, Long> hits = new TreeMap<>();
+
+        for(PeepholeOptimizer.Rule rule:PeepholeOptimizer.Rule.values())
+            hits.put(rule.name().toLowerCase(), 0L);
+
+        for(FileMetrics metrics:files.values())
+            synchronized (metrics){
+                for(PeepholeOptimizer.Rule rule:PeepholeOptimizer.Rule.values())
+                    hits.merge(rule.name().toLowerCase(), metrics.peephole[rule.ordinal()], Long::sum);
+            }
+
+        return hits;
+    }
+
+    /**
+     * @return the summed wall time of the given phase over all Files in nanoseconds
+     */
+    public long getWallTime(Phase phase){
+        long sum = 0;
+
+        for(FileMetrics metrics:files.values())
+            synchronized (metrics){
+                sum += metrics.wall[phase.ordinal()];
+            }
+
+        return sum;
+    }
+
+    /**
+     * @return the summed cpu time of the given phase over all Files in nanoseconds
+     */
+    public long getCpuTime(Phase phase){
+        long sum = 0;
+
+        for(FileMetrics metrics:files.values())
+            synchronized (metrics){
+                sum += metrics.cpu[phase.ordinal()];
+            }
+
+        return sum;
+    }
+
+    /**
+     * @return the summed allocated bytes of the given phase over all Files
+     */
+    public long getAllocatedBytes(Phase phase){
+        long sum = 0;
+
+        for(FileMetrics metrics:files.values())
+            synchronized (metrics){
+                sum += metrics.allocated[phase.ordinal()];
+            }
+
+        return sum;
+    }
+
+    /**
+     * @return the report as JSON with the totals of every phase and the metrics of every File
+     */
+    public String toJson(){
+        JsonWriter json = new JsonWriter().beginObject();
+        json.name("version", Compiler.VERSION);
+
+        json.name("phases").beginObject();
+        for(Phase phase:Phase.values()){
+            json.name(phase.name().toLowerCase()).beginObject()
+                    .name("wallNanos", getWallTime(phase))
+                    .name("cpuNanos", getCpuTime(phase))
+                    .name("allocatedBytes", getAllocatedBytes(phase))
+                    .endObject();
+        }
+        json.endObject();
+
+        json.name("passes").beginObject();
+        for(Map.Entry<String, Long> entry:getPassTimes().entrySet())
+            json.name(entry.getKey(), entry.getValue());
+        json.endObject();
+
+        json.name("peephole").beginObject();
+        for(Map.Entry<String, Long> entry:getPeepholeHits().entrySet())
+            json.name(entry.getKey(), entry.getValue());
+        json.endObject();
+
+        json.name("files").beginObject();
+        for(Map.Entry<String, FileMetrics> entry:new TreeMap<>(files).entrySet()){
+            FileMetrics metrics = entry.getValue();
+
+            synchronized (metrics){
+                json.name(entry.getKey()).beginObject()
+                        .name("tokens", metrics.tokens)
+                        .name("astNodes", metrics.astNodes)
+                        .name("classes", metrics.classes)
+                        .name("bytecodeBytes", metrics.bytecode);
+
+                for(Phase phase:Phase.values()){
+                    if(metrics.count[phase.ordinal()] == 0)
+                        continue;
+
+                    json.name(phase.name().toLowerCase()).beginObject()
+                            .name("count", metrics.count[phase.ordinal()])
+                            .name("wallNanos", metrics.wall[phase.ordinal()])
+                            .name("cpuNanos", metrics.cpu[phase.ordinal()])
+                            .name("allocatedBytes", metrics.allocated[phase.ordinal()])
+                            .endObject();
+                }
+
+                for(AstOptimizer.Pass pass:AstOptimizer.Pass.values()){
+                    if(metrics.passCount[pass.ordinal()] == 0)
+                        continue;
+
+                    json.name(pass.name().toLowerCase()).beginObject()
+                            .name("count", metrics.passCount[pass.ordinal()])
+                            .name("wallNanos", metrics.passWall[pass.ordinal()])
+                            .endObject();
+                }
+
+                json.endObject();
+            }
+        }
+        json.endObject();
+
+        return json.endObject().toString();
+    }
+
+    /**
+     * writes the report returned by {@link #toJson()} to the given File
+     * @throws RuntimeException if the File could not be written
+     */
+    public void writeJson(File file) throws RuntimeException{
+        try{
+            Files.writeString(file.toPath(), toJson(), StandardCharsets.UTF_8);
+        }catch (IOException e){
+            throw new RuntimeException("failed to write metrics to " + file.getPath());
+        }
+    }
+
+    private FileMetrics get(String file){
+        return files.computeIfAbsent(file, f -> new FileMetrics());
+    }
+
+    private static long cpuTime(){
+        return THREADS.isThreadCpuTimeEnabled() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes(){
+        return THREADS.isThreadAllocatedMemoryEnabled() ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static long countNodes(AST ast){
+        if(ast == null)
+            return 0;
+
+        long nodes = 1;
+
+        if(ast instanceof AST.Calc calc)
+            nodes += countNodes(calc.value) + countNodes(calc.left) + countNodes(calc.right);
+        else if(ast instanceof AST.Value value)
+            nodes += countNodes(value.call);
+        else if(ast instanceof AST.StaticCall call)
+            nodes += countNodes(call.next) + countArgs(call.argTypes);
+        else if(ast instanceof AST.Call call)
+            nodes += countNodes(call.next) + countArgs(call.argTypes);
+        else if(ast instanceof AST.Return ret)
+            nodes += countNodes(ret.calc);
+        else if(ast instanceof AST.VarAssigment assigment)
+            nodes += countNodes(assigment.calc) + countNodes(assigment.call);
+        else if(ast instanceof AST.While whilee){
+            nodes += countNodes(whilee.condition);
+
+            if(whilee.ast != null)
+                for(AST statement:whilee.ast)
+                    nodes += countNodes(statement);
+        }else if(ast instanceof AST.If iff){
+            nodes += countNodes(iff.condition) + countNodes(iff.elif);
+
+            if(iff.ast != null)
+                for(AST statement:iff.ast)
+                    nodes += countNodes(statement);
+        }
+
+        return nodes;
+    }
+
+    private static long countArgs(AST.Calc[] args){
+        long nodes = 0;
+
+        if(args != null)
+            for(AST.Calc arg:args)
+                nodes += countNodes(arg);
+
+        return nodes;
+    }
+}
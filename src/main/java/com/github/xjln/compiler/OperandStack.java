@@ -1,84 +1,80 @@
 package com.github.xjln.compiler;
 
 import com.github.xjln.lang.XJLNMethod;
-import com.github.xjln.utility.MatchedList;
-import javassist.bytecode.Bytecode;
-import javassist.bytecode.Opcode;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * the local variables and the sizes of the values on the operand stack while a method is compiled,
+ * the slots of the variables are assigned by a {@link SymbolTable} in the same order as by the SyntacticParser
+ */
 final class OperandStack {
 
-    private final MatchedList<String, Integer> stack;
-    private final ArrayList<Integer> scopes = new ArrayList<>();
+    private final SymbolTable locals;
+    private int[] values = new int[16];
+    private int depth;
     private int size;
+    private int maxSize;
 
-    OperandStack(){
-        stack = new MatchedList<>();
-        size = 0;
-
-        push("this", 1);
-    }
-
-    int push(String name, int length){
-        stack.add(name, size);
-        //System.out.println(name + " " + size);
-        size += length;
-        //System.out.println(stack);
-        return size - length;
+    OperandStack(SymbolTable locals){
+        this.locals = locals;
     }
 
     void push(int length){
-        push("&temp", length);
-    }
+        if(depth == values.length)
+            values = Arrays.copyOf(values, depth * 2);
 
-    String pop(){
-        String temp = stack.getKey(stack.size() - 1);
-        int length = stack.getValue(stack.size() - 1);
-        length -= stack.getValue(stack.size() - 2);
-        stack.remove(stack.size() - 1);
-        size -= length;
-        //System.out.println(stack);
-        return temp;
+        values[depth++] = length;
+        size += length;
+        maxSize = Math.max(maxSize, size);
     }
 
-    void clearScope(Bytecode code){
-        while (size > scopes.get(scopes.size() - 1)) {
-            //code.addOpcode(Opcode.POP);
-            pop();
-        }
+    /**
+     * @return the size of the removed value
+     */
+    int pop(){
+        int length = values[--depth];
+        size -= length;
+        return length;
     }
 
     void newScope(){
-        scopes.add(size);
+        locals.openScope();
     }
 
-    int clearTemp(){
-        int i = 0;
-        while (stack.getKey(stack.size()).equals("&temp")){
-            pop();
-            i++;
-        }
-        return i;
+    void clearScope(){
+        locals.closeScope();
     }
 
-    int get(String name){
-        if(!stack.hasKey(name))
-            return -1;
+    /**
+     * @return the slot of the declared variable
+     */
+    int declare(String name, String type){
+        return locals.declare(name, type);
+    }
 
-        return stack.getValue(name);
+    /**
+     * @return if the given slot belongs to a variable that has already been declared in a visible scope
+     */
+    boolean isDeclared(int slot){
+        return slot < locals.nextSlot();
     }
 
     static OperandStack forMethod(XJLNMethod method){
-        OperandStack os = new OperandStack();
-
-        for(int i = 0;i < method.parameters.size();i++)
-            os.push(method.parameters.getKey(i), (method.parameters.getValue(i).equals("double") || method.parameters.getValue(i).equals("long")) ? 2 : 1);
+        return new OperandStack(SymbolTable.forMethod(method, null));
+    }
 
-        return os;
+    /**
+     * @return the number of local variable slots the method needs
+     */
+    int getMaxLocals(){
+        return locals.getMaxSlots();
     }
 
-    boolean contains(String name){
-        return stack.hasKey(name);
+    /**
+     * @return the estimated maximum size of the operand stack
+     */
+    int getMaxSize(){
+        return maxSize;
     }
 }
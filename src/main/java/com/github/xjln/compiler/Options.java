@@ -0,0 +1,200 @@
+package com.github.xjln.compiler;
+
+public final class Options {
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean debug = false;
+    boolean metrics = false;
+    boolean incremental = false;
+    int optimization = 0;
+    String output = "compiled";
+    OutputSink sink = null;
+    EmitterBackend backend = new ClassFileBackend();
+    String parseCache = null;
+    long parseCacheSize = 256L * 1024 * 1024;
+    boolean invalidateParseCache = false;
+    String outputCache = null;
+    long outputCacheSize = 1024L * 1024 * 1024;
+    boolean linkOutputCache = false;
+    long watchDebounce = 50;
+    int lexChunkSize = 512 * 1024;
+    int serverCacheSize = 256;
+
+    /**
+     * @param threads the number of threads used to parse and compile the .xjln Files
+     * @throws RuntimeException if threads is smaller than one
+     */
+    public Options threads(int threads) throws RuntimeException{
+        if(threads < 1)
+            throw new RuntimeException("Expected at least one thread got " + threads);
+
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param debug if information of the compilation process should be shown
+     */
+    public Options debug(boolean debug){
+        this.debug = debug;
+        return this;
+    }
+
+    /**
+     * @param metrics if time, cpu time and allocations of every compiler phase should be recorded per File,
+     *                see {@link Compiler#getMetrics()}
+     */
+    public Options metrics(boolean metrics){
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param incremental if only changed .xjln Files and the Files using their signatures should be compiled,
+     *                    instead of clearing the output Folder and compiling everything
+     */
+    public Options incremental(boolean incremental){
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * @param level the optimization level like the -O0, -O1 and -O2 options of other compilers,
+     *              0 compiles the methods as they are written, 1 folds constant expressions, removes branches
+     *              with constant conditions and runs the peephole optimizer, 2 also replaces const fields with their values.
+     *              The default is 0
+     * @throws RuntimeException if level is not between 0 and 2
+     */
+    public Options optimization(int level) throws RuntimeException{
+        if(level < 0 || level > 2)
+            throw new RuntimeException("Expected optimization level between 0 and 2 got " + level);
+
+        this.optimization = level;
+        return this;
+    }
+
+    /**
+     * @param output the folder the class Files are written to
+     */
+    public Options output(String output){
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * @param sink the sink compiled classes are written to instead of the output Folder, like a {@link JarSink},
+     *             null to write class Files to the output Folder. The sink is closed after the compilation
+     */
+    public Options outputSink(OutputSink sink){
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * @param backend the backend that turns the generated ClassFiles into bytecode
+     * @throws RuntimeException if backend is null
+     */
+    public Options emitterBackend(EmitterBackend backend) throws RuntimeException{
+        if(backend == null)
+            throw new RuntimeException("Expected emitter backend got null");
+
+        this.backend = backend;
+        return this;
+    }
+
+    /**
+     * @param folder the folder parsed Files are cached in between compilations, null to disable the parse cache
+     */
+    public Options parseCache(String folder){
+        this.parseCache = folder;
+        return this;
+    }
+
+    /**
+     * @param bytes the maximum size of the parse cache, the least recently used entries are removed if it is exceeded
+     * @throws RuntimeException if bytes is negative
+     */
+    public Options parseCacheSize(long bytes) throws RuntimeException{
+        if(bytes < 0)
+            throw new RuntimeException("Expected positive parse cache size got " + bytes);
+
+        this.parseCacheSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param invalidate if all entries of the parse cache should be removed before compiling
+     */
+    public Options invalidateParseCache(boolean invalidate){
+        this.invalidateParseCache = invalidate;
+        return this;
+    }
+
+    /**
+     * @param folder the folder compiled class Files are cached in, the folder can be shared between checkouts
+     *               and parallel compilations, null to disable the output cache
+     */
+    public Options outputCache(String folder){
+        this.outputCache = folder;
+        return this;
+    }
+
+    /**
+     * @param bytes the maximum size of the output cache, the least recently used entries are removed if it is exceeded
+     * @throws RuntimeException if bytes is negative
+     */
+    public Options outputCacheSize(long bytes) throws RuntimeException{
+        if(bytes < 0)
+            throw new RuntimeException("Expected positive output cache size got " + bytes);
+
+        this.outputCacheSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param link if class Files restored from the output cache should be hard links instead of copies,
+     *             the output Folder has to be on the same file system as the cache and must not be modified in place
+     */
+    public Options linkOutputCache(boolean link){
+        this.linkOutputCache = link;
+        return this;
+    }
+
+    /**
+     * @param millis how long watch mode waits for further changes before it recompiles
+     * @throws RuntimeException if millis is negative
+     */
+    public Options watchDebounce(long millis) throws RuntimeException{
+        if(millis < 0)
+            throw new RuntimeException("Expected positive debounce time got " + millis);
+
+        this.watchDebounce = millis;
+        return this;
+    }
+
+    /**
+     * @param chars the size of the chunks large Files are split into at line boundaries to be lexed in parallel,
+     *              Files smaller than two chunks are lexed by one thread, 0 to lex every File by one thread
+     * @throws RuntimeException if chars is negative
+     */
+    public Options lexChunkSize(int chars) throws RuntimeException{
+        if(chars < 0)
+            throw new RuntimeException("Expected positive chunk size got " + chars);
+
+        this.lexChunkSize = chars;
+        return this;
+    }
+
+    /**
+     * @param files the maximum number of Files that are not open in the editor but kept parsed by the language server,
+     *              the least recently used Files are removed if it is exceeded, see {@link Compiler#serve(String...)}
+     * @throws RuntimeException if files is negative
+     */
+    public Options serverCacheSize(int files) throws RuntimeException{
+        if(files < 0)
+            throw new RuntimeException("Expected positive server cache size got " + files);
+
+        this.serverCacheSize = files;
+        return this;
+    }
+}
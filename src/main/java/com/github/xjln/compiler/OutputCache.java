@@ -0,0 +1,177 @@
+package com.github.xjln.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * content addressed cache for class Files, that can be shared between compilations of different checkouts,
+ * entries are keyed by the source of a File, the signatures of the Files it uses, the optimization level, the emitter backend
+ * and the compiler version
+ */
+final class OutputCache {
+
+    private static final String INDEX = "index";
+
+    private final File folder;
+    private final long maxSize;
+    private final boolean link;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    OutputCache(File folder, long maxSize, boolean link){
+        this.folder = folder;
+        this.maxSize = maxSize;
+        this.link = link;
+
+        if(!folder.exists() && !folder.mkdirs())
+            throw new RuntimeException("Failed to create output cache Folder " + folder.getPath());
+    }
+
+    static String key(String path, String contentHash, Collection<String> useSignatures, int optimization, EmitterBackend backend){
+        StringBuilder sb = new StringBuilder(Compiler.VERSION).append("\n").append(path).append("\n").append(contentHash).append("\n").append(optimization).append("\n").append(backend.id()).append("\n");
+
+        for(String signature:new TreeSet<>(useSignatures))
+            sb.append(signature).append("\n");
+
+        return IncrementalState.hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    long getHits(){
+        return hits.get();
+    }
+
+    long getMisses(){
+        return misses.get();
+    }
+
+    /**
+     * copies or links the cached class Files of the given key into the output Folder,
+     * class Files that already have the cached content are not touched
+     * @return the names of the restored classes or null if there is no entry for the given key
+     */
+    Set<String> restore(String key, File output){
+        File entry = entry(key);
+        File index = new File(entry, INDEX);
+
+        if(!index.exists()){
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try{
+            List<String> names = Files.readAllLines(index.toPath(), StandardCharsets.UTF_8);
+
+            for(int i = 0;i < names.size();i++){
+                Path cached = new File(entry, i + ".class").toPath();
+                Path target = new File(output, names.get(i).replace('.', File.separatorChar) + ".class").toPath();
+
+                if(Files.exists(target) && Files.size(target) == Files.size(cached) && Arrays.equals(Files.readAllBytes(target), Files.readAllBytes(cached)))
+                    continue;
+
+                Files.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+
+                if(link){
+                    try{
+                        Files.createLink(target, cached);
+                        continue;
+                    }catch (IOException | UnsupportedOperationException ignored){}
+                }
+
+                Files.copy(cached, target);
+            }
+
+            Files.setLastModifiedTime(index.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+
+            return new TreeSet<>(names);
+        }catch (IOException e){
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * adds the given classes from the output Folder to the cache, if no other compilation has done so already
+     */
+    void store(String key, File output, Set<String> classes){
+        File entry = entry(key);
+
+        if(entry.exists())
+            return;
+
+        File temp = new File(folder, "tmp-" + UUID.randomUUID());
+
+        try{
+            Files.createDirectories(temp.toPath());
+
+            ArrayList<String> names = new ArrayList<>(classes);
+            for(int i = 0;i < names.size();i++)
+                Files.copy(new File(output, names.get(i).replace('.', File.separatorChar) + ".class").toPath(), new File(temp, i + ".class").toPath());
+
+            Files.write(new File(temp, INDEX).toPath(), names, StandardCharsets.UTF_8);
+            Files.createDirectories(entry.getParentFile().toPath());
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }catch (IOException e){
+            delete(temp);
+        }
+    }
+
+    /**
+     * removes the least recently used entries until the cache does not exceed its size limit
+     */
+    void evict(){
+        ArrayList<File> entries = new ArrayList<>();
+        HashMap<File, Long> sizes = new HashMap<>();
+        long size = 0;
+
+        for(File prefix:Objects.requireNonNull(folder.listFiles(File::isDirectory))){
+            if(prefix.getName().startsWith("tmp-"))
+                continue;
+
+            for(File entry:Objects.requireNonNull(prefix.listFiles(File::isDirectory))){
+                long entrySize = 0;
+
+                for(File file:Objects.requireNonNull(entry.listFiles()))
+                    entrySize += file.length();
+
+                entries.add(entry);
+                sizes.put(entry, entrySize);
+                size += entrySize;
+            }
+        }
+
+        if(size <= maxSize)
+            return;
+
+        entries.sort(Comparator.comparingLong(entry -> new File(entry, INDEX).lastModified()));
+
+        for(File entry:entries){
+            if(size <= maxSize)
+                break;
+
+            delete(entry);
+            size -= sizes.get(entry);
+        }
+    }
+
+    private File entry(String key){
+        return new File(new File(folder, key.substring(0, 2)), key);
+    }
+
+    private static void delete(File file){
+        File[] children = file.listFiles();
+
+        if(children != null)
+            for(File child:children)
+                delete(child);
+
+        file.delete();
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.xjln.compiler;
+
+/**
+ * receives the bytecode of every compiled class, implementations have to be thread safe
+ * since classes are emitted by multiple threads
+ */
+public interface OutputSink extends AutoCloseable {
+
+    /**
+     * @param name the name of the class as given to its ClassFile
+     * @param bytes the bytecode of the class
+     * @throws RuntimeException if the class could not be written
+     */
+    void write(String name, byte[] bytes) throws RuntimeException;
+
+    /**
+     * called once all classes of a compilation have been written
+     * @throws RuntimeException if the written classes could not be completed
+     */
+    @Override
+    default void close() throws RuntimeException{}
+}
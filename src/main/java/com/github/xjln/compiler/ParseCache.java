@@ -0,0 +1,642 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.lang.*;
+import com.github.xjln.utility.MatchedList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * binary on-disk cache for parsed Files and the AST of their methods,
+ * entries are keyed by the hash of the source, its path and the compiler version
+ */
+final class ParseCache {
+
+    private record CachedMethod(XJLNMethod method, String owner, boolean statik, String name){}
+
+    private static final int MAGIC = 0x584A5043; // XJPC
+    private static final int FORMAT = 7;
+    private static final String SUFFIX = ".xpc";
+
+    private final File folder;
+    private final long maxSize;
+
+    private final ConcurrentHashMap<String, byte[]> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<XJLNMethod, AST[]> loadedAst = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<XJLNMethod, byte[]> parsedAst = new ConcurrentHashMap<>();
+
+    ParseCache(File folder, long maxSize, boolean invalidate){
+        this.folder = folder;
+        this.maxSize = maxSize;
+
+        if(!folder.exists() && !folder.mkdirs())
+            throw new RuntimeException("Failed to create parse cache Folder " + folder.getPath());
+
+        if(invalidate)
+            for(File file:Objects.requireNonNull(folder.listFiles()))
+                if(file.getName().endsWith(SUFFIX) && !file.delete())
+                    throw new RuntimeException("failed to delete " + file.getPath());
+    }
+
+    /**
+     * @return the cached File or null if there is no valid entry for the given source
+     */
+    XJLNFile load(String path, String contentHash){
+        String key = IncrementalState.hash((Compiler.VERSION + "\n" + path + "\n" + contentHash).getBytes(StandardCharsets.UTF_8));
+        File file = new File(folder, key + SUFFIX);
+
+        keys.put(path, key);
+
+        if(!file.exists())
+            return null;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            Reader in = new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            if(in.buffer.getInt() != MAGIC || in.buffer.getInt() != FORMAT || !Compiler.VERSION.equals(in.readString()))
+                return null;
+
+            XJLNFile xjlnFile = in.readFile();
+
+            for(int i = in.buffer.getInt();i > 0;i--){
+                XJLNMethod method = findMethod(xjlnFile, in.readString(), in.readFlag(), in.readString());
+                AST[] ast = in.readAstArray();
+
+                if(method != null)
+                    loadedAst.put(method, ast);
+            }
+
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+
+            return xjlnFile;
+        }catch (IOException | RuntimeException e){
+            return null;
+        }
+    }
+
+    /**
+     * remembers the given freshly parsed File, it is written to the cache by {@link #store(Map)}
+     */
+    void put(String path, XJLNFile file){
+        Writer out = new Writer();
+        out.writeFile(file);
+        pending.put(path, out.toByteArray());
+    }
+
+    AST[] getAst(XJLNMethod method){
+        return loadedAst.get(method);
+    }
+
+    void putAst(XJLNMethod method, AST[] ast){
+        Writer out = new Writer();
+        out.writeAstArray(ast);
+        parsedAst.put(method, out.toByteArray());
+    }
+
+    /**
+     * writes all Files that have been parsed since the cache was created, together with the AST of their methods,
+     * and evicts the least recently used entries if the cache exceeds its size limit
+     */
+    void store(Map<String, XJLNFile> files){
+        for(String path:pending.keySet()){
+            XJLNFile xjlnFile = files.get(path);
+
+            if(xjlnFile == null || !keys.containsKey(path))
+                continue;
+
+            Writer out = new Writer();
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeString(Compiler.VERSION);
+            out.writeBytes(pending.get(path));
+
+            ArrayList<CachedMethod> methods = new ArrayList<>();
+
+            collectMethods(xjlnFile.main, null, methods);
+            for(String name:xjlnFile.classes.keySet())
+                if(xjlnFile.classes.get(name) instanceof XJLNClass clazz)
+                    collectMethods(clazz, name, methods);
+
+            out.writeInt(methods.size());
+            for(CachedMethod method:methods){
+                out.writeString(method.owner);
+                out.writeFlag(method.statik);
+                out.writeString(method.name);
+                out.writeBytes(parsedAst.get(method.method));
+            }
+
+            File file = new File(folder, keys.get(path) + SUFFIX);
+            File temp = new File(folder, keys.get(path) + "." + Thread.currentThread().threadId() + ".tmp");
+
+            try{
+                Files.write(temp.toPath(), out.toByteArray());
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch (IOException e){
+                temp.delete();
+            }
+        }
+
+        pending.clear();
+        evict();
+    }
+
+    private void collectMethods(XJLNClass clazz, String owner, ArrayList<CachedMethod> methods){
+        for(String name:clazz.methods.keySet())
+            if(parsedAst.containsKey(clazz.methods.get(name)))
+                methods.add(new CachedMethod(clazz.methods.get(name), owner, false, name));
+
+        for(String name:clazz.staticMethods.keySet())
+            if(parsedAst.containsKey(clazz.staticMethods.get(name)))
+                methods.add(new CachedMethod(clazz.staticMethods.get(name), owner, true, name));
+    }
+
+    private void evict(){
+        File[] entries = folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+
+        if(entries == null)
+            return;
+
+        long size = 0;
+        for(File entry:entries)
+            size += entry.length();
+
+        if(size <= maxSize)
+            return;
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+
+        for(File entry:entries){
+            if(size <= maxSize)
+                break;
+
+            long length = entry.length();
+
+            if(entry.delete())
+                size -= length;
+        }
+    }
+
+    private static XJLNMethod findMethod(XJLNFile file, String clazz, boolean statik, String name){
+        XJLNClass c = clazz == null ? file.main : file.classes.get(clazz) instanceof XJLNClass xjlnClass ? xjlnClass : null;
+
+        if(c == null)
+            return null;
+
+        return statik ? c.staticMethods.get(name) : c.methods.get(name);
+    }
+
+    private static final class Writer{
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        byte[] toByteArray(){
+            return bytes.toByteArray();
+        }
+
+        void writeBytes(byte[] b){
+            bytes.writeBytes(b);
+        }
+
+        void writeInt(int i){
+            bytes.write(i >>> 24);
+            bytes.write(i >>> 16);
+            bytes.write(i >>> 8);
+            bytes.write(i);
+        }
+
+        void writeFlag(boolean b){
+            bytes.write(b ? 1 : 0);
+        }
+
+        void writeString(String s){
+            if(s == null)
+                writeInt(-1);
+            else{
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                writeInt(b.length);
+                bytes.writeBytes(b);
+            }
+        }
+
+        void writeFile(XJLNFile file){
+            writeString(file.path);
+
+            writeInt(file.uses.size());
+            for(String alias:file.uses.keySet()){
+                writeString(alias);
+                writeString(file.uses.get(alias));
+            }
+
+            writeClass(file.main);
+
+            writeInt(file.classes.size());
+            for(String name:file.classes.keySet()){
+                writeString(name);
+
+                Compilable c = file.classes.get(name);
+                if(c instanceof XJLNClass clazz){
+                    writeInt(0);
+                    writeClass(clazz);
+                }else if(c instanceof XJLNDataClass data){
+                    writeInt(1);
+                    writeInt(data.accessFlag.ordinal());
+                    writeFlag(data.finaly);
+                    writeInt(data.fields.size());
+                    for(int i = 0;i < data.fields.size();i++){
+                        writeString(data.fields.getKey(i));
+                        writeField(data.fields.getValue(i));
+                    }
+                }else if(c instanceof XJLNInterface interfaze){
+                    writeInt(2);
+                    writeInt(interfaze.accessFlag.ordinal());
+                    writeInt(interfaze.methods.size());
+                    for(int i = 0;i < interfaze.methods.size();i++){
+                        writeString(interfaze.methods.getKey(i));
+                        writeString(interfaze.methods.getValue(i).returnType());
+                        writeParameters(interfaze.methods.getValue(i).parameters());
+                    }
+                }else if(c instanceof XJLNTypeClass type){
+                    writeInt(3);
+                    writeInt(type.accessFlag.ordinal());
+                    writeInt(type.values.length);
+                    for(String value:type.values)
+                        writeString(value);
+                }
+            }
+        }
+
+        private void writeClass(XJLNClass clazz){
+            writeInt(clazz.accessFlag.ordinal());
+            writeFlag(clazz.finaly);
+            writeFlag(clazz.abstrakt);
+            writeFields(clazz.fields);
+            writeFields(clazz.staticFields);
+            writeMethods(clazz.methods);
+            writeMethods(clazz.staticMethods);
+        }
+
+        private void writeFields(HashMap<String, XJLNField> fields){
+            writeInt(fields.size());
+            for(String name:fields.keySet()){
+                writeString(name);
+                writeField(fields.get(name));
+            }
+        }
+
+        private void writeField(XJLNField field){
+            writeInt(field.accessFlag().ordinal());
+            writeFlag(field.statik());
+            writeFlag(field.transiend());
+            writeFlag(field.volatil());
+            writeFlag(field.constant());
+            writeString(field.type());
+            writeTokens(field.initValue());
+            writeInt(field.lineInFile());
+        }
+
+        private void writeMethods(HashMap<String, XJLNMethod> methods){
+            writeInt(methods.size());
+            for(String name:methods.keySet()){
+                XJLNMethod method = methods.get(name);
+
+                writeString(name);
+                writeInt(method.accessFlag.ordinal());
+                writeString(method.returnType);
+                writeParameters(method.parameters);
+                writeTokens(method.code);
+                writeFlag(method.statik);
+                writeFlag(method.abstrakt);
+                writeFlag(method.synchronise);
+                writeInt(method.line);
+            }
+        }
+
+        /**
+         * writes the tokens with the line they are in, relative to the line of the first token
+         */
+        private void writeTokens(TokenHandler tokens){
+            if(tokens == null){
+                writeInt(-1);
+                return;
+            }
+
+            TokenStream stream = tokens.stream();
+            int firstLine = stream.lineOf(tokens.start());
+
+            writeInt(tokens.length());
+            for(int i = tokens.start();i < tokens.end();i++){
+                writeInt(stream.lineOf(i) - firstLine);
+                writeInt(stream.type(i).ordinal());
+                writeString(stream.text(i));
+            }
+        }
+
+        private void writeParameters(MatchedList<String, String> parameters){
+            writeInt(parameters.size());
+            for(int i = 0;i < parameters.size();i++){
+                writeString(parameters.getKey(i));
+                writeString(parameters.getValue(i));
+            }
+        }
+
+        void writeAstArray(AST[] ast){
+            writeInt(ast.length);
+            for(AST a:ast)
+                writeAst(a);
+        }
+
+        private void writeAst(AST ast){
+            if(ast == null){
+                writeInt(0);
+                return;
+            }
+
+            if(ast instanceof AST.Calc calc){
+                writeInt(1);
+                writeString(calc.opp);
+                writeAst(calc.value);
+                writeAst(calc.left);
+                writeAst(calc.right);
+            }else if(ast instanceof AST.Value value){
+                writeInt(2);
+                writeAst(value.call);
+                writeString(value.cast);
+                writeFlag(value.token != null);
+                if(value.token != null){
+                    writeString(value.token.s());
+                    writeInt(value.token.t().ordinal());
+                }
+            }else if(ast instanceof AST.StaticCall call){
+                writeInt(3);
+                writeString(call.call);
+                writeAst(call.next);
+                writeArguments(call);
+            }else if(ast instanceof AST.Call call){
+                writeInt(4);
+                writeString(call.call);
+                writeAst(call.next);
+                writeArguments(call);
+                writeInt(call.slot);
+            }else if(ast instanceof AST.Return statement){
+                writeInt(5);
+                writeAst(statement.calc);
+            }else if(ast instanceof AST.VarAssigment statement){
+                writeInt(6);
+                writeAst(statement.calc);
+                writeString(statement.name);
+                writeAst(statement.call);
+            }else if(ast instanceof AST.While statement){
+                writeInt(7);
+                writeAst(statement.condition);
+                writeAstArray(statement.ast);
+            }else if(ast instanceof AST.If statement){
+                writeInt(8);
+                writeAst(statement.condition);
+                writeAst(statement.elif);
+                writeAstArray(statement.ast);
+            }
+
+            writeString(ast.type);
+        }
+
+        private void writeArguments(AST.Call call){
+            writeFlag(call.argTypes != null);
+            if(call.argTypes != null){
+                writeInt(call.argTypes.length);
+                for(AST.Calc calc:call.argTypes)
+                    writeAst(calc);
+            }
+        }
+    }
+
+    private static final class Reader{
+
+        private final ByteBuffer buffer;
+
+        Reader(ByteBuffer buffer){
+            this.buffer = buffer;
+        }
+
+        String readString(){
+            int length = buffer.getInt();
+
+            if(length == -1)
+                return null;
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        boolean readFlag(){
+            return buffer.get() == 1;
+        }
+
+        XJLNFile readFile(){
+            String path = readString();
+
+            HashMap<String, String> uses = new HashMap<>();
+            for(int i = buffer.getInt();i > 0;i--)
+                uses.put(readString(), readString());
+
+            XJLNClass main = readClass();
+
+            HashMap<String, Compilable> classes = new HashMap<>();
+            for(int i = buffer.getInt();i > 0;i--){
+                String name = readString();
+
+                switch (buffer.getInt()){
+                    case 0 -> classes.put(name, readClass());
+                    case 1 -> {
+                        AccessFlag accessFlag = AccessFlag.values()[buffer.getInt()];
+                        boolean finaly = readFlag();
+                        MatchedList<String, XJLNField> fields = new MatchedList<>();
+                        for(int j = buffer.getInt();j > 0;j--)
+                            fields.add(readString(), readField());
+                        classes.put(name, new XJLNDataClass(accessFlag, fields, finaly));
+                    }
+                    case 2 -> {
+                        AccessFlag accessFlag = AccessFlag.values()[buffer.getInt()];
+                        MatchedList<String, XJLNInterfaceMethod> methods = new MatchedList<>();
+                        for(int j = buffer.getInt();j > 0;j--)
+                            methods.add(readString(), new XJLNInterfaceMethod(readString(), readParameters()));
+                        classes.put(name, new XJLNInterface(accessFlag, methods));
+                    }
+                    case 3 -> {
+                        AccessFlag accessFlag = AccessFlag.values()[buffer.getInt()];
+                        String[] values = new String[buffer.getInt()];
+                        for(int j = 0;j < values.length;j++)
+                            values[j] = readString();
+                        classes.put(name, new XJLNTypeClass(accessFlag, values));
+                    }
+                    default -> throw new RuntimeException("illegal parse cache entry");
+                }
+            }
+
+            return new XJLNFile(path, main, classes, uses);
+        }
+
+        private XJLNClass readClass(){
+            XJLNClass clazz = new XJLNClass(AccessFlag.values()[buffer.getInt()], readFlag(), readFlag());
+
+            for(int i = buffer.getInt();i > 0;i--)
+                clazz.addField(readString(), readField());
+
+            for(int i = buffer.getInt();i > 0;i--)
+                clazz.addStaticField(readString(), readField());
+
+            for(int i = buffer.getInt();i > 0;i--)
+                clazz.addMethod(readString(), readMethod());
+
+            for(int i = buffer.getInt();i > 0;i--)
+                clazz.addStaticMethod(readString(), readMethod());
+
+            return clazz;
+        }
+
+        private XJLNField readField(){
+            return new XJLNField(AccessFlag.values()[buffer.getInt()], readFlag(), readFlag(), readFlag(), readFlag(), readString(), readTokens(), buffer.getInt());
+        }
+
+        private XJLNMethod readMethod(){
+            AccessFlag accessFlag = AccessFlag.values()[buffer.getInt()];
+            String returnType = readString();
+            MatchedList<String, String> parameters = readParameters();
+            TokenHandler code = readTokens();
+
+            return new XJLNMethod(accessFlag, returnType, parameters, code, readFlag(), readFlag(), readFlag(), buffer.getInt());
+        }
+
+        private TokenHandler readTokens(){
+            int size = buffer.getInt();
+
+            if(size == -1)
+                return null;
+
+            TokenStream stream = new TokenStream(null, size);
+            int line = 0;
+
+            for(int i = 0;i < size;i++){
+                for(int tokenLine = buffer.getInt();line < tokenLine;line++)
+                    stream.newLine();
+
+                Token.Type type = Token.Type.values()[buffer.getInt()];
+                String text = readString();
+                stream.add(type, -1, text.length(), text);
+            }
+
+            return new TokenHandler(stream, 0, size);
+        }
+
+        private MatchedList<String, String> readParameters(){
+            MatchedList<String, String> parameters = new MatchedList<>();
+
+            for(int i = buffer.getInt();i > 0;i--)
+                parameters.add(readString(), readString());
+
+            return parameters;
+        }
+
+        AST[] readAstArray(){
+            AST[] ast = new AST[buffer.getInt()];
+
+            for(int i = 0;i < ast.length;i++)
+                ast[i] = readAst();
+
+            return ast;
+        }
+
+        private AST.Calc[] readArguments(){
+            if(!readFlag())
+                return null;
+
+            AST.Calc[] arguments = new AST.Calc[buffer.getInt()];
+            for(int i = 0;i < arguments.length;i++)
+                arguments[i] = (AST.Calc) readAst();
+
+            return arguments;
+        }
+
+        private AST readAst(){
+            AST ast;
+
+            switch (buffer.getInt()){
+                case 0 -> {
+                    return null;
+                }
+                case 3 -> {
+                    AST.StaticCall call = new AST.StaticCall();
+                    call.call = readString();
+                    call.next = (AST.Call) readAst();
+                    call.argTypes = readArguments();
+                    ast = call;
+                }
+                case 4 -> {
+                    AST.Call call = new AST.Call();
+                    call.call = readString();
+                    call.next = (AST.Call) readAst();
+                    call.argTypes = readArguments();
+                    call.slot = buffer.getInt();
+                    ast = call;
+                }
+                case 1 -> {
+                    AST.Calc calc = new AST.Calc();
+                    calc.opp = readString();
+                    calc.value = (AST.Value) readAst();
+                    calc.left = (AST.Calc) readAst();
+                    calc.right = (AST.Calc) readAst();
+                    ast = calc;
+                }
+                case 2 -> {
+                    AST.Value value = new AST.Value();
+                    value.call = (AST.Call) readAst();
+                    value.cast = readString();
+                    if(readFlag())
+                        value.token = new Token(readString(), Token.Type.values()[buffer.getInt()]);
+                    ast = value;
+                }
+                case 5 -> {
+                    AST.Return statement = new AST.Return();
+                    statement.calc = (AST.Calc) readAst();
+                    ast = statement;
+                }
+                case 6 -> {
+                    AST.VarAssigment statement = new AST.VarAssigment();
+                    statement.calc = (AST.Calc) readAst();
+                    statement.name = readString();
+                    statement.call = (AST.Call) readAst();
+                    ast = statement;
+                }
+                case 7 -> {
+                    AST.While statement = new AST.While();
+                    statement.condition = (AST.Calc) readAst();
+                    statement.ast = readAstArray();
+                    ast = statement;
+                }
+                case 8 -> {
+                    AST.If statement = new AST.If();
+                    statement.condition = (AST.Calc) readAst();
+                    statement.elif = (AST.If) readAst();
+                    statement.ast = readAstArray();
+                    ast = statement;
+                }
+                default -> throw new RuntimeException("illegal parse cache entry");
+            }
+
+            ast.type = readString();
+            return ast;
+        }
+    }
+}
@@ -5,10 +5,9 @@ import com.github.xjln.lang.*;
 import com.github.xjln.utility.MatchedList;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Scanner;
 import java.util.Set;
 
 final class Parser {
@@ -17,59 +16,196 @@ final class Parser {
     private HashMap<String, String> uses;
     private XJLNClass main;
     private XJLNClass current;
-    private Scanner scanner;
+    private TokenStream stream;
 
     private String file;
+    private int firstLine;
     private int line;
     private TokenHandler token;
 
-    public XJLNFile parseFile(File src) throws FileNotFoundException {
-        scanner = new Scanner(src);
+    private final Metrics metrics;
+    private final String key;
+    private final int lexChunkSize;
 
-        if(!scanner.hasNextLine())
+    /**
+     * a member of a class declaration and the lines it spans, the member is declared in its own class
+     */
+    record Member(int start, int end, XJLNClass declared){}
+
+    private ArrayList<Member> members;
+
+    Parser(){
+        this(null, null, 0);
+    }
+
+    /**
+     * @param metrics the metrics lexing is recorded in, null if it should not be recorded
+     * @param key the path of the File the metrics are recorded for
+     * @param lexChunkSize the size of the chunks large Files are lexed in parallel in, 0 to lex Files in one thread
+     */
+    Parser(Metrics metrics, String key, int lexChunkSize){
+        this.metrics = metrics;
+        this.key = key;
+        this.lexChunkSize = lexChunkSize;
+    }
+
+    public XJLNFile parseFile(File src) throws IOException {
+        return parseFile(src, Source.read(src));
+    }
+
+    /**
+     * parses the given source, that has already been read from the given .xjln File
+     */
+    XJLNFile parseFile(File src, Source source){
+        return parse(source.text(), src.getPath().substring(0, src.getPath().length() - 5));
+    }
+
+    /**
+     * parses the given source code as if it was the content of the .xjln File with the given path
+     * @param path the path of the File without the .xjln extension
+     */
+    public XJLNFile parseSource(String path, String src){
+        return parse(src, path);
+    }
+
+    /**
+     * lexes the whole source once, the lines are then parsed as ranges of the token stream
+     */
+    private XJLNFile parse(String src, String path){
+        if(src.isEmpty())
             return null;
 
+        if(metrics != null){
+            Metrics.Timer timer = metrics.start(Metrics.Phase.LEX, key);
+
+            try{
+                stream = Lexer.tokenize(src, lexChunkSize);
+            }finally {
+                timer.stop();
+            }
+
+            metrics.addTokens(key, stream.size());
+        }else
+            stream = Lexer.tokenize(src, lexChunkSize);
+
         classes = new HashMap<>();
         uses = new HashMap<>();
-        main = new XJLNClass(AccessFlag.ACC_PUBLIC, true, true);
+        main = new XJLNClass(AccessFlag.ACC_PUBLIC, true, false);
         current = null;
 
-        file = src.getPath().substring(0, src.getPath().length() - 5).replace("\\", "/");
+        file = path.replace("\\", "/");
+        firstLine = 0;
         line = 0;
 
-        while (scanner.hasNextLine()){
+        while (hasNextLine()){
             nextLine();
 
-            if(token.hasNext()) {
-                token.assertToken(Token.Type.IDENTIFIER);
+            if(token.hasNext())
+                parseDeclaration();
+        }
 
-                switch (token.current().s()) {
-                    case "use" -> {
-                        try {
-                            parseUse();
-                        }catch (RuntimeException e){
-                            error(e);
-                        }
-                    }
-                    case "def" -> {
-                        try {
-                            parseDef();
-                        }catch (RuntimeException e){
-                            error(e);
-                        }
-                    }
-                    default -> {
-                        try {
-                            parseField();
-                        }catch (RuntimeException e){
-                            error(e);
-                        }
-                    }
-                }
+        return new XJLNFile(file, main, classes, uses);
+    }
+
+    /**
+     * prepares parsing single declarations of the given tokens, see {@link Document}
+     * @param path the path of the File without the .xjln extension
+     * @param firstLine the line in the File of the first line of the tokens
+     */
+    void begin(TokenStream stream, String path, int firstLine){
+        this.stream = stream;
+        this.firstLine = firstLine;
+        file = path.replace("\\", "/");
+        current = null;
+    }
+
+    /**
+     * @return the line after the last line that has been parsed, also if parsing failed
+     */
+    int line(){
+        return line;
+    }
+
+    /**
+     * parses the declaration starting at the given line into the given containers
+     * @param members the list the members of a class declaration are added to, each declared in its own class
+     * @return the line after the declaration
+     */
+    int parseDeclaration(int line, XJLNClass main, HashMap<String, Compilable> classes, HashMap<String, String> uses, ArrayList<Member> members){
+        this.main = main;
+        this.classes = classes;
+        this.uses = uses;
+        this.members = members;
+        this.line = line;
+
+        try{
+            nextLine();
+
+            if(token.hasNext())
+                parseDeclaration();
+        }finally {
+            this.members = null;
+            current = null;
+        }
+
+        return this.line;
+    }
+
+    /**
+     * parses the member of a class starting at the given line into the given class
+     * @return the line after the member or -1 if the line closes the class
+     */
+    int parseMember(int line, XJLNClass clazz){
+        this.line = line;
+        current = clazz;
+
+        try{
+            nextLine();
+
+            if(token.isEmpty())
+                return this.line;
+
+            if(isClosingBracket())
+                return -1;
+
+            try{
+                parseMember();
+            }catch (RuntimeException e){
+                error(e);
             }
+        }finally {
+            current = null;
         }
 
-        return new XJLNFile(file, main, classes, uses);
+        return this.line;
+    }
+
+    private void parseDeclaration(){
+        token.assertToken(Token.Type.IDENTIFIER);
+
+        switch (token.current().s()) {
+            case "use" -> {
+                try {
+                    parseUse();
+                }catch (RuntimeException e){
+                    error(e);
+                }
+            }
+            case "def" -> {
+                try {
+                    parseDef();
+                }catch (RuntimeException e){
+                    error(e);
+                }
+            }
+            default -> {
+                try {
+                    parseField();
+                }catch (RuntimeException e){
+                    error(e);
+                }
+            }
+        }
     }
 
     private void parseUse(){
@@ -279,7 +415,7 @@ final class Parser {
             if(fields.hasKey(fieldName))
                 throw new RuntimeException("field is already defined");
 
-            fields.add(fieldName, new XJLNField(AccessFlag.ACC_PUBLIC, false, false, false, constant, fieldType, null, line));
+            fields.add(fieldName, new XJLNField(AccessFlag.ACC_PUBLIC, false, false, false, constant, fieldType, null, firstLine + line));
 
             if(th.hasNext()){
                 th.assertToken(",");
@@ -303,11 +439,11 @@ final class Parser {
 
         MatchedList<String, XJLNInterfaceMethod> methods = new MatchedList<>();
 
-        while (scanner.hasNext()){
+        while (hasNextLine()){
             nextLine();
 
             if(!token.isEmpty()){
-                if(token.toStringNonMarked().trim().equals("}"))
+                if(isClosingBracket())
                     break;
 
                 token.assertToken("def");
@@ -353,7 +489,7 @@ final class Parser {
             }
         }
 
-        if(!token.toStringNonMarked().trim().equals("}"))
+        if(!isClosingBracket())
             throw new RuntimeException("Expected }");
 
         XJLNInterface clazz = new XJLNInterface(accessFlagInterface, methods);
@@ -371,38 +507,29 @@ final class Parser {
         token.assertToken("{");
         token.assertNull();
 
-        while (scanner.hasNext()) {
+        while (hasNextLine()) {
             nextLine();
 
             if (!token.isEmpty()) {
-                if (token.toStringNonMarked().trim().equals("}"))
+                if (isClosingBracket())
                     break;
 
-                if(token.assertToken(Token.Type.IDENTIFIER).s().equals("def")) {
-                    AccessFlag methodAccessFlag = getAccessFlag();
+                if(members != null){
+                    XJLNClass clazz = current;
+                    int start = line - 1;
+                    current = new XJLNClass(clazz.accessFlag, clazz.finaly, clazz.abstrakt);
 
-                    boolean statik = false;
-                    boolean methodAbstrakt = false;
-                    boolean synchronise = false;
-                    String methodName = token.assertToken(Token.Type.IDENTIFIER).s();
-
-                    while (Set.of("static", "abstract", "synchronised").contains(methodName)){
-                        switch (methodName){
-                            case "static"       -> statik      = true;
-                            case "abstract"     -> abstrakt    = true;
-                            case "synchronised" -> synchronise = true;
-                        }
+                    parseMember();
 
-                        methodName = token.assertToken(Token.Type.IDENTIFIER).s();
-                    }
-
-                    parseMethod(methodAccessFlag, statik, methodAbstrakt, synchronise);
+                    clazz.addAll(current);
+                    members.add(new Member(start, line, current));
+                    current = clazz;
                 }else
-                    parseField();
+                    parseMember();
             }
         }
 
-        if(!token.toStringNonMarked().trim().equals("}"))
+        if(!isClosingBracket())
             throw new RuntimeException("Expected }");
 
         if(classes.containsKey(name))
@@ -412,6 +539,33 @@ final class Parser {
         current = null;
     }
 
+    private void parseMember(){
+        if(token.assertToken(Token.Type.IDENTIFIER).s().equals("def")) {
+            AccessFlag methodAccessFlag = getAccessFlag();
+
+            boolean statik = false;
+            boolean methodAbstrakt = false;
+            boolean synchronise = false;
+            String methodName = token.assertToken(Token.Type.IDENTIFIER).s();
+
+            while (Set.of("static", "abstract", "synchronised").contains(methodName)){
+                switch (methodName){
+                    case "static"       -> statik      = true;
+                    case "abstract"     -> methodAbstrakt = true;
+                    case "synchronised" -> synchronise = true;
+                }
+
+                methodName = token.assertToken(Token.Type.IDENTIFIER).s();
+            }
+
+            if(methodAbstrakt && !current.abstrakt)
+                throw new RuntimeException("Abstract method in non abstract class");
+
+            parseMethod(methodAccessFlag, statik, methodAbstrakt, synchronise);
+        }else
+            parseField();
+    }
+
     private void parseMethod(AccessFlag accessFlag, boolean statik, boolean abstrakt, boolean synchronise){
         token.last();
 
@@ -452,12 +606,13 @@ final class Parser {
         if((name.equals("init")) && (statik || abstrakt || synchronise))
             throw new RuntimeException("Did not expect modifier");
 
-        StringBuilder code = new StringBuilder();
+        TokenHandler code = null;
 
         if(!abstrakt){
             int i = 1;
+            int codeStart = token.end();
 
-            while (scanner.hasNext() && i > 0){
+            while (hasNextLine() && i > 0){
                 nextLine();
 
                 if(!token.isEmpty()) {
@@ -468,17 +623,17 @@ final class Parser {
                             i--;
                         }
                     }
-
-                    if(i>0)
-                        code.append(token.toStringNonMarked()).append("\n");
                 }
             }
 
             if(i > 0)
                 throw new RuntimeException("method was not closed");
+
+            if(token.start() > codeStart)
+                code = new TokenHandler(stream, codeStart, token.start());
         }
 
-        XJLNMethod method = new XJLNMethod(accessFlag, returnType, parameters, code.toString(), statik, abstrakt, synchronise, line);
+        XJLNMethod method = new XJLNMethod(accessFlag, returnType, parameters, code, statik || current == null, abstrakt, synchronise, firstLine + line);
 
         if(current == null)
             main.addStaticMethod(name, method);
@@ -515,16 +670,15 @@ final class Parser {
 
         String name = token.assertToken(Token.Type.IDENTIFIER).s();
 
-        StringBuilder initValue = new StringBuilder();
+        TokenHandler initValue = null;
         if(token.hasNext()){
             token.assertToken("=");
             token.assertHasNext();
 
-            while (token.hasNext())
-                initValue.append(token.next().s());
+            initValue = token.remaining();
         }
 
-        XJLNField field = new XJLNField(accessFlag, statik, transiend, volatil, constant, type, initValue.toString(), line);
+        XJLNField field = new XJLNField(accessFlag, statik || current == null, transiend, volatil, constant, type, initValue, firstLine + line);
 
         if(current == null)
             main.addStaticField(name, field);
@@ -550,16 +704,24 @@ final class Parser {
         return accessFlag;
     }
 
+    private boolean hasNextLine(){
+        return line < stream.lines();
+    }
+
     private void nextLine(){
-        if(scanner.hasNextLine()) {
+        if(hasNextLine()) {
+            token = new TokenHandler(stream, stream.lineStart(line), stream.lineEnd(line));
             line++;
-            token = Lexer.lex(scanner.nextLine());
         }else
             throw new RuntimeException("Internal Compiler Error");
     }
 
+    private boolean isClosingBracket(){
+        return token.length() == 1 && token.text(0).equals("}");
+    }
+
     private void error(String message){
-        throw new RuntimeException(message + " in: " + file + " :" + line);
+        throw new RuntimeException(message + " in: " + file + " :" + (firstLine + line));
     }
 
     private void error(RuntimeException e){
@@ -0,0 +1,446 @@
+package com.github.xjln.compiler;
+
+import javassist.bytecode.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * rewrites short instruction sequences of a method before its CodeAttribute is created.
+ * The code is decoded into a list of instructions whose branches point to their target instructions,
+ * so instructions can be removed and replaced without tracking offsets. Every {@link Rule} is tried at every
+ * instruction until no rule matches anymore, then the instructions are encoded again.
+ * Instructions that are the target of a branch are only replaced together with the first instruction of a pattern
+ */
+final class PeepholeOptimizer {
+
+    enum Rule{
+        /** dup pop, dup2 pop2 */
+        DUP_POP,
+        /** dup store pop becomes store */
+        DUP_STORE_POP,
+        /** store n load n becomes dup store n */
+        STORE_LOAD,
+        /** iload n, constant, iadd or isub, istore n becomes iinc */
+        INCREMENT,
+        /** an int constant followed by if is either a goto or nothing */
+        CONSTANT_BRANCH,
+        /** jumps to a goto jump to its target instead */
+        JUMP_TO_JUMP,
+        /** a goto to a return is replaced by the return */
+        JUMP_TO_RETURN,
+        /** a goto to the next instruction is removed */
+        JUMP_TO_NEXT,
+        /** if to L, goto M, L: becomes the inverted if to M */
+        INVERTED_BRANCH,
+        /** instructions after goto, return or athrow, that are no branch target, are removed */
+        UNREACHABLE
+    }
+
+    private static final Rule[] RULES = Rule.values();
+
+    private static final class Instruction{
+        /** the opcode, loads and stores always have the opcode of their long form like iload for iload_0 */
+        final int opcode;
+        /** the encoded instruction, branches are encoded with the offset of their target */
+        final byte[] bytes;
+        /** the slot of loads, stores and iinc or the value of int constants */
+        final int operand;
+
+        Instruction target = null;
+        int references = 0;
+        int pc;
+
+        Instruction(int opcode, byte[] bytes, int operand){
+            this.opcode = opcode;
+            this.bytes = bytes;
+            this.operand = operand;
+        }
+    }
+
+    private final ArrayList<Instruction> code;
+    private final long[] hits;
+
+    private PeepholeOptimizer(ArrayList<Instruction> code, long[] hits){
+        this.code = code;
+        this.hits = hits;
+    }
+
+    /**
+     * @param hits the number of times every rule matched is added at the ordinal of the rule
+     * @return the CodeAttribute of the optimized code, the code is not changed if it contains jsr, ret, switches,
+     * wide jumps or exception handlers
+     */
+    static CodeAttribute optimize(Bytecode bytecode, long[] hits){
+        byte[] bytes = bytecode.get();
+        ArrayList<Instruction> code = bytecode.getExceptionTable().size() == 0 ? decode(bytecode.getConstPool(), bytes) : null;
+
+        if(code != null){
+            new PeepholeOptimizer(code, hits).run();
+            bytes = encode(code);
+        }
+
+        return new CodeAttribute(bytecode.getConstPool(), bytecode.getMaxStack(), bytecode.getMaxLocals(), bytes, bytecode.getExceptionTable());
+    }
+
+    private void run(){
+        boolean changed = true;
+
+        while(changed){
+            changed = false;
+
+            for(int i = 0;i < code.size();i++){
+                for(Rule rule:RULES){
+                    if(apply(rule, i)){
+                        hits[rule.ordinal()]++;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean apply(Rule rule, int i){
+        Instruction a = get(i);
+        Instruction b = get(i + 1);
+
+        if(a == null)
+            return false;
+
+        return switch (rule){
+            case DUP_POP -> {
+                if(b == null || !free(i, 2) || !((a.opcode == Opcode.DUP && b.opcode == Opcode.POP) || (a.opcode == Opcode.DUP2 && b.opcode == Opcode.POP2)))
+                    yield false;
+
+                replace(i, 2);
+                yield true;
+            }
+            case DUP_STORE_POP -> {
+                Instruction c = get(i + 2);
+
+                if(c == null || !free(i, 3) || !isStore(b) || a.opcode != dup(b.opcode) || c.opcode != (a.opcode == Opcode.DUP ? Opcode.POP : Opcode.POP2))
+                    yield false;
+
+                replace(i, 3, b);
+                yield true;
+            }
+            case STORE_LOAD -> {
+                if(b == null || !free(i, 2) || !isStore(a) || b.opcode != a.opcode - Opcode.ISTORE + Opcode.ILOAD || b.operand != a.operand || increment(i + 1) != null)
+                    yield false;
+
+                replace(i, 2, simple(dup(a.opcode)), local(a.opcode, a.operand));
+                yield true;
+            }
+            case INCREMENT -> {
+                Integer increment = increment(i);
+
+                if(increment == null)
+                    yield false;
+
+                replace(i, 4, iinc(code.get(i + 3).operand, increment));
+                yield true;
+            }
+            case CONSTANT_BRANCH -> {
+                if(b == null || !free(i, 2) || !isIntConstant(a) || b.opcode < Opcode.IFEQ || b.opcode > Opcode.IFLE)
+                    yield false;
+
+                if(holds(b.opcode, a.operand))
+                    replace(i, 2, branch(Opcode.GOTO, b.target));
+                else
+                    replace(i, 2);
+
+                yield true;
+            }
+            case JUMP_TO_JUMP -> {
+                if(a.target == null || a.target.opcode != Opcode.GOTO)
+                    yield false;
+
+                Instruction target = a.target;
+
+                for(int hops = 0;target.opcode == Opcode.GOTO && target.target != target;hops++){
+                    if(hops == code.size())
+                        yield false; //gotos jumping to each other
+
+                    target = target.target;
+                }
+
+                if(target == a.target)
+                    yield false;
+
+                retarget(a, target);
+                yield true;
+            }
+            case JUMP_TO_RETURN -> {
+                if(a.opcode != Opcode.GOTO || a.target.opcode < Opcode.IRETURN || a.target.opcode > Opcode.RETURN)
+                    yield false;
+
+                replace(i, 1, simple(a.target.opcode));
+                yield true;
+            }
+            case JUMP_TO_NEXT -> {
+                if(a.opcode != Opcode.GOTO || a.target != b)
+                    yield false;
+
+                replace(i, 1);
+                yield true;
+            }
+            case INVERTED_BRANCH -> {
+                Instruction c = get(i + 2);
+
+                if(c == null || !free(i, 2) || !isConditional(a) || b.opcode != Opcode.GOTO || a.target != c || b.target == b)
+                    yield false;
+
+                replace(i, 2, branch(invert(a.opcode), b.target));
+                yield true;
+            }
+            case UNREACHABLE -> {
+                if(b == null || b.references != 0 || !(a.opcode == Opcode.GOTO || a.opcode == Opcode.ATHROW || (a.opcode >= Opcode.IRETURN && a.opcode <= Opcode.RETURN)))
+                    yield false;
+
+                replace(i + 1, 1);
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * @return the constant added to the local if the instructions at i are iload n, constant, iadd or isub, istore n,
+     * or constant, iload n, iadd, istore n, otherwise null
+     */
+    private Integer increment(int i){
+        if(!free(i, 4))
+            return null;
+
+        Instruction a = code.get(i), b = code.get(i + 1), c = code.get(i + 2), d = code.get(i + 3);
+
+        if(d.opcode != Opcode.ISTORE || (c.opcode != Opcode.IADD && c.opcode != Opcode.ISUB))
+            return null;
+
+        int increment;
+
+        if(a.opcode == Opcode.ILOAD && a.operand == d.operand && isIntConstant(b))
+            increment = c.opcode == Opcode.IADD ? b.operand : -b.operand;
+        else if(c.opcode == Opcode.IADD && b.opcode == Opcode.ILOAD && b.operand == d.operand && isIntConstant(a))
+            increment = a.operand;
+        else
+            return null;
+
+        return increment >= Short.MIN_VALUE && increment <= Short.MAX_VALUE ? increment : null;
+    }
+
+    private Instruction get(int i){
+        return i < code.size() ? code.get(i) : null;
+    }
+
+    /**
+     * @return if the n instructions starting at i exist and only the first one may be the target of a branch
+     */
+    private boolean free(int i, int n){
+        if(i + n > code.size())
+            return false;
+
+        for(int k = i + 1;k < i + n;k++)
+            if(code.get(k).references != 0)
+                return false;
+
+        return true;
+    }
+
+    /**
+     * replaces n instructions starting at i, branches to the first replaced instruction jump to the first new
+     * instruction or to the instruction after the replaced ones if there are no new instructions
+     */
+    private void replace(int i, int n, Instruction... with){
+        Instruction first = code.get(i);
+        Instruction next = with.length > 0 ? with[0] : get(i + n);
+
+        for(int k = i;k < i + n;k++){
+            Instruction removed = code.get(k);
+
+            if(removed.target != null)
+                removed.target.references--;
+        }
+
+        for(Instruction instruction:with)
+            if(instruction.target != null)
+                instruction.target.references++;
+
+        if(first.references != 0 && first != next){
+            for(Instruction instruction:code)
+                if(instruction.target == first)
+                    instruction.target = next;
+
+            for(Instruction instruction:with)
+                if(instruction.target == first)
+                    instruction.target = next;
+
+            next.references += first.references;
+            first.references = 0;
+        }
+
+        code.subList(i, i + n).clear();
+        code.addAll(i, Arrays.asList(with));
+    }
+
+    private void retarget(Instruction branch, Instruction target){
+        branch.target.references--;
+        branch.target = target;
+        target.references++;
+    }
+
+    private static boolean isStore(Instruction instruction){
+        return instruction != null && instruction.opcode >= Opcode.ISTORE && instruction.opcode <= Opcode.ASTORE;
+    }
+
+    private static boolean isIntConstant(Instruction instruction){
+        return (instruction.opcode >= Opcode.ICONST_M1 && instruction.opcode <= Opcode.ICONST_5) || instruction.opcode == Opcode.BIPUSH || instruction.opcode == Opcode.SIPUSH;
+    }
+
+    private static boolean isConditional(Instruction instruction){
+        return (instruction.opcode >= Opcode.IFEQ && instruction.opcode <= Opcode.IF_ACMPNE) || instruction.opcode == Opcode.IFNULL || instruction.opcode == Opcode.IFNONNULL;
+    }
+
+    private static int dup(int store){
+        return store == Opcode.LSTORE || store == Opcode.DSTORE ? Opcode.DUP2 : Opcode.DUP;
+    }
+
+    private static int invert(int opcode){
+        if(opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL)
+            return opcode == Opcode.IFNULL ? Opcode.IFNONNULL : Opcode.IFNULL;
+
+        return Opcode.IFEQ + ((opcode - Opcode.IFEQ) ^ 1);
+    }
+
+    /**
+     * @return if the if instruction jumps for the given value
+     */
+    private static boolean holds(int opcode, int value){
+        return switch (opcode){
+            case Opcode.IFEQ -> value == 0;
+            case Opcode.IFNE -> value != 0;
+            case Opcode.IFLT -> value < 0;
+            case Opcode.IFGE -> value >= 0;
+            case Opcode.IFGT -> value > 0;
+            default -> value <= 0;
+        };
+    }
+
+    private static Instruction simple(int opcode){
+        return new Instruction(opcode, new byte[]{(byte) opcode}, 0);
+    }
+
+    private static Instruction branch(int opcode, Instruction target){
+        Instruction instruction = new Instruction(opcode, new byte[3], 0);
+        instruction.target = target;
+        return instruction;
+    }
+
+    /**
+     * @param opcode the long form of a load or store
+     * @return the shortest encoding of the load or store
+     */
+    private static Instruction local(int opcode, int slot){
+        byte[] bytes;
+
+        if(slot < 4)
+            bytes = new byte[]{(byte) (opcode < Opcode.ISTORE ? Opcode.ILOAD_0 + (opcode - Opcode.ILOAD) * 4 + slot : Opcode.ISTORE_0 + (opcode - Opcode.ISTORE) * 4 + slot)};
+        else if(slot < 256)
+            bytes = new byte[]{(byte) opcode, (byte) slot};
+        else
+            bytes = new byte[]{(byte) Opcode.WIDE, (byte) opcode, (byte) (slot >> 8), (byte) slot};
+
+        return new Instruction(opcode, bytes, slot);
+    }
+
+    private static Instruction iinc(int slot, int increment){
+        if(slot < 256 && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE)
+            return new Instruction(Opcode.IINC, new byte[]{(byte) Opcode.IINC, (byte) slot, (byte) increment}, slot);
+
+        return new Instruction(Opcode.IINC, new byte[]{(byte) Opcode.WIDE, (byte) Opcode.IINC, (byte) (slot >> 8), (byte) slot, (byte) (increment >> 8), (byte) increment}, slot);
+    }
+
+    /**
+     * @return the instructions of the code or null if the code contains instructions that are not supported
+     */
+    private static ArrayList<Instruction> decode(ConstPool cp, byte[] bytes){
+        ArrayList<Instruction> code = new ArrayList<>();
+        Instruction[] at = new Instruction[bytes.length];
+        CodeIterator it = new CodeAttribute(cp, 0, 0, bytes, new ExceptionTable(cp)).iterator();
+
+        try{
+            while(it.hasNext()){
+                int pc = it.next();
+                int op = bytes[pc] & 0xFF;
+                byte[] encoded = Arrays.copyOfRange(bytes, pc, it.lookAhead());
+                Instruction instruction;
+
+                if(op == Opcode.GOTO_W || op == Opcode.JSR || op == Opcode.JSR_W || op == Opcode.RET || op == Opcode.TABLESWITCH || op == Opcode.LOOKUPSWITCH)
+                    return null;
+
+                if(op >= Opcode.ILOAD_0 && op <= Opcode.ALOAD_3)
+                    instruction = new Instruction(Opcode.ILOAD + (op - Opcode.ILOAD_0) / 4, encoded, (op - Opcode.ILOAD_0) % 4);
+                else if(op >= Opcode.ISTORE_0 && op <= Opcode.ASTORE_3)
+                    instruction = new Instruction(Opcode.ISTORE + (op - Opcode.ISTORE_0) / 4, encoded, (op - Opcode.ISTORE_0) % 4);
+                else if((op >= Opcode.ILOAD && op <= Opcode.ALOAD) || (op >= Opcode.ISTORE && op <= Opcode.ASTORE) || op == Opcode.IINC)
+                    instruction = new Instruction(op, encoded, encoded[1] & 0xFF);
+                else if(op == Opcode.WIDE)
+                    instruction = new Instruction(encoded[1] & 0xFF, encoded, ((encoded[2] & 0xFF) << 8) | (encoded[3] & 0xFF));
+                else if(op >= Opcode.ICONST_M1 && op <= Opcode.ICONST_5)
+                    instruction = new Instruction(op, encoded, op - Opcode.ICONST_0);
+                else if(op == Opcode.BIPUSH)
+                    instruction = new Instruction(op, encoded, encoded[1]);
+                else if(op == Opcode.SIPUSH)
+                    instruction = new Instruction(op, encoded, (short) (((encoded[1] & 0xFF) << 8) | (encoded[2] & 0xFF)));
+                else
+                    instruction = new Instruction(op, encoded, 0);
+
+                instruction.pc = pc;
+                at[pc] = instruction;
+                code.add(instruction);
+            }
+        }catch (BadBytecode e){
+            return null;
+        }
+
+        for(Instruction instruction:code){
+            if(isConditional(instruction) || instruction.opcode == Opcode.GOTO){
+                int target = instruction.pc + (short) (((instruction.bytes[1] & 0xFF) << 8) | (instruction.bytes[2] & 0xFF));
+
+                if(target < 0 || target >= bytes.length || at[target] == null)
+                    return null;
+
+                instruction.target = at[target];
+                instruction.target.references++;
+            }
+        }
+
+        return code;
+    }
+
+    private static byte[] encode(ArrayList<Instruction> code){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pc = 0;
+
+        for(Instruction instruction:code){
+            instruction.pc = pc;
+            pc += instruction.bytes.length;
+        }
+
+        for(Instruction instruction:code){
+            if(instruction.target != null){
+                int offset = instruction.target.pc - instruction.pc;
+
+                if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                    throw new RuntimeException("jump offset " + offset + " is too large");
+
+                out.write(instruction.opcode);
+                out.write(offset >> 8);
+                out.write(offset);
+            }else
+                out.write(instruction.bytes, 0, instruction.bytes.length);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.xjln.compiler;
+
+import jdk.jfr.*;
+
+@Name("com.github.xjln.Phase")
+@Label("XJLN Compiler Phase")
+@Category("XJLN")
+@StackTrace(false)
+final class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+
+    @Label("CPU Time")
+    @Timespan
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,184 @@
+package com.github.xjln.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * the content of a .xjln File, read with a single bulk read or a memory mapping for large Files
+ * and decoded as UTF-8, sources that only contain ASCII characters skip the decoder.
+ * The offsets of all lines are collected while the source is decoded
+ */
+final class Source {
+
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final byte[] bytes;
+    private final String text;
+    private int[] lines = new int[16];
+    private int lineCount = 1;
+
+    private Source(byte[] bytes, String text){
+        this.bytes = bytes;
+        this.text = text;
+    }
+
+    static Source read(File file) throws IOException{
+        byte[] bytes;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+
+            if(size > Integer.MAX_VALUE - 8)
+                throw new IOException(file.getPath() + " is too large");
+
+            bytes = new byte[(int) size];
+
+            if(size >= MAP_THRESHOLD)
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(bytes);
+            else{
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+                while(buffer.hasRemaining() && channel.read(buffer) != -1);
+
+                if(buffer.hasRemaining())
+                    bytes = Arrays.copyOf(bytes, buffer.position());
+            }
+        }
+
+        for(int i = 0;i < bytes.length;i++)
+            if(bytes[i] < 0)
+                return of(bytes, StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(ByteBuffer.wrap(bytes)).toString());
+
+        Source source = new Source(bytes, new String(bytes, 0, bytes.length, StandardCharsets.ISO_8859_1));
+
+        for(int i = 0;i < bytes.length;i++)
+            if(bytes[i] == '\n' || (bytes[i] == '\r' && (i + 1 == bytes.length || bytes[i + 1] != '\n')))
+                source.addLine(i + 1);
+
+        return source;
+    }
+
+    static Source of(String text){
+        return of(null, text);
+    }
+
+    private static Source of(byte[] bytes, String text){
+        Source source = new Source(bytes, text);
+
+        for(int i = 0;i < text.length();i++){
+            char c = text.charAt(i);
+
+            if(c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')))
+                source.addLine(i + 1);
+        }
+
+        return source;
+    }
+
+    /**
+     * @return the source with the given range replaced by the given text, only the line offsets of the changed lines
+     *         are collected again, the offsets of all other lines are copied
+     */
+    Source edit(int offset, int removed, String inserted){
+        String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+        Source source = new Source(null, edited);
+        int delta = inserted.length() - removed;
+
+        int from = Math.max(lines[lineOf(offset)] - 1, 0);
+        int to = Math.min(offset + inserted.length() + 1, edited.length());
+
+        source.lines = Arrays.copyOf(lines, lines.length);
+        source.lineCount = lineOf(from) + 1;
+
+        for(int i = from;i < to;i++){
+            char c = edited.charAt(i);
+
+            if(c == '\n' || (c == '\r' && (i + 1 == edited.length() || edited.charAt(i + 1) != '\n')))
+                source.addLine(i + 1);
+        }
+
+        for(int l = lineOf(offset + removed) + 1;l < lineCount;l++)
+            if(lines[l] >= offset + removed + 2)
+                source.addLine(lines[l] + delta);
+
+        return source;
+    }
+
+    private void addLine(int offset){
+        if(offset == text.length())
+            return;
+
+        if(lineCount == lines.length)
+            lines = Arrays.copyOf(lines, lineCount * 2);
+
+        lines[lineCount++] = offset;
+    }
+
+    String text(){
+        return text;
+    }
+
+    /**
+     * @return the bytes of the File or null if the source was not read from a File
+     */
+    byte[] bytes(){
+        return bytes;
+    }
+
+    /**
+     * @return the number of lines, a line break at the end of the source does not start another line
+     */
+    int lines(){
+        return text.isEmpty() ? 0 : lineCount;
+    }
+
+    /**
+     * @return the offset of the first character of the given line
+     */
+    int lineStart(int line){
+        return lines[line];
+    }
+
+    /**
+     * @return the offset of the line break that ends the given line or the length of the source
+     */
+    int lineEnd(int line){
+        int end = line + 1 < lineCount ? lines[line + 1] : text.length();
+
+        if(end > lines[line] && text.charAt(end - 1) == '\n')
+            end--;
+
+        if(end > lines[line] && text.charAt(end - 1) == '\r')
+            end--;
+
+        return end;
+    }
+
+    /**
+     * @return the line of the character at the given offset
+     */
+    int lineOf(int offset){
+        int low = 0;
+        int high = lineCount - 1;
+
+        while(low < high){
+            int mid = (low + high + 1) >>> 1;
+
+            if(lines[mid] <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,761 @@
+package com.github.xjln.compiler;
+
+import javassist.bytecode.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static javassist.bytecode.StackMapTable.*;
+
+/**
+ * dataflow pass over the code of a method, computes the exact max_stack and max_locals and adds the StackMapTable
+ * the type checking verifier needs at every branch target and after every unconditional jump.
+ * A type is encoded as int, the lowest 4 bits hold the StackMapTable tag, the other bits the index of the class name
+ * of objects or the offset of the new instruction of uninitialized objects. Long and double values take two words
+ * in the locals and on the stack, the second one is TOP. References of different classes merge to java/lang/Object.
+ * Code that can not be reached is replaced by nops followed by athrow, since the verifier checks it as well
+ */
+final class StackMapBuilder {
+
+    private static final int[] KINDS = {INTEGER, LONG, FLOAT, DOUBLE};
+    private static final int[] ARRAY_LOADS = {INTEGER, LONG, FLOAT, DOUBLE, TOP, INTEGER, INTEGER, INTEGER};
+    private static final int[] CONVERT_FROM = {INTEGER, INTEGER, INTEGER, LONG, LONG, LONG, FLOAT, FLOAT, FLOAT, DOUBLE, DOUBLE, DOUBLE, INTEGER, INTEGER, INTEGER};
+    private static final int[] CONVERT_TO = {LONG, FLOAT, DOUBLE, INTEGER, FLOAT, DOUBLE, INTEGER, LONG, DOUBLE, INTEGER, LONG, FLOAT, INTEGER, INTEGER, INTEGER};
+    private static final String[] NEW_ARRAYS = {"[Z", "[C", "[F", "[D", "[B", "[S", "[I", "[J"};
+
+    private final ConstPool cp;
+    private final byte[] code;
+    private final String owner;
+    private final ArrayList<String> classes = new ArrayList<>();
+
+    private final int[] next;
+    private final boolean[] leader;
+    private final boolean[] needsFrame;
+    private final boolean[] reached;
+    private final int[][] frameLocals;
+    private final int[][] frameStacks;
+    private final ArrayDeque<Integer> worklist = new ArrayDeque<>();
+
+    private int[] locals;
+    private int[] stack = new int[8];
+    private int top = 0;
+    private int maxStack = 0;
+    private int maxLocals = 0;
+
+    private StackMapBuilder(ConstPool cp, byte[] code, String owner){
+        this.cp = cp;
+        this.code = code;
+        this.owner = owner;
+
+        next = new int[code.length];
+        leader = new boolean[code.length + 1];
+        needsFrame = new boolean[code.length];
+        reached = new boolean[code.length];
+        frameLocals = new int[code.length][];
+        frameStacks = new int[code.length][];
+    }
+
+    /**
+     * replaces max_stack and max_locals of the method and adds a StackMapTable if the method contains branches
+     * @param owner the name of the class containing the method
+     * @throws RuntimeException if the code is inconsistent or uses instructions the code generator never creates
+     */
+    static void build(MethodInfo method, String owner) throws RuntimeException{
+        CodeAttribute ca = method.getCodeAttribute();
+
+        if(ca == null)
+            return;
+
+        if(ca.getExceptionTable().size() != 0)
+            throw new RuntimeException("exception handlers are not supported in " + owner + "." + method.getName());
+
+        new StackMapBuilder(method.getConstPool(), ca.getCode(), owner.replace('.', '/')).build(method, ca);
+    }
+
+    private void build(MethodInfo method, CodeAttribute ca){
+        int[] initial = initialLocals(method);
+
+        scan(ca);
+        locals = Arrays.copyOf(initial, maxLocals);
+
+        frameLocals[0] = locals.clone();
+        frameStacks[0] = new int[0];
+        worklist.push(0);
+
+        while(!worklist.isEmpty())
+            run(worklist.pop());
+
+        removeDeadCode();
+
+        ca.setMaxStack(maxStack);
+        ca.setMaxLocals(maxLocals);
+
+        StackMapTable table = writeFrames(Arrays.copyOf(initial, maxLocals));
+        if(table != null)
+            ca.setAttribute(table);
+    }
+
+    /**
+     * finds the start of every basic block and the number of local slots used by the code
+     */
+    private void scan(CodeAttribute ca){
+        CodeIterator it = ca.iterator();
+        leader[0] = true;
+
+        try{
+            while(it.hasNext()){
+                int pc = it.next();
+                int op = code[pc] & 0xFF;
+                next[pc] = it.lookAhead();
+
+                if(isBranch(op)){
+                    int target = target(pc, op);
+
+                    if(target < 0 || target >= code.length)
+                        throw new RuntimeException("branch target " + target + " is outside of the code");
+
+                    leader[target] = true;
+                    leader[next[pc]] = true;
+                }
+
+                if(op == Opcode.GOTO || op == Opcode.GOTO_W || op == Opcode.ATHROW || (op >= Opcode.IRETURN && op <= Opcode.RETURN))
+                    leader[next[pc]] = true;
+
+                maxLocals = Math.max(maxLocals, localsUsed(pc, op));
+            }
+        }catch (BadBytecode e){
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    /**
+     * interprets the basic block starting at pc with the types of its frame
+     */
+    private void run(int pc){
+        locals = frameLocals[pc].clone();
+        top = 0;
+
+        for(int type:frameStacks[pc])
+            stack = push(stack, type);
+
+        while(true){
+            reached[pc] = true;
+
+            if(!execute(pc)){
+                if(next[pc] < code.length)
+                    needsFrame[next[pc]] = true;
+
+                return;
+            }
+
+            pc = next[pc];
+
+            if(pc == code.length)
+                throw new RuntimeException("execution falls off the end of the code");
+
+            if(leader[pc]){
+                merge(pc);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the instruction never continues with the next one
+     */
+    private boolean execute(int pc){
+        int op = code[pc] & 0xFF;
+
+        if(op >= Opcode.ILOAD_0 && op <= Opcode.ALOAD_3){
+            load((op - Opcode.ILOAD_0) / 4, (op - Opcode.ILOAD_0) % 4);
+            return true;
+        }
+
+        if(op >= Opcode.ISTORE_0 && op <= Opcode.ASTORE_3){
+            store((op - Opcode.ISTORE_0) / 4, (op - Opcode.ISTORE_0) % 4);
+            return true;
+        }
+
+        if(op >= Opcode.IADD && op <= Opcode.DREM){
+            int type = KINDS[(op - Opcode.IADD) % 4];
+            pop(2 * words(type));
+            push(type);
+            return true;
+        }
+
+        if(op >= Opcode.INEG && op <= Opcode.DNEG)
+            return true;
+
+        if(op >= Opcode.ISHL && op <= Opcode.LUSHR){
+            pop(1);
+            return true;
+        }
+
+        if(op >= Opcode.IAND && op <= Opcode.LXOR){
+            pop((op - Opcode.IAND) % 2 == 0 ? 1 : 2);
+            return true;
+        }
+
+        if(op >= Opcode.I2L && op <= Opcode.I2S){
+            pop(words(CONVERT_FROM[op - Opcode.I2L]));
+            push(CONVERT_TO[op - Opcode.I2L]);
+            return true;
+        }
+
+        if(op >= Opcode.LCMP && op <= Opcode.DCMPG){
+            pop(op == Opcode.FCMPL || op == Opcode.FCMPG ? 2 : 4);
+            push(INTEGER);
+            return true;
+        }
+
+        if(op >= Opcode.ICONST_M1 && op <= Opcode.ICONST_5){
+            push(INTEGER);
+            return true;
+        }
+
+        if(op >= Opcode.IALOAD && op <= Opcode.SALOAD){
+            pop(1);
+            int array = stack[--top];
+            push(op == Opcode.AALOAD ? component(array) : ARRAY_LOADS[op - Opcode.IALOAD]);
+            return true;
+        }
+
+        if(op >= Opcode.IASTORE && op <= Opcode.SASTORE){
+            pop(op == Opcode.LASTORE || op == Opcode.DASTORE ? 4 : 3);
+            return true;
+        }
+
+        if(isBranch(op)){
+            if(op >= Opcode.IF_ICMPEQ && op <= Opcode.IF_ACMPNE)
+                pop(2);
+            else if(op != Opcode.GOTO && op != Opcode.GOTO_W)
+                pop(1);
+
+            needsFrame[target(pc, op)] = true;
+            merge(target(pc, op));
+            return op != Opcode.GOTO && op != Opcode.GOTO_W;
+        }
+
+        if(op >= Opcode.IRETURN && op <= Opcode.RETURN)
+            return false;
+
+        switch (op){
+            case Opcode.NOP, Opcode.IINC -> {}
+            case Opcode.ACONST_NULL -> push(NULL);
+            case Opcode.LCONST_0, Opcode.LCONST_1 -> push(LONG);
+            case Opcode.FCONST_0, Opcode.FCONST_1, Opcode.FCONST_2 -> push(FLOAT);
+            case Opcode.DCONST_0, Opcode.DCONST_1 -> push(DOUBLE);
+            case Opcode.BIPUSH, Opcode.SIPUSH -> push(INTEGER);
+            case Opcode.LDC -> push(constant(code[pc + 1] & 0xFF));
+            case Opcode.LDC_W, Opcode.LDC2_W -> push(constant(u16(pc + 1)));
+            case Opcode.ILOAD, Opcode.LLOAD, Opcode.FLOAD, Opcode.DLOAD, Opcode.ALOAD -> load(op - Opcode.ILOAD, code[pc + 1] & 0xFF);
+            case Opcode.ISTORE, Opcode.LSTORE, Opcode.FSTORE, Opcode.DSTORE, Opcode.ASTORE -> store(op - Opcode.ISTORE, code[pc + 1] & 0xFF);
+            case Opcode.WIDE -> {
+                int wide = code[pc + 1] & 0xFF;
+
+                if(wide >= Opcode.ILOAD && wide <= Opcode.ALOAD)
+                    load(wide - Opcode.ILOAD, u16(pc + 2));
+                else if(wide >= Opcode.ISTORE && wide <= Opcode.ASTORE)
+                    store(wide - Opcode.ISTORE, u16(pc + 2));
+                else if(wide != Opcode.IINC)
+                    throw unsupported(wide, pc);
+            }
+            case Opcode.POP -> pop(1);
+            case Opcode.POP2 -> pop(2);
+            case Opcode.DUP -> pushWords(stack[top - 1]);
+            case Opcode.DUP_X1 -> {
+                int v1 = stack[--top], v2 = stack[--top];
+                pushWords(v1, v2, v1);
+            }
+            case Opcode.DUP_X2 -> {
+                int v1 = stack[--top], v2 = stack[--top], v3 = stack[--top];
+                pushWords(v1, v3, v2, v1);
+            }
+            case Opcode.DUP2 -> {
+                int v1 = stack[--top], v2 = stack[--top];
+                pushWords(v2, v1, v2, v1);
+            }
+            case Opcode.DUP2_X1 -> {
+                int v1 = stack[--top], v2 = stack[--top], v3 = stack[--top];
+                pushWords(v2, v1, v3, v2, v1);
+            }
+            case Opcode.DUP2_X2 -> {
+                int v1 = stack[--top], v2 = stack[--top], v3 = stack[--top], v4 = stack[--top];
+                pushWords(v2, v1, v4, v3, v2, v1);
+            }
+            case Opcode.SWAP -> {
+                int v1 = stack[--top], v2 = stack[--top];
+                pushWords(v1, v2);
+            }
+            case Opcode.GETSTATIC -> push(type(fieldType(pc), 0));
+            case Opcode.PUTSTATIC -> pop(words(type(fieldType(pc), 0)));
+            case Opcode.GETFIELD -> {
+                pop(1);
+                push(type(fieldType(pc), 0));
+            }
+            case Opcode.PUTFIELD -> pop(words(type(fieldType(pc), 0)) + 1);
+            case Opcode.INVOKEVIRTUAL, Opcode.INVOKESPECIAL, Opcode.INVOKESTATIC, Opcode.INVOKEINTERFACE, Opcode.INVOKEDYNAMIC -> invoke(pc, op);
+            case Opcode.NEW -> push(UNINIT + (pc << 4));
+            case Opcode.NEWARRAY -> {
+                pop(1);
+                push(object(NEW_ARRAYS[code[pc + 1] - 4]));
+            }
+            case Opcode.ANEWARRAY -> {
+                pop(1);
+                push(object("[" + cp.getClassInfoByDescriptor(u16(pc + 1))));
+            }
+            case Opcode.MULTIANEWARRAY -> {
+                pop(code[pc + 3] & 0xFF);
+                push(type(cp.getClassInfoByDescriptor(u16(pc + 1)), 0));
+            }
+            case Opcode.ARRAYLENGTH, Opcode.INSTANCEOF -> {
+                pop(1);
+                push(INTEGER);
+            }
+            case Opcode.CHECKCAST -> {
+                pop(1);
+                push(type(cp.getClassInfoByDescriptor(u16(pc + 1)), 0));
+            }
+            case Opcode.MONITORENTER, Opcode.MONITOREXIT -> pop(1);
+            case Opcode.ATHROW -> {
+                return false;
+            }
+            default -> throw unsupported(op, pc);
+        }
+
+        return true;
+    }
+
+    private void invoke(int pc, int op){
+        int index = u16(pc + 1);
+        int nameAndType = op == Opcode.INVOKEDYNAMIC ? cp.getInvokeDynamicNameAndType(index) : cp.getMemberNameAndType(index);
+        String desc = cp.getUtf8Info(cp.getNameAndTypeDescriptor(nameAndType));
+
+        pop(argumentWords(desc));
+
+        if(op != Opcode.INVOKESTATIC && op != Opcode.INVOKEDYNAMIC){
+            int receiver = stack[--top];
+
+            if(op == Opcode.INVOKESPECIAL && cp.getUtf8Info(cp.getNameAndTypeName(nameAndType)).equals("<init>"))
+                initialize(receiver);
+        }
+
+        int returnType = type(desc, desc.indexOf(')') + 1);
+        if(returnType != TOP)
+            push(returnType);
+    }
+
+    /**
+     * replaces all occurrences of the uninitialized type with the type of the initialized object
+     */
+    private void initialize(int uninitialized){
+        int initialized;
+
+        if(uninitialized == THIS)
+            initialized = object(owner);
+        else if((uninitialized & 15) == UNINIT)
+            initialized = type(cp.getClassInfoByDescriptor(u16((uninitialized >>> 4) + 1)), 0);
+        else
+            return;
+
+        for(int i = 0;i < locals.length;i++)
+            if(locals[i] == uninitialized)
+                locals[i] = initialized;
+
+        for(int i = 0;i < top;i++)
+            if(stack[i] == uninitialized)
+                stack[i] = initialized;
+    }
+
+    private void load(int kind, int slot){
+        push(kind == 4 ? locals[slot] : KINDS[kind]);
+    }
+
+    private void store(int kind, int slot){
+        int type;
+
+        if(kind == 4){
+            type = stack[--top];
+        }else{
+            type = KINDS[kind];
+            pop(words(type));
+        }
+
+        if(slot > 0 && words(locals[slot - 1]) == 2)
+            locals[slot - 1] = TOP;
+
+        locals[slot] = type;
+
+        if(words(type) == 2)
+            locals[slot + 1] = TOP;
+    }
+
+    private void push(int type){
+        stack = push(stack, type);
+
+        if(words(type) == 2)
+            stack = push(stack, TOP);
+    }
+
+    private void pushWords(int... words){
+        for(int word:words)
+            stack = push(stack, word);
+    }
+
+    private int[] push(int[] stack, int word){
+        if(top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+
+        stack[top++] = word;
+        maxStack = Math.max(maxStack, top);
+        return stack;
+    }
+
+    private void pop(int words){
+        if(words > top)
+            throw new RuntimeException("stack underflow");
+
+        top -= words;
+    }
+
+    /**
+     * merges the current types into the frame of the given block and schedules it if its frame changed
+     */
+    private void merge(int target){
+        if(frameLocals[target] == null){
+            frameLocals[target] = locals.clone();
+            frameStacks[target] = Arrays.copyOf(stack, top);
+            worklist.push(target);
+            return;
+        }
+
+        int[] targetLocals = frameLocals[target];
+        int[] targetStack = frameStacks[target];
+        boolean changed = false;
+
+        if(targetStack.length != top)
+            throw new RuntimeException("inconsistent stack height at " + target);
+
+        for(int i = 0;i < targetLocals.length;i++){
+            int type = merge(targetLocals[i], locals[i]);
+            changed |= type != targetLocals[i];
+            targetLocals[i] = type;
+        }
+
+        for(int i = 0;i < top;i++){
+            int type = merge(targetStack[i], stack[i]);
+
+            if(type == TOP && targetStack[i] != TOP)
+                throw new RuntimeException("inconsistent stack types at " + target);
+
+            changed |= type != targetStack[i];
+            targetStack[i] = type;
+        }
+
+        if(changed)
+            worklist.push(target);
+    }
+
+    private int merge(int a, int b){
+        if(a == b)
+            return a;
+
+        if((a & 15) == OBJECT && b == NULL)
+            return a;
+
+        if((b & 15) == OBJECT && a == NULL)
+            return b;
+
+        if((a & 15) == OBJECT && (b & 15) == OBJECT)
+            return object("java/lang/Object");
+
+        return TOP;
+    }
+
+    /**
+     * replaces every block that is never reached with nops followed by athrow and gives it a frame with a Throwable on the stack
+     */
+    private void removeDeadCode(){
+        int pc = 0;
+
+        while(pc < code.length){
+            if(reached[pc]){
+                pc = next[pc];
+                continue;
+            }
+
+            int start = pc;
+
+            while(pc < code.length && !reached[pc])
+                pc = next[pc];
+
+            Arrays.fill(code, start, pc - 1, (byte) Opcode.NOP);
+            code[pc - 1] = (byte) Opcode.ATHROW;
+
+            frameLocals[start] = new int[maxLocals];
+            frameStacks[start] = new int[]{object("java/lang/Throwable")};
+            needsFrame[start] = true;
+            maxStack = Math.max(maxStack, 1);
+        }
+    }
+
+    /**
+     * @return the frames of all blocks that need one in the most compact form or null if there are none
+     */
+    private StackMapTable writeFrames(int[] initial){
+        StackMapTable.Writer writer = new StackMapTable.Writer(32);
+        int[] last = compress(initial, true);
+        int lastPc = -1;
+        int entries = 0;
+
+        for(int pc = 0;pc < code.length;pc++){
+            if(!needsFrame[pc] || frameStacks[pc] == null)
+                continue;
+
+            int delta = lastPc == -1 ? pc : pc - lastPc - 1;
+            int[] locals = compress(frameLocals[pc], true);
+            int[] stack = compress(frameStacks[pc], false);
+            int common = commonPrefix(last, locals);
+
+            if(stack.length == 0 && common == last.length && common == locals.length)
+                writer.sameFrame(delta);
+            else if(stack.length == 1 && common == last.length && common == locals.length)
+                writer.sameLocals(delta, stack[0] & 15, data(stack[0]));
+            else if(stack.length == 0 && common == locals.length && last.length - common <= 3)
+                writer.chopFrame(delta, last.length - common);
+            else if(stack.length == 0 && common == last.length && locals.length - common <= 3){
+                int[] appended = Arrays.copyOfRange(locals, common, locals.length);
+                writer.appendFrame(delta, tags(appended), data(appended));
+            }else
+                writer.fullFrame(delta, tags(locals), data(locals), tags(stack), data(stack));
+
+            last = locals;
+            lastPc = pc;
+            entries++;
+        }
+
+        return entries == 0 ? null : writer.toStackMapTable(cp);
+    }
+
+    /**
+     * @return the verification types of the given words, long and double are only listed once,
+     * trailing TOPs are removed from locals
+     */
+    private static int[] compress(int[] words, boolean locals){
+        int[] types = new int[words.length];
+        int size = 0;
+        int end = 0;
+
+        for(int i = 0;i < words.length;i++){
+            types[size++] = words[i];
+
+            if(words[i] != TOP)
+                end = size;
+
+            if(words(words[i]) == 2)
+                i++;
+        }
+
+        return Arrays.copyOf(types, locals ? end : size);
+    }
+
+    private static int commonPrefix(int[] a, int[] b){
+        int i = 0;
+
+        while(i < a.length && i < b.length && a[i] == b[i])
+            i++;
+
+        return i;
+    }
+
+    private static int[] tags(int[] types){
+        int[] tags = new int[types.length];
+
+        for(int i = 0;i < types.length;i++)
+            tags[i] = types[i] & 15;
+
+        return tags;
+    }
+
+    private int[] data(int[] types){
+        int[] data = new int[types.length];
+
+        for(int i = 0;i < types.length;i++)
+            data[i] = data(types[i]);
+
+        return data;
+    }
+
+    private int data(int type){
+        return switch (type & 15){
+            case OBJECT -> cp.addClassInfo(classes.get(type >>> 4));
+            case UNINIT -> type >>> 4;
+            default -> 0;
+        };
+    }
+
+    private int[] initialLocals(MethodInfo method){
+        String desc = method.getDescriptor();
+        int[] words = new int[Descriptor.paramSize(desc) + 1];
+        int slot = 0;
+
+        if((method.getAccessFlags() & AccessFlag.STATIC) == 0)
+            words[slot++] = method.getName().equals("<init>") && !owner.equals("java/lang/Object") ? THIS : object(owner);
+
+        for(int i = 1;desc.charAt(i) != ')';i++){
+            int type = type(desc, i);
+            words[slot++] = type;
+
+            if(words(type) == 2)
+                words[slot++] = TOP;
+
+            while(desc.charAt(i) == '[')
+                i++;
+
+            if(desc.charAt(i) == 'L')
+                i = desc.indexOf(';', i);
+        }
+
+        maxLocals = slot;
+        return Arrays.copyOf(words, slot);
+    }
+
+    /**
+     * @return the type of the descriptor starting at the given index, TOP for void
+     */
+    private int type(String desc, int i){
+        return switch (desc.charAt(i)){
+            case 'I', 'Z', 'B', 'C', 'S' -> INTEGER;
+            case 'F' -> FLOAT;
+            case 'J' -> LONG;
+            case 'D' -> DOUBLE;
+            case 'L' -> object(desc.substring(i + 1, desc.indexOf(';', i)));
+            case '[' -> {
+                int end = i;
+
+                while(desc.charAt(end) == '[')
+                    end++;
+
+                yield object(desc.substring(i, desc.charAt(end) == 'L' ? desc.indexOf(';', end) + 1 : end + 1));
+            }
+            default -> TOP;
+        };
+    }
+
+    private int component(int array){
+        if((array & 15) != OBJECT)
+            return NULL;
+
+        String name = classes.get(array >>> 4);
+        return name.startsWith("[") ? type(name, 1) : object("java/lang/Object");
+    }
+
+    private int constant(int index){
+        return switch (cp.getTag(index)){
+            case ConstPool.CONST_Integer -> INTEGER;
+            case ConstPool.CONST_Float -> FLOAT;
+            case ConstPool.CONST_Long -> LONG;
+            case ConstPool.CONST_Double -> DOUBLE;
+            case ConstPool.CONST_String -> object("java/lang/String");
+            case ConstPool.CONST_Class -> object("java/lang/Class");
+            default -> throw new RuntimeException("unsupported constant " + index);
+        };
+    }
+
+    private int object(String name){
+        int index = classes.indexOf(name);
+
+        if(index == -1){
+            index = classes.size();
+            classes.add(name);
+        }
+
+        return OBJECT + (index << 4);
+    }
+
+    private String fieldType(int pc){
+        return cp.getUtf8Info(cp.getNameAndTypeDescriptor(cp.getMemberNameAndType(u16(pc + 1))));
+    }
+
+    private static int argumentWords(String desc){
+        int words = 0;
+
+        for(int i = 1;desc.charAt(i) != ')';i++){
+            char c = desc.charAt(i);
+
+            if(c == 'J' || c == 'D'){
+                words += 2;
+                continue;
+            }
+
+            words++;
+
+            while(desc.charAt(i) == '[')
+                i++;
+
+            if(desc.charAt(i) == 'L')
+                i = desc.indexOf(';', i);
+        }
+
+        return words;
+    }
+
+    private static int words(int type){
+        return type == LONG || type == DOUBLE ? 2 : 1;
+    }
+
+    private static boolean isBranch(int op){
+        return (op >= Opcode.IFEQ && op <= Opcode.GOTO) || op == Opcode.IFNULL || op == Opcode.IFNONNULL || op == Opcode.GOTO_W;
+    }
+
+    private int target(int pc, int op){
+        return op == Opcode.GOTO_W ? pc + ((code[pc + 1] << 24) | ((code[pc + 2] & 0xFF) << 16) | ((code[pc + 3] & 0xFF) << 8) | (code[pc + 4] & 0xFF)) : pc + (short) u16(pc + 1);
+    }
+
+    /**
+     * @return the number of local slots needed by the instruction
+     */
+    private int localsUsed(int pc, int op){
+        if(op >= Opcode.ILOAD_0 && op <= Opcode.ALOAD_3)
+            return (op - Opcode.ILOAD_0) % 4 + kindWords((op - Opcode.ILOAD_0) / 4);
+
+        if(op >= Opcode.ISTORE_0 && op <= Opcode.ASTORE_3)
+            return (op - Opcode.ISTORE_0) % 4 + kindWords((op - Opcode.ISTORE_0) / 4);
+
+        if(op >= Opcode.ILOAD && op <= Opcode.ALOAD)
+            return (code[pc + 1] & 0xFF) + kindWords(op - Opcode.ILOAD);
+
+        if(op >= Opcode.ISTORE && op <= Opcode.ASTORE)
+            return (code[pc + 1] & 0xFF) + kindWords(op - Opcode.ISTORE);
+
+        if(op == Opcode.IINC)
+            return (code[pc + 1] & 0xFF) + 1;
+
+        if(op == Opcode.WIDE){
+            int wide = code[pc + 1] & 0xFF;
+
+            if(wide >= Opcode.ILOAD && wide <= Opcode.ALOAD)
+                return u16(pc + 2) + kindWords(wide - Opcode.ILOAD);
+
+            if(wide >= Opcode.ISTORE && wide <= Opcode.ASTORE)
+                return u16(pc + 2) + kindWords(wide - Opcode.ISTORE);
+
+            return u16(pc + 2) + 1;
+        }
+
+        return 0;
+    }
+
+    private static int kindWords(int kind){
+        return kind == 1 || kind == 3 ? 2 : 1;
+    }
+
+    private int u16(int pc){
+        return ((code[pc] & 0xFF) << 8) | (code[pc + 1] & 0xFF);
+    }
+
+    private RuntimeException unsupported(int op, int pc){
+        return new RuntimeException("unsupported instruction " + Mnemonic.OPCODE[op] + " at " + pc);
+    }
+}
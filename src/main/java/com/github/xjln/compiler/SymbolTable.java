@@ -0,0 +1,164 @@
+package com.github.xjln.compiler;
+
+import com.github.xjln.lang.XJLNMethod;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * the local variables of a method, used by the SyntacticParser to resolve names and by the OperandStack to assign slots.
+ * Variables are stored in the order they are declared, names are found through an open-addressing hash index.
+ * Opening a scope remembers the number of declared variables and closing it removes the variables declared since then,
+ * so no scope copies its parent. Every variable gets the next free local slot, the slots of a closed scope are used again
+ */
+final class SymbolTable {
+
+    private String[] names = new String[8];
+    private String[] types = new String[8];
+    private int[] slots = new int[8];
+    private int size = 0;
+
+    /** the index of each variable plus one at the position of its name hash, 0 for empty positions */
+    private int[] index = new int[16];
+
+    private int[] scopes = new int[8];
+    private int depth = 0;
+    private int maxSlots = 0;
+
+    /**
+     * @param type the class of the method, "this" is declared in the first slot of methods that are not static
+     * @return a table containing "this" and the parameters of the method
+     */
+    static SymbolTable forMethod(XJLNMethod method, String type){
+        SymbolTable table = new SymbolTable();
+
+        if(!method.statik)
+            table.declare("this", type);
+
+        for(int i = 0;i < method.parameters.size();i++)
+            table.declare(method.parameters.getKey(i), method.parameters.getValue(i));
+
+        return table;
+    }
+
+    /**
+     * @return the slot of the declared variable
+     * @throws RuntimeException if a variable with the given name is already visible
+     */
+    int declare(String name, String type) throws RuntimeException{
+        int position = position(name);
+
+        if(index[position] != 0)
+            throw new RuntimeException("Variable " + name + " already exists");
+
+        if(size == names.length){
+            names = Arrays.copyOf(names, size * 2);
+            types = Arrays.copyOf(types, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+
+        int slot = nextSlot();
+
+        names[size] = name;
+        types[size] = type;
+        slots[size] = slot;
+        index[position] = ++size;
+        maxSlots = Math.max(maxSlots, slot + size(type));
+
+        if(size * 2 > index.length)
+            rehash(index.length * 2);
+
+        return slot;
+    }
+
+    /**
+     * @return the index of the visible variable with the given name or -1 if there is none
+     */
+    int find(String name){
+        return index[position(name)] - 1;
+    }
+
+    String type(int variable){
+        return types[variable];
+    }
+
+    int slot(int variable){
+        return slots[variable];
+    }
+
+    void openScope(){
+        if(depth == scopes.length)
+            scopes = Arrays.copyOf(scopes, depth * 2);
+
+        scopes[depth++] = size;
+    }
+
+    /**
+     * removes all variables declared since the last opened scope, the most recently declared variable is removed first,
+     * so no other variable was probed past its position and it can be cleared without tombstones
+     */
+    void closeScope(){
+        int mark = scopes[--depth];
+
+        while(size > mark){
+            size--;
+            index[position(names[size])] = 0;
+            names[size] = null;
+            types[size] = null;
+        }
+    }
+
+    /**
+     * @return the slot the next declared variable gets
+     */
+    int nextSlot(){
+        return size == 0 ? 0 : slots[size - 1] + size(types[size - 1]);
+    }
+
+    /**
+     * @return the number of local slots needed by all variables declared so far
+     */
+    int getMaxSlots(){
+        return maxSlots;
+    }
+
+    /**
+     * @return the types of all visible variables mapped by their names
+     */
+    HashMap<String, String> types(){
+        HashMap<String, String> types = new HashMap<>();
+
+        for(int i = 0;i < size;i++)
+            types.put(names[i], this.types[i]);
+
+        return types;
+    }
+
+    /**
+     * @return the number of local slots a value of the given type needs
+     */
+    static int size(String type){
+        return "double".equals(type) || "long".equals(type) ? 2 : 1;
+    }
+
+    /**
+     * @return the position of the variable with the given name or the empty position it would be inserted at
+     */
+    private int position(String name){
+        int mask = index.length - 1;
+        int h = name.hashCode();
+        int position = (h ^ (h >>> 16)) & mask;
+
+        while(index[position] != 0 && !names[index[position] - 1].equals(name))
+            position = (position + 1) & mask;
+
+        return position;
+    }
+
+    private void rehash(int capacity){
+        index = new int[capacity];
+
+        for(int i = 0;i < size;i++)
+            index[position(names[i])] = i + 1;
+    }
+}
@@ -1,44 +1,33 @@
 package com.github.xjln.compiler;
 
+import com.github.xjln.lang.XJLNClass;
+import com.github.xjln.lang.XJLNField;
+import com.github.xjln.lang.XJLNMethod;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
 
 final class SyntacticParser {
 
-    private final class Scope{
-        public final Scope last;
-        private final HashMap<String, String> vars = new HashMap<>();
-
-        public Scope(Scope current){
-            last = current;
-            if(current != null)
-                vars.putAll(current.vars);
-        }
-
-        String getType(String name){
-            if(vars.containsKey(name))
-                return vars.get(name);
-
-            return null;
-        }
-
-        void add(String name, String type){
-            if(!vars.containsKey(name))
-                vars.put(name, type);
-        }
-    }
-
     static final Set<String> BOOL_OPERATORS = Set.of("==", "!=", "|", "&", ">", "<", ">=", "<=");
     static final Set<String> NUMBER_OPERATORS = Set.of("+", "-", "*", "/");
 
     private TokenHandler th;
-    private Scope scope;
-    private String[] code;
+    private SymbolTable symbols;
+    /** the class whose fields can be used by names that are no local variable, null if no fields are visible */
+    private XJLNClass clazz;
+    private TokenStream stream;
+    private int end;
     private int line;
 
-    AST.Calc parseCalc(String calc){
-        th = Lexer.lex(calc);
+    /**
+     * @param clazz the class whose fields can be used, null if no fields are visible
+     */
+    AST.Calc parseCalc(TokenHandler calc, XJLNClass clazz){
+        th = calc.copy();
+        symbols = new SymbolTable();
+        this.clazz = clazz;
         AST.Calc result = parseCalc(false);
         th.assertNull();
 
@@ -48,17 +37,24 @@ final class SyntacticParser {
         return result;
     }
 
-    AST[] parseAst(String allCode, String type){ //TODO better exception messages
-        if(allCode == null || allCode.trim().equals(""))
+    /**
+     * @param type the class of the method
+     * @param clazz the class whose fields can be used, null if no fields are visible
+     */
+    AST[] parseAst(XJLNMethod method, String type, XJLNClass clazz){ //TODO better exception messages
+        TokenHandler code = method.code;
+
+        if(code == null || code.isEmpty())
             return new AST[0];
 
-        scope = new Scope(null);
-        scope.add("this", type);
-        code = allCode.split("\n");
-        line = 0;
+        symbols = SymbolTable.forMethod(method, type);
+        this.clazz = clazz;
+        stream = code.stream();
+        end = code.end();
+        line = stream.lineOf(code.start());
         ArrayList<AST> ast = new ArrayList<>();
 
-        while(line < code.length){
+        while(hasNextLine()){
             nextLine();
             ast.add(parseNext());
         }
@@ -66,6 +62,33 @@ final class SyntacticParser {
         return ast.toArray(new AST[0]);
     }
 
+    /**
+     * parses the lines of a method body before the given token, like {@link #parseAst(XJLNMethod, String, XJLNClass)},
+     * and stops at the first line that contains an error
+     * @param before the index of the first token that is not parsed
+     * @return the variables and parameters visible before the given token, or before the first error, mapped to their types
+     */
+    HashMap<String, String> parseScope(XJLNMethod method, String type, int before){
+        TokenHandler code = method.code;
+        symbols = SymbolTable.forMethod(method, type);
+        clazz = null;
+
+        if(code != null && !code.isEmpty()){
+            stream = code.stream();
+            end = Math.min(code.end(), before);
+            line = stream.lineOf(code.start());
+
+            try{
+                while(hasNextLine()){
+                    nextLine();
+                    parseNext();
+                }
+            }catch (RuntimeException ignored){}
+        }
+
+        return symbols.types();
+    }
+
     private AST parseNext(){
         th.assertToken(Token.Type.IDENTIFIER);
         if(th.current().equals("return")){
@@ -79,20 +102,20 @@ final class SyntacticParser {
 
             return statement;
         }else if(th.current().equals("while")){
-            scope = new Scope(scope);
+            symbols.openScope();
             AST.While ast = parseWhile();
 
-            if(ast.condition.opp.equals("#"))
+            if("#".equals(ast.condition.opp))
                 ast.condition.opp = "=";
 
-            scope = scope.last;
+            symbols.closeScope();
             return ast;
         }else if(th.current().equals("if")) {
             AST.If ast = parseIf();
 
             AST.If statement = ast;
             while(statement != null){
-                if(statement.condition.opp.equals("#"))
+                if(statement.condition != null && "#".equals(statement.condition.opp))
                     statement.condition.opp = "=";
                 statement = statement.elif;
             }
@@ -105,7 +128,7 @@ final class SyntacticParser {
 
                 AST.Calc calc = parseCalc(true);
 
-                if (scope.getType(name) != null)
+                if (symbols.find(name) != -1)
                     throw new RuntimeException("Variable " + name + " already exists");
 
                 if (!calc.type.equals(type))
@@ -113,7 +136,13 @@ final class SyntacticParser {
 
                 th.assertNull();
 
-                scope.add(name, type);
+                AST.Call variable = calc.right.value.call;
+
+                if(variable == null)
+                    throw new RuntimeException("Expected variable name got " + name);
+
+                variable.type = type;
+                variable.slot = symbols.declare(name, type);
 
                 if(calc.opp != null && calc.opp.equals("="))
                     calc.opp = "#";
@@ -141,7 +170,7 @@ final class SyntacticParser {
         ArrayList<AST> ast = new ArrayList<>();
 
         nextLine();
-        while (!th.toStringNonMarked().equals("end ")){
+        while (!isLine("end")){
             ast.add(parseNext());
             nextLine();
         }
@@ -160,32 +189,32 @@ final class SyntacticParser {
             throw new RuntimeException("Expected boolean got " + statement.condition.type);
 
         ArrayList<AST> ast = new ArrayList<>();
-        scope = new Scope(scope);
+        symbols.openScope();
 
         nextLine();
-        while (!(th.toStringNonMarked().equals("end ") || th.toStringNonMarked().startsWith("else "))){
+        while (!(isLine("end") || startsWith("else"))){
             ast.add(parseNext());
             nextLine();
         }
 
-        scope = scope.last;
+        symbols.closeScope();
         statement.ast = ast.toArray(new AST[0]);
 
-        if(th.toStringNonMarked().startsWith("else ")){
+        if(startsWith("else")){
             th.assertToken("else");
 
             if(!th.hasNext()){
                 ast = new ArrayList<>();
-                scope = new Scope(scope);
+                symbols.openScope();
                 nextLine();
-                while (!(th.toStringNonMarked().equals("end "))){
+                while (!isLine("end")){
                     ast.add(parseNext());
                     nextLine();
                 }
 
                 AST.If elseCase = new AST.If();
                 elseCase.ast = ast.toArray(new AST[0]);
-                scope = scope.last;
+                symbols.closeScope();
 
                 statement.elif = elseCase;
             }else{
@@ -268,8 +297,14 @@ final class SyntacticParser {
                     value.token = th.current();
                     value.type = "boolean";
                 }else{
-                    if(th.hasNext() && !th.next().equals(Token.Type.OPERATOR)){
+                    boolean cast = false;
+
+                    if(th.hasNext()){
+                        cast = !th.next().equals(Token.Type.OPERATOR);
                         th.last();
+                    }
+
+                    if(cast){
                         String type = th.current().s();
 
                         value = parseValue(true);
@@ -280,14 +315,20 @@ final class SyntacticParser {
                         value.cast = value.type;
                         value.type = type;
                     }else {
-                        th.last();
+                        int variable = symbols.find(th.current().s());
+                        XJLNField field = variable == -1 && clazz != null ? clazz.getField(th.current().s()) : null;
 
-                        if (checkVarExist && scope.getType(th.current().s()) != null)
+                        if (checkVarExist && variable == -1 && field == null)
                             throw new RuntimeException("Variable " + th.current().s() + " does not exist");
 
                         AST.Call call = new AST.Call();
                         call.call = th.current().s();
-                        call.type = scope.getType(th.current().s());
+
+                        if(variable != -1){
+                            call.type = symbols.type(variable);
+                            call.slot = symbols.slot(variable);
+                        }else if(field != null)
+                            call.type = field.type();
 
                         value.call = call;
                         value.type = call.type;
@@ -300,11 +341,30 @@ final class SyntacticParser {
         return value;
     }
 
+    /**
+     * skips empty lines
+     * @return if there is another line in the body
+     */
+    private boolean hasNextLine(){
+        while(line < stream.lines() && stream.lineStart(line) < end && stream.lineStart(line) == stream.lineEnd(line))
+            line++;
+
+        return line < stream.lines() && stream.lineStart(line) < end;
+    }
+
     private void nextLine(){
-        if(line >= code.length)
+        if(!hasNextLine())
             throw new RuntimeException("internal compiler error");
 
-        th = Lexer.lex(code[line]);
+        th = new TokenHandler(stream, stream.lineStart(line), Math.min(stream.lineEnd(line), end));
         line++;
     }
+
+    private boolean isLine(String keyword){
+        return th.length() == 1 && th.text(0).equals(keyword);
+    }
+
+    private boolean startsWith(String keyword){
+        return th.length() > 0 && th.text(0).equals(keyword);
+    }
 }
@@ -1,7 +1,5 @@
 package com.github.xjln.compiler;
 
-import java.util.Set;
-
 public record Token(String s, Type t){
 
     enum Type{
@@ -29,8 +27,18 @@ public record Token(String s, Type t){
         return new Token(s.substring(0, s.length() - 1), t);
     }
 
+    /**
+     * @return the text without its type suffix, literals without suffix return their text without creating a new String
+     */
+    public String withoutExtension(){
+        return hasExtension() ? s.substring(0, s.length() - 1) : s;
+    }
+
     public boolean hasExtension(){
-        return Set.of(Type.IDENTIFIER, Type.DOUBLE, Type.FLOAT, Type.LONG, Type.SHORT).contains(t) && Character.isLetter(s.toCharArray()[s.length() - 1]);
+        return switch (t){
+            case IDENTIFIER, DOUBLE, FLOAT, LONG, SHORT -> !s.isEmpty() && Character.isLetter(s.charAt(s.length() - 1));
+            default -> false;
+        };
     }
 
     @Override
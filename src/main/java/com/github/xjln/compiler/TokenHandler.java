@@ -1,74 +1,129 @@
 package com.github.xjln.compiler;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
+/**
+ * navigates a range of a {@link TokenStream}
+ */
 public final class TokenHandler {
 
-    private final Token[] tokens;
+    private final TokenStream stream;
+    private final int start;
+    private final int length;
     private int index;
 
     public TokenHandler(List<Token> tokens){
-        this.tokens = tokens.toArray(new Token[0]);
+        this(TokenStream.of(tokens), 0, tokens.size());
+    }
+
+    TokenHandler(TokenStream stream, int start, int end){
+        this.stream = stream;
+        this.start = start;
+        this.length = end - start;
         index = -1;
     }
 
     public Token next() throws RuntimeException {
         if(!hasNext()) throw new RuntimeException("expected Token got nothing in: " + this);
         index++;
-        return tokens[index];
+        return stream.token(start + index);
     }
 
     public Token current() throws RuntimeException {
         if(!isValid()) throw new RuntimeException("expected Token got nothing in: " + this);
-        return tokens[index];
+        return stream.token(start + index);
     }
 
     public Token last() throws RuntimeException {
         index--;
-        return index >= 0 ? tokens[index] : null;
+        return index >= 0 ? stream.token(start + index) : null;
     }
 
     public boolean hasNext(){
-        return index + 1 < tokens.length;
+        return index + 1 < length;
     }
 
     public boolean isValid(){
-        return index < tokens.length && index > -1;
+        return index < length && index > -1;
     }
 
     public boolean isEmpty(){
-        return tokens.length == 0;
+        return length == 0;
     }
 
     public int length(){
-        return tokens.length;
+        return length;
     }
 
     public void toFirst(){
         index = -1;
     }
 
+    TokenStream stream(){
+        return stream;
+    }
+
+    /**
+     * @return the index of the first token in the stream
+     */
+    int start(){
+        return start;
+    }
+
+    /**
+     * @return the index after the last token in the stream
+     */
+    int end(){
+        return start + length;
+    }
+
+    /**
+     * @return the text of the i-th token, without moving to it
+     */
+    String text(int i){
+        return stream.text(start + i);
+    }
+
+    /**
+     * @return a new handler of the tokens after the current one
+     */
+    TokenHandler remaining(){
+        return new TokenHandler(stream, start + index + 1, start + length);
+    }
+
+    /**
+     * @return a new handler of the same tokens, that starts before the first token
+     */
+    TokenHandler copy(){
+        return new TokenHandler(stream, start, start + length);
+    }
+
     public TokenHandler getInBracket() throws RuntimeException {
         if(!isValid()) throw new RuntimeException("expected left bracket got nothing in: " + this);
-        Token current = tokens[index];
-        if(!Set.of("(", "[", "{").contains(current.s())) throw new RuntimeException("expected left bracket got " + tokens[index].s() + " in: " + this);
 
-        String openingBracket = current.s();
-        String closingBracket = openingBracket.equals("(") ? ")" : openingBracket.equals("[") ? "]" : "}";
-        List<Token> tokenList = new ArrayList<>();
+        char openingBracket;
+
+        if(stream.is(start + index, '('))
+            openingBracket = '(';
+        else if(stream.is(start + index, '['))
+            openingBracket = '[';
+        else if(stream.is(start + index, '{'))
+            openingBracket = '{';
+        else
+            throw new RuntimeException("expected left bracket got " + current().s() + " in: " + this);
+
+        char closingBracket = openingBracket == '(' ? ')' : openingBracket == '[' ? ']' : '}';
+        int first = index + 1;
         int i = 1;
 
         while (i > 0 && hasNext()){
-            current = next();
-            if(current.s().equals(closingBracket)) i--;
-            else if(current.s().equals(openingBracket)) i++;
-            if(i > 0) tokenList.add(current);
+            index++;
+            if(stream.is(start + index, closingBracket)) i--;
+            else if(stream.is(start + index, openingBracket)) i++;
         }
 
         if(i > 0) throw new RuntimeException("expected right bracket got nothing in: " + this);
-        return new TokenHandler(tokenList);
+        return new TokenHandler(stream, start + first, start + index);
     }
 
     public Token assertToken(String string) throws RuntimeException {
@@ -128,11 +183,11 @@ public final class TokenHandler {
     }
 
     public void assertHasNext() throws RuntimeException{
-        if(index >= tokens.length) throw new RuntimeException("expected Token, got Nothing in: " + this);
+        if(index >= length) throw new RuntimeException("expected Token, got Nothing in: " + this);
     }
 
     public void assertNull() throws RuntimeException{
-        if(hasNext()) throw new RuntimeException("expected nothing, got " + tokens[index].t().toString() + " in: " + this);
+        if(hasNext()) throw new RuntimeException("expected nothing, got " + stream.type(start + index + 1).toString() + " in: " + this);
     }
 
     private String arrayToString(String[] sa){
@@ -155,17 +210,17 @@ public final class TokenHandler {
 
     public String toString(){
         StringBuilder sb = new StringBuilder();
-        for(int i = 0;i < tokens.length;i++)
+        for(int i = 0;i < length;i++)
             if(i == index)
-                sb.append(" |> ").append(tokens[i]).append(" <|  ");
+                sb.append(" |> ").append(stream.text(start + i)).append(" <|  ");
             else
-                sb.append(tokens[i]).append(" ");
+                sb.append(stream.text(start + i)).append(" ");
         return sb.toString();
     }
 
     public String toStringNonMarked(){
         StringBuilder sb = new StringBuilder();
-        for(Token t:tokens) sb.append(t.s()).append(" ");
+        for(int i = 0;i < length;i++) sb.append(stream.text(start + i)).append(" ");
         return sb.toString();
     }
 }
@@ -0,0 +1,189 @@
+package com.github.xjln.compiler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * packed tokens of a source, every token is stored as its type, offset and length.
+ * Texts of identifiers, operators and simple tokens are interned while lexing, all other texts and the Token
+ * objects used by {@link TokenHandler} are only created when they are requested.
+ * The stream also knows the index of the first token of every line of the source
+ */
+public final class TokenStream {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final String source;
+    private byte[] types;
+    private int[] offsets;
+    private int[] lengths;
+    private String[] texts;
+    private Token[] tokens;
+    private int size;
+    private int[] lines = new int[16];
+    private int lineCount = 1;
+
+    TokenStream(String source, int capacity){
+        this.source = source;
+        capacity = Math.max(capacity, 4);
+        types = new byte[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        texts = new String[capacity];
+    }
+
+    /**
+     * @return a stream of the given tokens, which have no position in a source
+     */
+    static TokenStream of(List<Token> tokens){
+        TokenStream stream = new TokenStream(null, tokens.size());
+
+        for(Token token:tokens)
+            stream.add(token.t(), -1, token.s().length(), token.s());
+
+        return stream;
+    }
+
+    void add(Token.Type type, int offset, int length, String text){
+        if(size == types.length){
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+
+            if(tokens != null)
+                tokens = Arrays.copyOf(tokens, capacity);
+        }
+
+        types[size] = (byte) type.ordinal();
+        offsets[size] = offset;
+        lengths[size] = length;
+        texts[size] = text;
+        size++;
+    }
+
+    /**
+     * starts a new line, the following tokens belong to it
+     */
+    void newLine(){
+        if(lineCount == lines.length)
+            lines = Arrays.copyOf(lines, lineCount * 2);
+
+        lines[lineCount++] = size;
+    }
+
+    /**
+     * appends the tokens and lines of the given stream, which has to continue this stream at a line boundary
+     * of the same source, the first line of the given stream is the last line of this stream
+     */
+    void append(TokenStream other){
+        if(size + other.size > types.length){
+            int capacity = Math.max(size + other.size, size * 2);
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+
+            if(tokens != null)
+                tokens = Arrays.copyOf(tokens, capacity);
+        }
+
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.offsets, 0, offsets, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.texts, 0, texts, size, other.size);
+
+        if(lineCount + other.lineCount - 1 > lines.length)
+            lines = Arrays.copyOf(lines, Math.max(lineCount + other.lineCount - 1, lineCount * 2));
+
+        for(int i = 1;i < other.lineCount;i++)
+            lines[lineCount++] = other.lines[i] + size;
+
+        size += other.size;
+    }
+
+    int size(){
+        return size;
+    }
+
+    int lines(){
+        return lineCount;
+    }
+
+    /**
+     * @return the index of the first token of the given line
+     */
+    int lineStart(int line){
+        return lines[line];
+    }
+
+    /**
+     * @return the index after the last token of the given line
+     */
+    int lineEnd(int line){
+        return line + 1 < lineCount ? lines[line + 1] : size;
+    }
+
+    /**
+     * @return the line of the token with the given index, the last of all lines starting at it if some are empty
+     */
+    int lineOf(int i){
+        int low = 0;
+        int high = lineCount - 1;
+
+        while(low < high){
+            int mid = (low + high + 1) >>> 1;
+
+            if(lines[mid] <= i)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+
+    Token.Type type(int i){
+        return TYPES[types[i]];
+    }
+
+    /**
+     * @return the offset of the token in the source or -1 if the token has no position
+     */
+    int offset(int i){
+        return offsets[i];
+    }
+
+    int length(int i){
+        return lengths[i];
+    }
+
+    String text(int i){
+        String text = texts[i];
+
+        if(text == null)
+            texts[i] = text = source.substring(offsets[i], offsets[i] + lengths[i]);
+
+        return text;
+    }
+
+    /**
+     * @return if the token is the given simple single character token, without creating its text
+     */
+    boolean is(int i, char c){
+        return types[i] == Token.Type.SIMPLE.ordinal() && lengths[i] == 1 && (offsets[i] == -1 ? texts[i].charAt(0) == c : source.charAt(offsets[i]) == c);
+    }
+
+    Token token(int i){
+        if(tokens == null)
+            tokens = new Token[types.length];
+
+        Token token = tokens[i];
+
+        if(token == null)
+            tokens[i] = token = new Token(text(i), type(i));
+
+        return token;
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.xjln.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * watches the source Folders of a Compiler and recompiles changed Files,
+ * bursts of events are collected until no event has occurred for the debounce time
+ */
+final class Watcher {
+
+    private final Compiler compiler;
+    private final long debounce;
+    private final HashMap<WatchKey, Path> folders = new HashMap<>();
+
+    Watcher(Compiler compiler, long debounce){
+        this.compiler = compiler;
+        this.debounce = debounce;
+    }
+
+    void watch(String[] srcFolders) throws RuntimeException{
+        try(WatchService service = FileSystems.getDefault().newWatchService()){
+            for(String folder:srcFolders)
+                register(service, Paths.get(folder));
+
+            while(!Thread.currentThread().isInterrupted()){
+                WatchKey key = service.take();
+                long start = System.nanoTime();
+                LinkedHashSet<File> changed = new LinkedHashSet<>();
+
+                while(key != null){
+                    collect(service, key, changed);
+                    key = service.poll(debounce, TimeUnit.MILLISECONDS);
+                }
+
+                if(changed.isEmpty())
+                    continue;
+
+                long compileStart = System.nanoTime();
+
+                try{
+                    int compiled = compiler.recompile(changed);
+                    long end = System.nanoTime();
+
+                    System.out.println("Recompiled " + compiled + " Files for " + changed.size() + " changed Files in " + TimeUnit.NANOSECONDS.toMillis(end - compileStart) + "ms (" + TimeUnit.NANOSECONDS.toMillis(end - start) + "ms since first change)");
+                }catch (RuntimeException e){
+                    System.out.println(e.getMessage());
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch (IOException e){
+            throw new RuntimeException("failed to watch source Folders: " + e.getMessage());
+        }
+    }
+
+    private void collect(WatchService service, WatchKey key, LinkedHashSet<File> changed) throws IOException{
+        Path folder = folders.get(key);
+
+        for(WatchEvent<?> event:key.pollEvents()){
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null)
+                continue;
+
+            Path path = folder.resolve((Path) event.context());
+
+            if(Files.isDirectory(path)){
+                if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE){
+                    register(service, path);
+
+                    try(Stream<Path> stream = Files.walk(path)){
+                        stream.filter(p -> p.toString().endsWith(".xjln")).forEach(p -> changed.add(p.toFile()));
+                    }
+                }
+            }else if(path.toString().endsWith(".xjln") || event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                changed.add(path.toFile());
+        }
+
+        if(!key.reset())
+            folders.remove(key);
+    }
+
+    private void register(WatchService service, Path root) throws IOException{
+        try(Stream<Path> stream = Files.walk(root)){
+            for(Path folder:stream.filter(Files::isDirectory).toList())
+                folders.put(folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), folder);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.github.xjln.bytecode.AccessFlag;
 import com.github.xjln.utility.MatchedList;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public final class XJLNClass extends Compilable{
 
@@ -17,7 +18,7 @@ public final class XJLNClass extends Compilable{
     public XJLNClass(AccessFlag accessFlag, boolean finaly, boolean abstrakt){
         super(accessFlag);
         fields = new HashMap<>();
-        staticFields = new HashMap<>();
+        staticFields = new LinkedHashMap<>(); //initialized in the order they are declared
         methods = new HashMap<>();
         staticMethods = new HashMap<>();
         this.finaly = finaly;
@@ -52,6 +53,23 @@ public final class XJLNClass extends Compilable{
         staticMethods.put(name, method);
     }
 
+    /**
+     * adds all fields and methods of the given class
+     */
+    public void addAll(XJLNClass clazz){
+        for(String name:clazz.fields.keySet())
+            addField(name, clazz.fields.get(name));
+
+        for(String name:clazz.staticFields.keySet())
+            addStaticField(name, clazz.staticFields.get(name));
+
+        for(String name:clazz.methods.keySet())
+            addMethod(name, clazz.methods.get(name));
+
+        for(String name:clazz.staticMethods.keySet())
+            addStaticMethod(name, clazz.staticMethods.get(name));
+    }
+
     public XJLNField getField(String name){
         if(fields.containsKey(name)) return fields.get(name);
         else return staticFields.getOrDefault(name, null);
@@ -64,11 +82,11 @@ public final class XJLNClass extends Compilable{
     }
 
     public boolean isEmpty(){
-        return fields.isEmpty() && staticFields.isEmpty();
+        return fields.isEmpty() && staticFields.isEmpty() && methods.isEmpty() && staticMethods.isEmpty();
     }
 
     public void createDefaultInit(){
-        addMethod("init", new XJLNMethod(AccessFlag.ACC_PUBLIC, "void", new MatchedList<>(), "", false, false, false, -1));
+        addMethod("init", new XJLNMethod(AccessFlag.ACC_PUBLIC, "void", new MatchedList<>(), null, false, false, false, -1));
     }
 
     @Override
@@ -1,8 +1,9 @@
 package com.github.xjln.lang;
 
 import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.compiler.TokenHandler;
 
-public record XJLNField(AccessFlag accessFlag, boolean statik, boolean transiend, boolean volatil, boolean constant, String type, String initValue, int lineInFile) {
+public record XJLNField(AccessFlag accessFlag, boolean statik, boolean transiend, boolean volatil, boolean constant, String type, TokenHandler initValue, int lineInFile) {
 
     public int getAccessFlag(){
         int accessFlag = switch (accessFlag()){
@@ -1,17 +1,19 @@
 package com.github.xjln.lang;
 
 import com.github.xjln.bytecode.AccessFlag;
+import com.github.xjln.compiler.TokenHandler;
 import com.github.xjln.utility.MatchedList;
 
 public final class XJLNMethod extends Compilable{
 
     public final MatchedList<String, String> parameters;
     public final String returnType;
-    public final String code;
+    /** the tokens of the body, null if the method has no body */
+    public final TokenHandler code;
     public final boolean statik, abstrakt, synchronise;
     public final int line;
 
-    public XJLNMethod(AccessFlag accessFlag, String returnType, MatchedList<String, String> parameters, String code, boolean statik, boolean abstrakt, boolean synchronise, int line) {
+    public XJLNMethod(AccessFlag accessFlag, String returnType, MatchedList<String, String> parameters, TokenHandler code, boolean statik, boolean abstrakt, boolean synchronise, int line) {
         super(accessFlag);
         this.returnType = returnType;
         this.code = code;
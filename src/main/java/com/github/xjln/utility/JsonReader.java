@@ -0,0 +1,204 @@
+package com.github.xjln.utility;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * minimal JSON reader, objects are read as HashMaps, arrays as ArrayLists,
+ * integers as Longs and all other numbers as Doubles
+ */
+public final class JsonReader {
+
+    private final String json;
+    private int i = 0;
+
+    private JsonReader(String json){
+        this.json = json;
+    }
+
+    /**
+     * @throws RuntimeException if the given String is no valid JSON
+     */
+    public static Object parse(String json) throws RuntimeException{
+        JsonReader reader = new JsonReader(json);
+        Object value = reader.value();
+
+        reader.skipWhitespace();
+
+        if(reader.i < json.length())
+            throw reader.error("end of JSON");
+
+        return value;
+    }
+
+    private Object value(){
+        skipWhitespace();
+
+        if(i == json.length())
+            throw error("value");
+
+        return switch (json.charAt(i)){
+            case '{' -> object();
+            case '[' -> array();
+            case '"' -> string();
+            case 't' -> literal("true", Boolean.TRUE);
+            case 'f' -> literal("false", Boolean.FALSE);
+            case 'n' -> literal("null", null);
+            default  -> number();
+        };
+    }
+
+    private HashMap<String, Object> object(){
+        HashMap<String, Object> object = new HashMap<>();
+        i++;
+
+        skipWhitespace();
+        if(i < json.length() && json.charAt(i) == '}'){
+            i++;
+            return object;
+        }
+
+        while(true){
+            skipWhitespace();
+
+            if(i == json.length() || json.charAt(i) != '"')
+                throw error("name");
+
+            String name = string();
+
+            skipWhitespace();
+            expect(':');
+
+            object.put(name, value());
+
+            skipWhitespace();
+            if(i < json.length() && json.charAt(i) == ','){
+                i++;
+                continue;
+            }
+
+            expect('}');
+            return object;
+        }
+    }
+
+    private ArrayList<Object> array(){
+        ArrayList<Object> array = new ArrayList<>();
+        i++;
+
+        skipWhitespace();
+        if(i < json.length() && json.charAt(i) == ']'){
+            i++;
+            return array;
+        }
+
+        while(true){
+            array.add(value());
+
+            skipWhitespace();
+            if(i < json.length() && json.charAt(i) == ','){
+                i++;
+                continue;
+            }
+
+            expect(']');
+            return array;
+        }
+    }
+
+    private String string(){
+        StringBuilder sb = new StringBuilder();
+        i++;
+
+        while(i < json.length()){
+            char c = json.charAt(i++);
+
+            if(c == '"')
+                return sb.toString();
+
+            if(c != '\\'){
+                sb.append(c);
+                continue;
+            }
+
+            if(i == json.length())
+                break;
+
+            switch (json.charAt(i++)){
+                case '"'  -> sb.append('"');
+                case '\\' -> sb.append('\\');
+                case '/'  -> sb.append('/');
+                case 'b'  -> sb.append('\b');
+                case 'f'  -> sb.append('\f');
+                case 'n'  -> sb.append('\n');
+                case 'r'  -> sb.append('\r');
+                case 't'  -> sb.append('\t');
+                case 'u'  -> {
+                    if(i + 4 > json.length())
+                        throw error("unicode escape");
+
+                    try{
+                        sb.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    }catch (NumberFormatException e){
+                        throw error("unicode escape");
+                    }
+
+                    i += 4;
+                }
+                default   -> throw error("escape sequence");
+            }
+        }
+
+        throw error("end of string");
+    }
+
+    private Object literal(String literal, Object value){
+        if(!json.startsWith(literal, i))
+            throw error(literal);
+
+        i += literal.length();
+        return value;
+    }
+
+    private Object number(){
+        int start = i;
+        boolean integer = true;
+
+        if(i < json.length() && json.charAt(i) == '-')
+            i++;
+
+        while(i < json.length()){
+            char c = json.charAt(i);
+
+            if(c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-')
+                integer = false;
+            else if(c < '0' || c > '9')
+                break;
+
+            i++;
+        }
+
+        try{
+            return integer ? (Object) Long.parseLong(json.substring(start, i)) : (Object) Double.parseDouble(json.substring(start, i));
+        }catch (NumberFormatException e){
+            i = start;
+            throw error("value");
+        }
+    }
+
+    private void expect(char c){
+        if(i == json.length() || json.charAt(i) != c)
+            throw error("'" + c + "'");
+
+        i++;
+    }
+
+    private void skipWhitespace(){
+        while(i < json.length() && (json.charAt(i) == ' ' || json.charAt(i) == '\t' || json.charAt(i) == '\n' || json.charAt(i) == '\r'))
+            i++;
+    }
+
+    private RuntimeException error(String expected){
+        return new RuntimeException("Expected " + expected + " at " + i + " of JSON");
+    }
+}
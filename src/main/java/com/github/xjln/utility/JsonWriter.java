@@ -0,0 +1,119 @@
+package com.github.xjln.utility;
+
+/**
+ * minimal streaming JSON writer, commas between values are inserted automatically
+ */
+public final class JsonWriter {
+
+    private final StringBuilder sb = new StringBuilder();
+    private boolean needsComma = false;
+
+    public JsonWriter beginObject(){
+        comma();
+        sb.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject(){
+        sb.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray(){
+        comma();
+        sb.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray(){
+        sb.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name){
+        comma();
+        string(name);
+        sb.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value){
+        comma();
+
+        if(value == null)
+            sb.append("null");
+        else
+            string(value);
+
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value){
+        comma();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value){
+        comma();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter nullValue(){
+        comma();
+        sb.append("null");
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name, String value){
+        return name(name).value(value);
+    }
+
+    public JsonWriter name(String name, long value){
+        return name(name).value(value);
+    }
+
+    @Override
+    public String toString(){
+        return sb.toString();
+    }
+
+    private void comma(){
+        if(needsComma)
+            sb.append(',');
+    }
+
+    private void string(String s){
+        sb.append('"');
+
+        for(int i = 0;i < s.length();i++){
+            char c = s.charAt(i);
+
+            switch (c){
+                case '"'  -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default   -> {
+                    if(c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+
+        sb.append('"');
+    }
+}
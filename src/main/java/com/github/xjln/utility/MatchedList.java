@@ -2,25 +2,36 @@ package com.github.xjln.utility;
 
 import java.util.*;
 
+/**
+ * pairs of keys and values in the order they were added, the first index of each key is hashed,
+ * the first index of each value is hashed once a value is looked up
+ */
 public class MatchedList<Key, Value> {
 
     private final ArrayList<Key> keyList;
     private final ArrayList<Value> valueList;
+    private final HashMap<Key, Integer> keyIndex;
+    private HashMap<Value, Integer> valueIndex = null;
 
     public MatchedList(){
         keyList = new ArrayList<>();
         valueList = new ArrayList<>();
+        keyIndex = new HashMap<>();
     }
 
     public void add(Key key, Value value){
+        keyIndex.putIfAbsent(key, keyList.size());
+
+        if(valueIndex != null)
+            valueIndex.putIfAbsent(value, valueList.size());
+
         keyList.add(key);
         valueList.add(value);
     }
 
     public Key getKey(Value value){
-        if(!valueList.contains(value))
-            return null;
-        return keyList.get(valueList.indexOf(value));
+        Integer n = valueIndex().get(value);
+        return n == null ? null : keyList.get(n);
     }
 
     public Key getKey(int n){
@@ -30,13 +41,12 @@ public class MatchedList<Key, Value> {
     }
 
     public boolean hasKey(Key key){
-        return keyList.contains(key);
+        return keyIndex.containsKey(key);
     }
 
     public Value getValue(Key key){
-        if(!keyList.contains(key))
-            return null;
-        return valueList.get(keyList.indexOf(key));
+        Integer n = keyIndex.get(key);
+        return n == null ? null : valueList.get(n);
     }
 
     public Value getValue(int n){
@@ -46,7 +56,7 @@ public class MatchedList<Key, Value> {
     }
 
     public boolean hasValue(Value value){
-        return valueList.contains(value);
+        return valueIndex().containsKey(value);
     }
 
     public ArrayList<Key> getKeyList(){
@@ -58,9 +68,15 @@ public class MatchedList<Key, Value> {
     }
 
     public void remove(int n){
-        if(keyList.size() >= n && n >= 0){
+        if(n < keyList.size() && n >= 0){
             keyList.remove(n);
             valueList.remove(n);
+
+            keyIndex.clear();
+            for(int i = 0;i < keyList.size();i++)
+                keyIndex.putIfAbsent(keyList.get(i), i);
+
+            valueIndex = null;
         }
     }
 
@@ -68,6 +84,17 @@ public class MatchedList<Key, Value> {
         return keyList.size();
     }
 
+    private HashMap<Value, Integer> valueIndex(){
+        if(valueIndex == null){
+            valueIndex = new HashMap<>();
+
+            for(int i = 0;i < valueList.size();i++)
+                valueIndex.putIfAbsent(valueList.get(i), i);
+        }
+
+        return valueIndex;
+    }
+
     public static <First, Second> MatchedList<First, Second> of(First[] firsts, Second[] seconds) throws RuntimeException{
         assert firsts != null;
         assert seconds != null;
@@ -1,11 +1,249 @@
 import com.github.xjln.compiler.Compiler;
+import com.github.xjln.compiler.Document;
+import com.github.xjln.compiler.Options;
+import com.github.xjln.lang.Compilable;
+import com.github.xjln.lang.XJLNClass;
+import com.github.xjln.lang.XJLNField;
+import com.github.xjln.lang.XJLNFile;
+import com.github.xjln.lang.XJLNMethod;
 import javassist.ClassPool;
 import javassist.bytecode.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
 public class Main {
     public static void main(String[] args) throws Exception {
         new Compiler(true, "src/test/xjln");
         //printClass("Test");
+
+        for(int level = 0;level <= 2;level++){
+            testFields(level);
+            testMain(level);
+        }
+
+        testAbstract();
+        testIncremental();
+        testOutputCache();
+        testDocument();
+    }
+
+    /** the Folder the tests write their sources and classes to, source Folders have to be relative */
+    private static final String TEST_FOLDER = "target/xjlntest";
+
+    /**
+     * runs the methods of Fields.xjln, they read instance and static fields, use static fields initialised in order
+     * and narrow char, short and byte results
+     */
+    public static void testFields(int level) throws Exception{
+        Class<?> clazz = Compiler.createClassLoader(new Compiler(new Options().optimization(level)).compileInMemory("src/test/xjln")).loadClass("src.test.xjln.Fields.Fields");
+        Object fields = clazz.getDeclaredConstructor().newInstance();
+        clazz.getMethod("set", int.class).invoke(fields, 5);
+
+        check(level, "Fields.get", clazz.getMethod("get").invoke(fields), 3605);
+        check(level, "Fields.count", clazz.getMethod("count", int.class).invoke(fields, 2), 3603);
+        check(level, "Fields.chars", clazz.getMethod("chars").invoke(fields), (char) ('a' + 'b'));
+        check(level, "Fields.shorts", clazz.getMethod("shorts", short.class).invoke(fields, (short) 30000), (short) 60000);
+        check(level, "Fields.bytes", clazz.getMethod("bytes", byte.class).invoke(fields, (byte) 100), (byte) 10000);
+    }
+
+    /**
+     * runs the main function of Counter.xjln, which changes a top-level field
+     */
+    public static void testMain(int level) throws Exception{
+        ClassLoader loader = Compiler.createClassLoader(new Compiler(new Options().optimization(level)).compileInMemory("src/test/xjln"));
+        Compiler.runMain(loader, "src/test/xjln/Counter");
+
+        Field count = loader.loadClass("src.test.xjln.Counter.Main").getDeclaredField("count");
+        count.setAccessible(true);
+
+        check(level, "Counter.count", count.get(null), 4);
+    }
+
+    /**
+     * checks that the abstract methods of Shape.xjln have no body and make the class abstract
+     */
+    public static void testAbstract() throws Exception{
+        Class<?> clazz = Compiler.createClassLoader(new Compiler(new Options()).compileInMemory("src/test/xjln")).loadClass("src.test.xjln.Shape.Shape");
+
+        check("abstract class", Modifier.isAbstract(clazz.getModifiers()), true);
+        check("abstract method", Modifier.isAbstract(clazz.getDeclaredMethod("area").getModifiers()), true);
+        check("method of abstract class", Modifier.isAbstract(clazz.getDeclaredMethod("twice").getModifiers()), false);
+    }
+
+    /**
+     * compiles incrementally after changes of the sources, the output Folder and the options
+     * and checks which classes have been written again
+     */
+    public static void testIncremental() throws Exception{
+        String src = TEST_FOLDER + "/inc";
+        String out = TEST_FOLDER + "/inc-out";
+        String name = src.replace('/', '.');
+
+        delete(new File(TEST_FOLDER));
+        write(src + "/lib/Util.xjln", "def class Helper{\n    int i\n}\ndef class Other{\n    int j\n}\n");
+        write(src + "/A.xjln", "use Helper, Other from " + src + "/lib/Util\n\ndef class A{\n    int i\n}\n");
+        write(src + "/B.xjln", "use " + src + "/lib/Util\n\ndef class B{\n    int i\n}\n");
+        write(src + "/C.xjln", "def class C{\n\n    def get()::int\n        return 2 * 3\n    end\n}\n");
+
+        Options options = new Options().incremental(true).optimization(0).output(out);
+        Set<String> all = Set.of(name + ".lib.Util.Helper", name + ".lib.Util.Other", name + ".A.A", name + ".B.B", name + ".C.C");
+        check("incremental first compile", compile(options, out, src), all);
+
+        write(src + "/lib/Util.xjln", "def class Helper{\n    int i\n    int k\n}\ndef class Other{\n    int j\n}\n");
+        check("incremental signature change", compile(options, out, src), Set.of(name + ".lib.Util.Helper", name + ".lib.Util.Other", name + ".A.A", name + ".B.B"));
+
+        Files.delete(Paths.get(out, name.replace('.', '/'), "C", "C.class"));
+        check("incremental deleted class", compile(options, out, src), Set.of(name + ".C.C"));
+
+        check("incremental optimization change", compile(new Options().incremental(true).optimization(2).output(out), out, src), all);
+    }
+
+    /**
+     * restores classes from a linked output cache and checks that compiling a restored class again does not change the cache
+     */
+    public static void testOutputCache() throws Exception{
+        String src = TEST_FOLDER + "/cached";
+        String cache = TEST_FOLDER + "/cache";
+        String path = src.replace('/', '.').replace('.', File.separatorChar) + "/Foo/Foo.class";
+
+        delete(new File(TEST_FOLDER));
+        write(src + "/Foo.xjln", "def class Foo{\n\n    def get()::int\n        return 1\n    end\n}\n");
+        new Compiler(new Options().incremental(true).outputCache(cache).linkOutputCache(true).output(TEST_FOLDER + "/out1"), src);
+        byte[] bytes = Files.readAllBytes(Paths.get(TEST_FOLDER, "out1", path));
+
+        Compiler restoring = new Compiler(new Options().incremental(true).outputCache(cache).linkOutputCache(true).output(TEST_FOLDER + "/out2"), src);
+        check("output cache hits", restoring.getOutputCacheHits(), 1L);
+        check("restored class", Arrays.equals(Files.readAllBytes(Paths.get(TEST_FOLDER, "out2", path)), bytes), true);
+
+        write(src + "/Foo.xjln", "def class Foo{\n\n    def get()::int\n        return 2\n    end\n}\n");
+        new Compiler(new Options().incremental(true).outputCache(cache).linkOutputCache(true).output(TEST_FOLDER + "/out2"), src);
+
+        write(src + "/Foo.xjln", "def class Foo{\n\n    def get()::int\n        return 1\n    end\n}\n");
+        new Compiler(new Options().incremental(true).outputCache(cache).linkOutputCache(true).output(TEST_FOLDER + "/out3"), src);
+        check("class restored after a linked class was compiled again", Arrays.equals(Files.readAllBytes(Paths.get(TEST_FOLDER, "out3", path)), bytes), true);
+    }
+
+    /**
+     * edits a Document and compares it to a Document parsed from the edited source
+     */
+    public static void testDocument(){
+        String source = "use java/lang/System\n\ndef class Doc{\n\n    int i\n\n    def get()::int\n        return i\n    end\n\n    def set(int a)\n        i = a\n    end\n}\n\ndef class Other{\n    int j\n}\n";
+        Document document = new Document("doc/Doc", source);
+
+        document.edit(source.indexOf("return i"), "return i".length(), "int r = i + 1\n        return r");
+        document.edit(source.indexOf("    int i") + 4, 0, "int k\n    ");
+        document.edit(document.getText().indexOf("def class Other"), 0, "def class Third{\n    int t\n}\n\n");
+
+        check("edited document errors", document.getError() == null && document.getFile() != null, true);
+        check("edited document", describe(document.getFile()), describe(new Document("doc/Doc", document.getText()).getFile()));
+    }
+
+    /**
+     * compiles the source Folder after emptying all class Files in the output Folder,
+     * the class Files that are still empty afterwards get their previous content again
+     * @return the names of the classes that have been written
+     */
+    private static Set<String> compile(Options options, String out, String src) throws IOException{
+        HashMap<Path, byte[]> previous = new HashMap<>();
+
+        for(Path file:classFiles(out)){
+            previous.put(file, Files.readAllBytes(file));
+            Files.write(file, new byte[0]);
+        }
+
+        new Compiler(options, src);
+
+        TreeSet<String> written = new TreeSet<>();
+
+        for(Path file:classFiles(out)){
+            if(Files.size(file) == 0)
+                Files.write(file, previous.get(file));
+            else{
+                String name = Paths.get(out).relativize(file).toString();
+                written.add(name.substring(0, name.length() - 6).replace(File.separatorChar, '.'));
+            }
+        }
+
+        return written;
+    }
+
+    private static List<Path> classFiles(String folder) throws IOException{
+        if(!new File(folder).exists())
+            return List.of();
+
+        try(Stream<Path> stream = Files.walk(Paths.get(folder))){
+            return stream.filter(p -> p.toString().endsWith(".class")).toList();
+        }
+    }
+
+    /**
+     * @return the classes, fields and methods of the File with their lines and bodies
+     */
+    private static String describe(XJLNFile file){
+        if(file == null)
+            return null;
+
+        StringBuilder sb = new StringBuilder(new TreeMap<>(file.uses).toString()).append("\n");
+        describe(sb, "main", file.main);
+
+        for(Map.Entry<String, Compilable> entry:new TreeMap<>(file.classes).entrySet())
+            if(entry.getValue() instanceof XJLNClass clazz)
+                describe(sb, entry.getKey(), clazz);
+            else
+                sb.append(entry.getKey()).append(" ").append(entry.getValue().getClass().getSimpleName()).append("\n");
+
+        return sb.toString();
+    }
+
+    private static void describe(StringBuilder sb, String name, XJLNClass clazz){
+        sb.append("class ").append(name).append(" ").append(clazz.getAccessFlag()).append("\n");
+
+        for(Map<String, XJLNField> fields:List.of(clazz.fields, clazz.staticFields))
+            for(Map.Entry<String, XJLNField> entry:new TreeMap<>(fields).entrySet()){
+                XJLNField field = entry.getValue();
+                sb.append(" field ").append(entry.getKey()).append(" ").append(field.getAccessFlag()).append(" ").append(field.type()).append(" ").append(field.lineInFile());
+                sb.append(" ").append(field.initValue() == null ? null : field.initValue().toStringNonMarked()).append("\n");
+            }
+
+        for(Map<String, XJLNMethod> methods:List.of(clazz.methods, clazz.staticMethods))
+            for(Map.Entry<String, XJLNMethod> entry:new TreeMap<>(methods).entrySet()){
+                XJLNMethod method = entry.getValue();
+                sb.append(" method ").append(entry.getKey()).append(" ").append(method.getAccessFlag()).append(" ").append(method.parameters).append(" ").append(method.returnType);
+                sb.append(" ").append(method.line).append(" ").append(method.code == null ? null : method.code.toStringNonMarked()).append("\n");
+            }
+    }
+
+    private static void write(String path, String text) throws IOException{
+        Files.createDirectories(Paths.get(path).getParent());
+        Files.writeString(Paths.get(path), text);
+    }
+
+    private static void delete(File file){
+        File[] children = file.listFiles();
+
+        if(children != null)
+            for(File child:children)
+                delete(child);
+
+        file.delete();
+    }
+
+    private static void check(String name, Object actual, Object expected){
+        if(!Objects.equals(actual, expected))
+            throw new RuntimeException(name + " returned " + actual + ", expected " + expected);
+    }
+
+    private static void check(int level, String name, Object actual, Object expected){
+        if(!Objects.equals(actual, expected))
+            throw new RuntimeException(name + " at optimization " + level + " returned " + actual + ", expected " + expected);
     }
 
     public static void printClass(String name) throws Exception{